@@ -0,0 +1,62 @@
+package spring.directorylisting;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * A class for generating the directories the benchmarks list.
+ * The directories are kept in the temporary directory between runs, since generating a million files takes minutes.
+ * @author N. H. Weideman
+ */
+public class BenchmarkDirectories {
+
+	/* Every DIRECTORY_INTERVAL-th entry is a subdirectory, so that listings contain links to other listings. */
+	private static final int DIRECTORY_INTERVAL = 16;
+
+	private static final String COMPLETE_MARKER = ".complete";
+
+	/**
+	 * Obtains a directory with a number of generated entries, creating it if it does not exist yet.
+	 * @param numEntries The number of entries of the directory
+	 * @return The canonical path of the directory
+	 * @throws IOException If an I/O error occurs
+	 */
+	public static String getDirectory(int numEntries) throws IOException {
+		Path root = Paths.get(System.getProperty("java.io.tmpdir"), "directorylisting-jmh");
+		Path directory = root.resolve("entries-" + numEntries);
+		/* The marker is created last and outside of the directory, so an interrupted generation is completed on the next run. */
+		Path completeMarker = root.resolve("entries-" + numEntries + COMPLETE_MARKER);
+		if (!Files.exists(completeMarker)) {
+			Files.createDirectories(directory);
+			byte[] content = new byte[64];
+			for (int i = 0; i < numEntries; i++) {
+				Path entry = directory.resolve(String.format("entry-%07d", i));
+				if (Files.exists(entry)) {
+					continue;
+				}
+				if (i % DIRECTORY_INTERVAL == 0) {
+					Files.createDirectory(entry);
+				} else {
+					/* File sizes vary, so that sorting by size is not sorting by name. */
+					Files.write(entry, Arrays.copyOf(content, (i * 31) % content.length));
+				}
+			}
+			Files.createFile(completeMarker);
+		}
+		return directory.toFile().getCanonicalPath();
+	}
+
+	/**
+	 * Creates a directory listing component with the default configuration of the service, without snapshots.
+	 * @param maxCacheEntries The maximum number of cached listings, 0 to read every directory again on every request
+	 * @return The directory listing component
+	 * @throws IOException If an I/O error occurs
+	 */
+	public static DirectoryListingComponent createComponent(int maxCacheEntries) throws IOException {
+		return new DirectoryListingComponent(new DirectoryListingMetrics(), maxCacheEntries, Long.MAX_VALUE, 1, 512, 16, 256, 4, "", 300000);
+	}
+
+}
@@ -0,0 +1,64 @@
+package spring.directorylisting;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of obtaining directory listings from the directory listing component.
+ * A cold listing reads the directory from the file system on every call, but the file system itself keeps the directory in its own cache.
+ * @author N. H. Weideman
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DirectoryListingComponentBenchmark {
+
+	@Param({"1000", "100000", "1000000"})
+	public int numEntries;
+
+	private String directory;
+
+	/* A component that caches the listing, and one that never admits it to its cache. */
+	private DirectoryListingComponent cachingComponent;
+	private DirectoryListingComponent nonCachingComponent;
+
+	@Setup
+	public void setUp() throws IOException {
+		directory = BenchmarkDirectories.getDirectory(numEntries);
+		cachingComponent = BenchmarkDirectories.createComponent(10000);
+		cachingComponent.getListing(directory);
+		nonCachingComponent = BenchmarkDirectories.createComponent(0);
+	}
+
+	@TearDown
+	public void tearDown() {
+		cachingComponent.shutdown();
+		nonCachingComponent.shutdown();
+	}
+
+	@Benchmark
+	public DirectoryListingResult coldListing() throws IOException {
+		return nonCachingComponent.getListing(directory);
+	}
+
+	@Benchmark
+	public DirectoryListingResult cachedListing() throws IOException {
+		return cachingComponent.getListing(directory);
+	}
+
+}
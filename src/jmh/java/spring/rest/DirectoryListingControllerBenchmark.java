@@ -0,0 +1,100 @@
+package spring.rest;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import spring.directorylisting.BenchmarkDirectories;
+import spring.directorylisting.DirectoryListingComponent;
+import spring.directorylisting.DirectoryListingMetrics;
+import spring.errors.FilterException;
+import spring.errors.SortException;
+import spring.rest.response.RenderedResponseCache;
+
+/**
+ * Benchmarks of selecting and rendering a page of a cached directory listing in the controller, from the first to the last page.
+ * The rendered page cache is disabled, so every call selects and renders the page again.
+ * @author N. H. Weideman
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DirectoryListingControllerBenchmark {
+
+	@Param({"100000"})
+	public int numEntries;
+
+	@Param({"10"})
+	public int pageSize;
+
+	/* The page as a fraction of the number of pages, 1 is the last page. */
+	@Param({"0", "0.5", "1"})
+	public double pagePosition;
+
+	/* The key the listing is sorted by in descending order, empty for the order of the file system. */
+	@Param({"", "size"})
+	public String sortKey;
+
+	private DirectoryListingComponent directoryListingComponent;
+	private DirectoryListingController directoryListingController;
+	private MockHttpServletRequest request;
+	private ListingQuery listingQuery;
+
+	@Setup
+	public void setUp() throws IOException {
+		String directory = BenchmarkDirectories.getDirectory(numEntries);
+		directoryListingComponent = BenchmarkDirectories.createComponent(10000);
+		directoryListingComponent.getListing(directory);
+		directoryListingController = new DirectoryListingController(directoryListingComponent,
+						Jackson2ObjectMapperBuilder.json().build(),
+						new RenderedResponseCache(directoryListingComponent, 0),
+						new DirectoryListingMetrics(),
+						30000, 32, 1000000, 1024, 256, 16);
+
+		String sort = sortKey.isEmpty() ? null : sortKey + ",desc";
+		int numPages = Math.max((numEntries + pageSize - 1) / pageSize, 1);
+		int page = Math.max((int) Math.round(pagePosition * numPages), 1);
+		listingQuery = new ListingQuery();
+		listingQuery.setDpath(directory);
+		listingQuery.setPage(page);
+		listingQuery.setPsize(pageSize);
+		listingQuery.setSort(sort);
+		request = new MockHttpServletRequest("GET", "/list");
+		request.setQueryString("dpath=" + directory + "&page=" + page + "&psize=" + pageSize + (sort == null ? "" : "&sort=" + sort));
+	}
+
+	@TearDown
+	public void tearDown() {
+		directoryListingComponent.shutdown();
+	}
+
+	@Benchmark
+	public Object listJsonPage() throws FilterException, SortException {
+		ResponseEntity<?> responseEntity = (ResponseEntity<?>) directoryListingController.listJson(request, listingQuery).getResult();
+		return responseEntity.getBody();
+	}
+
+	@Benchmark
+	public Object listHtmlPage() throws FilterException, SortException {
+		ResponseEntity<?> responseEntity = (ResponseEntity<?>) directoryListingController.listHtml(request, listingQuery).getResult();
+		return responseEntity.getBody();
+	}
+
+}
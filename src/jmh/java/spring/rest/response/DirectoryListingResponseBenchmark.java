@@ -0,0 +1,102 @@
+package spring.rest.response;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import spring.datarepresentation.DirectoryListingHtmlStream;
+import spring.directorylisting.BenchmarkDirectories;
+import spring.directorylisting.DirectoryListingComponent;
+import spring.directorylisting.DirectoryListingEntry;
+import spring.directorylisting.DirectoryListingResult;
+import spring.rest.ListingPage;
+
+/**
+ * Benchmarks of building a directory listing response for a page of entries, of rendering the page as HTML and of serializing the response as JSON.
+ * @author N. H. Weideman
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DirectoryListingResponseBenchmark {
+
+	@Param({"100", "2000", "100000"})
+	public int pageSize;
+
+	private ObjectMapper objectMapper;
+	private String url;
+	private String directory;
+	private String directoryPath;
+	private List<DirectoryListingEntry> pageEntries;
+	private DirectoryListingResponse directoryListingResponse;
+
+	@Setup
+	public void setUp() throws IOException {
+		directory = BenchmarkDirectories.getDirectory(100000);
+		DirectoryListingComponent directoryListingComponent = BenchmarkDirectories.createComponent(0);
+		try {
+			DirectoryListingResult directoryListingResult = directoryListingComponent.getListing(directory);
+			directoryPath = directoryListingResult.getFullPath();
+			pageEntries = directoryListingResult.getPage(0, Math.min(pageSize, directoryListingResult.getNumEntries()));
+		} finally {
+			directoryListingComponent.shutdown();
+		}
+		objectMapper = Jackson2ObjectMapperBuilder.json().build();
+		url = "http://localhost:8080/list?dpath=" + directory + "&page=2&psize=" + pageSize;
+		directoryListingResponse = createResponse();
+	}
+
+	@Benchmark
+	public DirectoryListingResponse construct() throws IOException {
+		return createResponse();
+	}
+
+	@Benchmark
+	public byte[] renderHtml() throws IOException {
+		DirectoryListingHtmlStream directoryListingHtmlStream = new DirectoryListingHtmlStream(new ListingPage(url, directory, directoryPath,
+						pageEntries,
+						3,
+						2,
+						pageSize,
+						url.replace("page=2", "page=1"),
+						url.replace("page=2", "page=3"),
+						url.replace("page=2", "page=1"),
+						url.replace("page=2", "page=3")));
+		ByteArrayOutputStream htmlBody = new ByteArrayOutputStream(directoryListingHtmlStream.getEstimatedSize());
+		directoryListingHtmlStream.writeTo(htmlBody);
+		return htmlBody.toByteArray();
+	}
+
+	@Benchmark
+	public byte[] serializeJson() throws IOException {
+		return objectMapper.writeValueAsBytes(directoryListingResponse);
+	}
+
+	/* Creates the response for the second of three pages. */
+	private DirectoryListingResponse createResponse() throws IOException {
+		return new DirectoryListingResponse(url, directory, directoryPath, 3, 2, pageSize,
+						url.replace("page=2", "page=1"),
+						url.replace("page=2", "page=3"),
+						url.replace("page=2", "page=1"),
+						url.replace("page=2", "page=3"),
+						pageEntries);
+	}
+
+}
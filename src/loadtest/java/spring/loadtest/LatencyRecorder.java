@@ -0,0 +1,75 @@
+package spring.loadtest;
+
+import java.util.Arrays;
+
+/**
+ * A class for recording the latencies of the requests made by a single client thread.
+ * Every latency is kept, so that the high percentiles are exact.
+ * @author N. H. Weideman
+ */
+public class LatencyRecorder {
+
+	private long[] latencies;
+	private int count;
+
+	private int errorCount;
+	public int getErrorCount() {
+		return errorCount;
+	}
+
+	public LatencyRecorder() {
+		this.latencies = new long[1024];
+		this.count = 0;
+		this.errorCount = 0;
+	}
+
+	/**
+	 * Records the latency of a successful request.
+	 * @param latencyNanos The latency in nanoseconds
+	 */
+	public void record(long latencyNanos) {
+		if (count == latencies.length) {
+			latencies = Arrays.copyOf(latencies, count * 2);
+		}
+		latencies[count++] = latencyNanos;
+	}
+
+	/**
+	 * Records a failed request.
+	 */
+	public void recordError() {
+		errorCount++;
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * Adds the latencies and errors recorded by another recorder.
+	 * @param other The other recorder
+	 */
+	public void addAll(LatencyRecorder other) {
+		if (count + other.count > latencies.length) {
+			latencies = Arrays.copyOf(latencies, count + other.count);
+		}
+		System.arraycopy(other.latencies, 0, latencies, count, other.count);
+		count += other.count;
+		errorCount += other.errorCount;
+	}
+
+	/**
+	 * Computes a percentile of the recorded latencies, sorting them first.
+	 * @param percentile The percentile, between 0 and 100
+	 * @return The latency in nanoseconds, or 0 if no latencies have been recorded
+	 */
+	public long getPercentile(double percentile) {
+		if (count == 0) {
+			return 0;
+		}
+		Arrays.sort(latencies, 0, count);
+		int rank = (int) Math.ceil(percentile / 100 * count);
+		return latencies[Math.min(Math.max(rank, 1), count) - 1];
+	}
+
+}
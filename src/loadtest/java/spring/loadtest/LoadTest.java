@@ -0,0 +1,285 @@
+package spring.loadtest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.embedded.EmbeddedWebApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import spring.DirectoryListingApplication;
+
+/**
+ * An end-to-end load test of the service.
+ * The service is started on a free local port, a synthetic directory tree is generated, and a number of clients
+ * make a mix of cold, hot, deep page and mutation requests for a fixed time, after which the latency percentiles
+ * and the throughput of each kind of request are reported.
+ * @author N. H. Weideman
+ */
+public class LoadTest {
+
+	private static final String USAGE = "Options: --shape=wide|deep|mixed --width=N --depth=N --files=N --large-entries=N"
+					+ " --hot-directories=N --psize=N --clients=N --warmup=SECONDS --duration=SECONDS --accept=TYPE"
+					+ " --mix=cold:10,hot:60,deep-page:20,mutation:10 --keep=true|false, other --name=value options are passed to the service";
+
+	private final LoadTestOptions options;
+	private final SyntheticDirectoryTree tree;
+	private final String listUrl;
+
+	private final List<String> hotDirectories;
+	private final List<String> mutationDirectories;
+	/* The directories for cold requests, each one is requested once. */
+	private final List<String> coldDirectories;
+	private final AtomicInteger nextColdDirectory;
+
+	/* The request types and their cumulative weights, to choose a request type at random. */
+	private final RequestType[] requestTypes;
+	private final int[] cumulativeWeights;
+
+	private volatile boolean measuring;
+	private volatile boolean stopped;
+
+	private LoadTest(LoadTestOptions options, SyntheticDirectoryTree tree, int port) {
+		this.options = options;
+		this.tree = tree;
+		this.listUrl = "http://localhost:" + port + "/list";
+
+		List<String> directories = tree.getDirectories();
+		int numHotDirectories = options.getHotDirectories();
+		if (directories.size() < 2 * numHotDirectories + 1) {
+			throw new IllegalArgumentException("The tree has " + directories.size() + " directories, which is too few for "
+							+ numHotDirectories + " hot and " + numHotDirectories + " mutation directories. (Increase --width)");
+		}
+		this.hotDirectories = directories.subList(0, numHotDirectories);
+		this.mutationDirectories = directories.subList(numHotDirectories, 2 * numHotDirectories);
+		this.coldDirectories = new ArrayList<String>(directories.subList(2 * numHotDirectories, directories.size()));
+		/* A fixed seed, so that runs on the same tree request the cold directories in the same order. */
+		Collections.shuffle(coldDirectories, new Random(42));
+		this.nextColdDirectory = new AtomicInteger();
+
+		Map<RequestType, Integer> mix = options.getMix();
+		this.requestTypes = mix.keySet().toArray(new RequestType[mix.size()]);
+		this.cumulativeWeights = new int[requestTypes.length];
+		int totalWeight = 0;
+		for (int i = 0; i < requestTypes.length; i++) {
+			totalWeight += mix.get(requestTypes[i]);
+			cumulativeWeights[i] = totalWeight;
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		LoadTestOptions options;
+		try {
+			options = LoadTestOptions.parse(args);
+		} catch (IllegalArgumentException iae) {
+			System.err.println(iae.getMessage());
+			System.err.println(USAGE);
+			System.exit(2);
+			return;
+		}
+
+		Path root = Files.createTempDirectory("directorylisting-loadtest-");
+		System.out.println("Generating a " + options.getShape().name().toLowerCase() + " tree in " + root + "...");
+		long generateStart = System.nanoTime();
+		SyntheticDirectoryTree tree = SyntheticDirectoryTree.generate(root, options);
+		System.out.printf("Generated %d directories and a directory of %d entries in %.1f s.%n",
+						tree.getDirectories().size(), options.getLargeDirectoryEntries(), (System.nanoTime() - generateStart) / 1e9);
+
+		List<String> applicationArgs = new ArrayList<String>();
+		applicationArgs.add("--server.port=0");
+		applicationArgs.addAll(options.getApplicationArgs());
+		ConfigurableApplicationContext context = SpringApplication.run(DirectoryListingApplication.class,
+						applicationArgs.toArray(new String[applicationArgs.size()]));
+		try {
+			int port = ((EmbeddedWebApplicationContext) context).getEmbeddedServletContainer().getPort();
+			new LoadTest(options, tree, port).run();
+		} finally {
+			context.close();
+			if (options.getKeepTree()) {
+				System.out.println("Kept the tree in " + root + ".");
+			} else {
+				tree.delete();
+			}
+		}
+		/* The thread watching the cached directories is not a daemon thread, so it would keep the JVM running. */
+		System.exit(0);
+	}
+
+	/* Runs the clients through the warmup and the measurement, and reports the results. */
+	private void run() throws InterruptedException {
+		List<Client> clients = new ArrayList<Client>(options.getClients());
+		List<Thread> clientThreads = new ArrayList<Thread>(options.getClients());
+		for (int i = 0; i < options.getClients(); i++) {
+			Client client = new Client(i);
+			Thread clientThread = new Thread(client, "load-test-client-" + i);
+			clients.add(client);
+			clientThreads.add(clientThread);
+			clientThread.start();
+		}
+
+		System.out.println("Warming up for " + options.getWarmupSeconds() + " s with " + options.getClients() + " clients...");
+		Thread.sleep(options.getWarmupSeconds() * 1000L);
+		int coldWarmupRequests = Math.min(nextColdDirectory.get(), coldDirectories.size());
+		measuring = true;
+		long measureStart = System.nanoTime();
+		System.out.println("Measuring for " + options.getDurationSeconds() + " s...");
+		Thread.sleep(options.getDurationSeconds() * 1000L);
+		stopped = true;
+		double measuredSeconds = (System.nanoTime() - measureStart) / 1e9;
+		for (Thread clientThread : clientThreads) {
+			clientThread.join();
+		}
+
+		Map<RequestType, LatencyRecorder> recorders = new EnumMap<RequestType, LatencyRecorder>(RequestType.class);
+		LatencyRecorder totalRecorder = new LatencyRecorder();
+		for (RequestType requestType : requestTypes) {
+			LatencyRecorder typeRecorder = new LatencyRecorder();
+			for (Client client : clients) {
+				typeRecorder.addAll(client.recorders.get(requestType));
+			}
+			totalRecorder.addAll(typeRecorder);
+			recorders.put(requestType, typeRecorder);
+		}
+
+		System.out.println();
+		System.out.printf("%-10s %10s %8s %10s %10s %10s %10s %10s%n", "request", "count", "errors", "req/s", "p50 ms", "p99 ms", "p999 ms", "max ms");
+		for (Map.Entry<RequestType, LatencyRecorder> recorderEntry : recorders.entrySet()) {
+			printResult(recorderEntry.getKey().name().toLowerCase().replace('_', '-'), recorderEntry.getValue(), measuredSeconds);
+		}
+		printResult("total", totalRecorder, measuredSeconds);
+		if (nextColdDirectory.get() > coldDirectories.size()) {
+			System.out.println();
+			System.out.println("All " + coldDirectories.size() + " cold directories were requested (" + coldWarmupRequests
+							+ " during the warmup), the remaining cold requests were made for hot directories. (Increase --width)");
+		}
+	}
+
+	private static void printResult(String name, LatencyRecorder recorder, double measuredSeconds) {
+		System.out.printf("%-10s %10d %8d %10.1f %10.2f %10.2f %10.2f %10.2f%n", name, recorder.getCount(), recorder.getErrorCount(),
+						recorder.getCount() / measuredSeconds,
+						recorder.getPercentile(50) / 1e6, recorder.getPercentile(99) / 1e6,
+						recorder.getPercentile(99.9) / 1e6, recorder.getPercentile(100) / 1e6);
+	}
+
+	/* Chooses the type of the next request at random, according to the mix. */
+	private RequestType nextRequestType() {
+		int weight = ThreadLocalRandom.current().nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+		int i = 0;
+		while (weight >= cumulativeWeights[i]) {
+			i++;
+		}
+		return requestTypes[i];
+	}
+
+	/**
+	 * A client making requests one after the other until the load test is stopped.
+	 */
+	private class Client implements Runnable {
+
+		private final int clientId;
+		private final Map<RequestType, LatencyRecorder> recorders;
+
+		Client(int clientId) {
+			this.clientId = clientId;
+			this.recorders = new EnumMap<RequestType, LatencyRecorder>(RequestType.class);
+			for (RequestType requestType : RequestType.values()) {
+				recorders.put(requestType, new LatencyRecorder());
+			}
+		}
+
+		@Override
+		public void run() {
+			ThreadLocalRandom random = ThreadLocalRandom.current();
+			while (!stopped) {
+				RequestType requestType = nextRequestType();
+				String query;
+				try {
+					query = createQuery(requestType, random);
+				} catch (IOException ioe) {
+					throw new IllegalStateException("Could not change the tree.", ioe);
+				}
+				boolean measured = measuring;
+				long requestStart = System.nanoTime();
+				boolean succeeded = request(query);
+				long latency = System.nanoTime() - requestStart;
+				if (measured && !stopped) {
+					if (succeeded) {
+						recorders.get(requestType).record(latency);
+					} else {
+						recorders.get(requestType).recordError();
+					}
+				}
+			}
+		}
+
+		/* Creates the query of a request of a type, a mutation request first changes its directory. */
+		private String createQuery(RequestType requestType, ThreadLocalRandom random) throws IOException {
+			switch (requestType) {
+			case COLD:
+				int coldIndex = nextColdDirectory.getAndIncrement();
+				if (coldIndex < coldDirectories.size()) {
+					return createQuery(coldDirectories.get(coldIndex), 1);
+				}
+				return createQuery(hotDirectories.get(random.nextInt(hotDirectories.size())), 1);
+			case HOT:
+				return createQuery(hotDirectories.get(random.nextInt(hotDirectories.size())), 1);
+			case DEEP_PAGE:
+				int numPages = Math.max((options.getLargeDirectoryEntries() + options.getPageSize() - 1) / options.getPageSize(), 1);
+				/* A page among the last tenth of the pages. */
+				int page = numPages - random.nextInt(Math.max(numPages / 10, 1));
+				return createQuery(tree.getLargeDirectory(), page);
+			case MUTATION:
+				String mutationDirectory = mutationDirectories.get(random.nextInt(mutationDirectories.size()));
+				Path mutationFile = Paths.get(mutationDirectory, "mutation-" + clientId + ".tmp");
+				if (!Files.deleteIfExists(mutationFile)) {
+					Files.createFile(mutationFile);
+				}
+				return createQuery(mutationDirectory, 1);
+			default:
+				throw new IllegalArgumentException("Unknown request type " + requestType + ".");
+			}
+		}
+
+		private String createQuery(String directory, int page) throws IOException {
+			return "dpath=" + URLEncoder.encode(directory, "UTF-8") + "&page=" + page + "&psize=" + options.getPageSize();
+		}
+
+		/* Makes a request and reads the whole response, returns true if the response has status 200. */
+		private boolean request(String query) {
+			try {
+				HttpURLConnection connection = (HttpURLConnection) new URL(listUrl + "?" + query).openConnection();
+				connection.setRequestProperty("Accept", options.getAccept());
+				int status = connection.getResponseCode();
+				InputStream body = (status < 400) ? connection.getInputStream() : connection.getErrorStream();
+				if (body != null) {
+					try {
+						byte[] buffer = new byte[8192];
+						while (body.read(buffer) >= 0) {
+							/* The response is read to the end, so that the connection can be reused. */
+						}
+					} finally {
+						body.close();
+					}
+				}
+				return status == HttpURLConnection.HTTP_OK;
+			} catch (IOException ioe) {
+				return false;
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,187 @@
+package spring.loadtest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The options of a load test run, parsed from command line arguments of the form --name=value.
+ * Arguments that are not load test options, such as --directorylisting.cache.max-entries=1000, are passed on to the service.
+ * @author N. H. Weideman
+ */
+public class LoadTestOptions {
+
+	private TreeShape shape = TreeShape.MIXED;
+	public TreeShape getShape() {
+		return shape;
+	}
+
+	/* The number of directories below the root, or the number of chains for deep trees. */
+	private int width = 200;
+	public int getWidth() {
+		return width;
+	}
+
+	/* The number of nested directories of a chain. */
+	private int depth = 8;
+	public int getDepth() {
+		return depth;
+	}
+
+	/* The number of files in each generated directory. */
+	private int filesPerDirectory = 50;
+	public int getFilesPerDirectory() {
+		return filesPerDirectory;
+	}
+
+	/* The number of entries of the large directory that deep page requests are made for. */
+	private int largeDirectoryEntries = 50000;
+	public int getLargeDirectoryEntries() {
+		return largeDirectoryEntries;
+	}
+
+	/* The number of directories hot and mutation requests are made for. */
+	private int hotDirectories = 16;
+	public int getHotDirectories() {
+		return hotDirectories;
+	}
+
+	private int pageSize = 100;
+	public int getPageSize() {
+		return pageSize;
+	}
+
+	private int clients = 16;
+	public int getClients() {
+		return clients;
+	}
+
+	/* The time in seconds requests are made before they are measured. */
+	private int warmupSeconds = 5;
+	public int getWarmupSeconds() {
+		return warmupSeconds;
+	}
+
+	/* The time in seconds requests are measured. */
+	private int durationSeconds = 30;
+	public int getDurationSeconds() {
+		return durationSeconds;
+	}
+
+	private String accept = "application/json";
+	public String getAccept() {
+		return accept;
+	}
+
+	/* The relative number of requests of each type. */
+	private final Map<RequestType, Integer> mix;
+	public Map<RequestType, Integer> getMix() {
+		return Collections.unmodifiableMap(mix);
+	}
+
+	/* Whether the generated tree is kept after the run. */
+	private boolean keepTree = false;
+	public boolean getKeepTree() {
+		return keepTree;
+	}
+
+	private final List<String> applicationArgs;
+	public List<String> getApplicationArgs() {
+		return Collections.unmodifiableList(applicationArgs);
+	}
+
+	private LoadTestOptions() {
+		this.mix = new EnumMap<RequestType, Integer>(RequestType.class);
+		mix.put(RequestType.COLD, 10);
+		mix.put(RequestType.HOT, 60);
+		mix.put(RequestType.DEEP_PAGE, 20);
+		mix.put(RequestType.MUTATION, 10);
+		this.applicationArgs = new ArrayList<String>();
+	}
+
+	/**
+	 * Parses the options of a load test run.
+	 * @param args The command line arguments
+	 * @return The options, with defaults for the options that are not given
+	 * @throws IllegalArgumentException If an option is invalid
+	 */
+	public static LoadTestOptions parse(String[] args) {
+		LoadTestOptions options = new LoadTestOptions();
+		for (String arg : args) {
+			int separatorIndex = arg.indexOf('=');
+			if (!arg.startsWith("--") || separatorIndex < 0) {
+				throw new IllegalArgumentException("Invalid argument " + arg + ". (Arguments have the form --name=value)");
+			}
+			String name = arg.substring(2, separatorIndex);
+			String value = arg.substring(separatorIndex + 1);
+			switch (name) {
+			case "shape":
+				options.shape = TreeShape.parse(value);
+				break;
+			case "width":
+				options.width = parsePositive(name, value);
+				break;
+			case "depth":
+				options.depth = parsePositive(name, value);
+				break;
+			case "files":
+				options.filesPerDirectory = parsePositive(name, value);
+				break;
+			case "large-entries":
+				options.largeDirectoryEntries = parsePositive(name, value);
+				break;
+			case "hot-directories":
+				options.hotDirectories = parsePositive(name, value);
+				break;
+			case "psize":
+				options.pageSize = parsePositive(name, value);
+				break;
+			case "clients":
+				options.clients = parsePositive(name, value);
+				break;
+			case "warmup":
+				options.warmupSeconds = parsePositive(name, value);
+				break;
+			case "duration":
+				options.durationSeconds = parsePositive(name, value);
+				break;
+			case "accept":
+				options.accept = value;
+				break;
+			case "mix":
+				options.mix.clear();
+				for (String part : value.split(",")) {
+					String[] typeAndWeight = part.split(":");
+					if (typeAndWeight.length != 2) {
+						throw new IllegalArgumentException("Invalid mix " + value + ". (Example: cold:10,hot:60,deep-page:20,mutation:10)");
+					}
+					options.mix.put(RequestType.parse(typeAndWeight[0]), parsePositive(name, typeAndWeight[1]));
+				}
+				break;
+			case "keep":
+				options.keepTree = Boolean.parseBoolean(value);
+				break;
+			default:
+				options.applicationArgs.add(arg);
+			}
+		}
+		return options;
+	}
+
+	/* Parses the value of an option that must be a positive number. */
+	private static int parsePositive(String name, String value) {
+		int number;
+		try {
+			number = Integer.parseInt(value);
+		} catch (NumberFormatException nfe) {
+			throw new IllegalArgumentException("Invalid " + name + " " + value + ". (Must be a positive number)");
+		}
+		if (number < 1) {
+			throw new IllegalArgumentException("Invalid " + name + " " + value + ". (Must be a positive number)");
+		}
+		return number;
+	}
+
+}
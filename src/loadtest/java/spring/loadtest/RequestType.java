@@ -0,0 +1,31 @@
+package spring.loadtest;
+
+/**
+ * The kinds of requests the load test replays.
+ * @author N. H. Weideman
+ */
+public enum RequestType {
+	/* A directory that has not been requested before, so that it is read from the file system. */
+	COLD,
+	/* One of a small set of directories that are requested over and over, so that they are served from the cache. */
+	HOT,
+	/* A page near the end of a large directory. */
+	DEEP_PAGE,
+	/* A directory in which a file was just created or deleted, so that its cached listing is being updated. */
+	MUTATION;
+
+	/**
+	 * Parses a request type.
+	 * @param typeStr The name of the request type, in any case, with dashes or underscores
+	 * @return The request type
+	 * @throws IllegalArgumentException If the request type does not exist
+	 */
+	public static RequestType parse(String typeStr) {
+		for (RequestType requestType : values()) {
+			if (requestType.name().equalsIgnoreCase(typeStr.replace('-', '_'))) {
+				return requestType;
+			}
+		}
+		throw new IllegalArgumentException("Invalid request type " + typeStr + ". (Types: cold, hot, deep-page, mutation)");
+	}
+}
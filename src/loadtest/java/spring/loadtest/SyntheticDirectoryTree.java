@@ -0,0 +1,114 @@
+package spring.loadtest;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A generated directory tree to run the load test on.
+ * Besides the directories of the chosen shape, the tree contains one large directory for deep page requests.
+ * @author N. H. Weideman
+ */
+public class SyntheticDirectoryTree {
+
+	private final Path root;
+	public Path getRoot() {
+		return root;
+	}
+
+	/* The canonical paths of the generated directories, except the large directory, in the order they were created. */
+	private final List<String> directories;
+	public List<String> getDirectories() {
+		return Collections.unmodifiableList(directories);
+	}
+
+	private final String largeDirectory;
+	public String getLargeDirectory() {
+		return largeDirectory;
+	}
+
+	private SyntheticDirectoryTree(Path root, List<String> directories, String largeDirectory) {
+		this.root = root;
+		this.directories = directories;
+		this.largeDirectory = largeDirectory;
+	}
+
+	/**
+	 * Generates a directory tree.
+	 * @param root The empty directory to generate the tree in
+	 * @param options The shape and size of the tree
+	 * @return The generated tree
+	 * @throws IOException If an I/O error occurs
+	 */
+	public static SyntheticDirectoryTree generate(Path root, LoadTestOptions options) throws IOException {
+		List<String> directories = new ArrayList<String>();
+		switch (options.getShape()) {
+		case WIDE:
+			for (int i = 0; i < options.getWidth(); i++) {
+				createDirectory(root.resolve(String.format("dir-%05d", i)), options.getFilesPerDirectory(), directories);
+			}
+			break;
+		case DEEP:
+			for (int i = 0; i < options.getWidth(); i++) {
+				createChain(root.resolve(String.format("chain-%05d", i)), options.getDepth(), options.getFilesPerDirectory(), directories);
+			}
+			break;
+		case MIXED:
+			for (int i = 0; i < options.getWidth(); i++) {
+				Path directory = root.resolve(String.format("dir-%05d", i));
+				createDirectory(directory, options.getFilesPerDirectory(), directories);
+				createChain(directory.resolve("nested"), Math.max(options.getDepth() / 2, 1), options.getFilesPerDirectory(), directories);
+			}
+			break;
+		}
+		List<String> largeDirectoryList = new ArrayList<String>(1);
+		createDirectory(root.resolve("large"), options.getLargeDirectoryEntries(), largeDirectoryList);
+		return new SyntheticDirectoryTree(root, directories, largeDirectoryList.get(0));
+	}
+
+	/**
+	 * Deletes the generated tree.
+	 * @throws IOException If an I/O error occurs
+	 */
+	public void delete() throws IOException {
+		Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				Files.delete(file);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+				Files.delete(dir);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	/* Creates a chain of nested directories, each containing files. */
+	private static void createChain(Path directory, int depth, int numFiles, List<String> directories) throws IOException {
+		for (int level = 0; level < depth; level++) {
+			createDirectory(directory, numFiles, directories);
+			directory = directory.resolve(String.format("level-%03d", level + 1));
+		}
+	}
+
+	/* Creates a directory with files of varying sizes. */
+	private static void createDirectory(Path directory, int numFiles, List<String> directories) throws IOException {
+		Files.createDirectories(directory);
+		byte[] content = new byte[256];
+		for (int i = 0; i < numFiles; i++) {
+			Files.write(directory.resolve(String.format("file-%06d.dat", i)), Arrays.copyOf(content, (i * 37) % content.length));
+		}
+		directories.add(directory.toFile().getCanonicalPath());
+	}
+
+}
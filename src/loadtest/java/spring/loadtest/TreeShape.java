@@ -0,0 +1,29 @@
+package spring.loadtest;
+
+/**
+ * The shapes of the synthetic directory trees the load test is run on.
+ * @author N. H. Weideman
+ */
+public enum TreeShape {
+	/* Many directories directly below the root. */
+	WIDE,
+	/* A few chains of nested directories. */
+	DEEP,
+	/* Directories below the root that each contain a short chain of nested directories. */
+	MIXED;
+
+	/**
+	 * Parses a tree shape.
+	 * @param shapeStr The name of the shape, in any case
+	 * @return The tree shape
+	 * @throws IllegalArgumentException If the shape does not exist
+	 */
+	public static TreeShape parse(String shapeStr) {
+		for (TreeShape treeShape : values()) {
+			if (treeShape.name().equalsIgnoreCase(shapeStr)) {
+				return treeShape;
+			}
+		}
+		throw new IllegalArgumentException("Invalid tree shape " + shapeStr + ". (Shapes: wide, deep, mixed)");
+	}
+}
@@ -0,0 +1,179 @@
+package spring.datarepresentation;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import spring.directorylisting.DirectoryListingEntry;
+import spring.rest.ListingPage;
+import spring.rest.response.LinkTemplate;
+
+/**
+ * A class for writing the JSON representation of the listings of a batch of directories directly to the response stream.
+ * The directories are listed in parallel and each one is written and flushed as soon as its page has been selected,
+ * so the directories appear in no particular order and carry the index of their path in the request.
+ * A directory that could not be listed is written with an error instead of failing the whole batch.
+ * @author N. H. Weideman
+ */
+public class DirectoryBatchJsonStream implements StreamingResponseBody {
+
+	/**
+	 * The listing page, or the error, of a single directory of the batch.
+	 */
+	private static class BatchListing {
+
+		private final int index;
+		private final ListingPage listingPage;
+		private final String error;
+
+		private BatchListing(int index, ListingPage listingPage, String error) {
+			this.index = index;
+			this.listingPage = listingPage;
+			this.error = error;
+		}
+
+	}
+
+	private final JsonFactory jsonFactory;
+	private final String url;
+	private final LinkTemplate directoryLinkTemplate;
+	private final List<String> dpaths;
+	private final long deadline;
+
+	/* The directories are added by the threads that listed them and written by the thread writing the response. */
+	private final BlockingQueue<BatchListing> batchListings = new LinkedBlockingQueue<BatchListing>();
+
+	/**
+	 * Creates a new stream for a batch of directories.
+	 * @param jsonFactory The factory to create the JSON generator with
+	 * @param url The URL of the request
+	 * @param listUrl The URL of a directory listing request, which the links of the entries are based on
+	 * @param dpaths The paths of the directories, in the order of the request
+	 * @param timeout The time in milliseconds from now after which directories that have not been listed are written as errors
+	 */
+	public DirectoryBatchJsonStream(JsonFactory jsonFactory,
+					String url,
+					String listUrl,
+					List<String> dpaths,
+					long timeout) {
+		this.jsonFactory = jsonFactory;
+		this.url = url;
+		this.directoryLinkTemplate = LinkTemplate.forDirectories(listUrl);
+		this.dpaths = dpaths;
+		this.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+	}
+
+	/**
+	 * Adds the selected page of a directory of the batch, which may be called by any thread.
+	 * @param index The index of the path of the directory in the request
+	 * @param listingPage The page of the directory to write
+	 */
+	public void addListing(int index, ListingPage listingPage) {
+		batchListings.add(new BatchListing(index, listingPage, null));
+	}
+
+	/**
+	 * Adds a directory of the batch that could not be listed, which may be called by any thread.
+	 * @param index The index of the path of the directory in the request
+	 * @param error The message describing why the directory could not be listed
+	 */
+	public void addError(int index, String error) {
+		batchListings.add(new BatchListing(index, null, error));
+	}
+
+	/**
+	 * Writes the JSON representation of the directories to a stream as they are added, until all have been written or the time is up.
+	 * @param outputStream The stream to write to
+	 * @throws IOException If an I/O error occurs
+	 */
+	@Override
+	public void writeTo(OutputStream outputStream) throws IOException {
+		JsonGenerator jsonGenerator = jsonFactory.createGenerator(outputStream, JsonEncoding.UTF8);
+		jsonGenerator.writeStartObject();
+		jsonGenerator.writeStringField("url", url);
+		jsonGenerator.writeNumberField("numDirectories", dpaths.size());
+		jsonGenerator.writeArrayFieldStart("directories");
+		jsonGenerator.flush();
+
+		boolean[] written = new boolean[dpaths.size()];
+		int numWritten = 0;
+		int numErrors = 0;
+		while (numWritten < dpaths.size()) {
+			BatchListing batchListing;
+			try {
+				batchListing = batchListings.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for the directories of the batch.");
+			}
+			if (batchListing == null) {
+				break;
+			}
+			if (batchListing.error == null) {
+				writeListing(jsonGenerator, batchListing);
+			} else {
+				writeError(jsonGenerator, batchListing.index, batchListing.error);
+				numErrors++;
+			}
+			jsonGenerator.flush();
+			written[batchListing.index] = true;
+			numWritten++;
+		}
+
+		/* Directories that are still being read when the time is up are reported, the reads themselves are left to finish and be cached. */
+		for (int i = 0; i < written.length; i++) {
+			if (!written[i]) {
+				writeError(jsonGenerator, i, "Timed out while reading the directory.");
+				numErrors++;
+			}
+		}
+
+		jsonGenerator.writeEndArray();
+		jsonGenerator.writeNumberField("numErrors", numErrors);
+		jsonGenerator.writeEndObject();
+		jsonGenerator.close();
+	}
+
+	/* Writes the selected page of a directory, with the same page metadata and entries as a directory listing response. */
+	private void writeListing(JsonGenerator jsonGenerator, BatchListing batchListing) throws IOException {
+		ListingPage listingPage = batchListing.listingPage;
+		List<DirectoryListingEntry> directoryEntries = listingPage.getDirectoryEntries();
+
+		jsonGenerator.writeStartObject();
+		jsonGenerator.writeNumberField("index", batchListing.index);
+		jsonGenerator.writeStringField("dpath", dpaths.get(batchListing.index));
+		jsonGenerator.writeStringField("fullPath", listingPage.getDirectoryPath());
+		jsonGenerator.writeNumberField("numEntries", directoryEntries.size());
+		jsonGenerator.writeNumberField("numPages", listingPage.getNumPages());
+		jsonGenerator.writeNumberField("pageNumber", listingPage.getPageNumber());
+		jsonGenerator.writeNumberField("pageSize", listingPage.getPageSize());
+		jsonGenerator.writeStringField("firstLink", listingPage.getFirstLink());
+		jsonGenerator.writeStringField("lastLink", listingPage.getLastLink());
+		jsonGenerator.writeStringField("prevLink", listingPage.getPrevLink());
+		jsonGenerator.writeStringField("nextLink", listingPage.getNextLink());
+		jsonGenerator.writeArrayFieldStart("directoryEntries");
+		for (DirectoryListingEntry directoryEntry : directoryEntries) {
+			DirectoryListingJsonStream.writeEntry(jsonGenerator, directoryLinkTemplate, listingPage.getDirectoryPath(), directoryEntry);
+		}
+		jsonGenerator.writeEndArray();
+		jsonGenerator.writeEndObject();
+	}
+
+	/* Writes a directory that could not be listed. */
+	private void writeError(JsonGenerator jsonGenerator, int index, String error) throws IOException {
+		jsonGenerator.writeStartObject();
+		jsonGenerator.writeNumberField("index", index);
+		jsonGenerator.writeStringField("dpath", dpaths.get(index));
+		jsonGenerator.writeStringField("error", error);
+		jsonGenerator.writeEndObject();
+	}
+
+}
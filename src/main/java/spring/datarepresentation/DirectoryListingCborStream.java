@@ -0,0 +1,134 @@
+package spring.datarepresentation;
+
+import java.util.List;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import spring.directorylisting.DirectoryListingEntry;
+import spring.rest.ListingPage;
+import spring.rest.response.DirectoryListingResponse;
+import spring.rest.response.LinkTemplate;
+
+/**
+ * A class for writing a compact binary representation of a directory listing response in CBOR (RFC 7049) directly to a stream.
+ * The page metadata has the same fields as the JSON response. The names of the fields of an entry are written once, in "entryFields",
+ * and each entry is written as an array of its values in the same order, with the times as nanoseconds since the epoch.
+ * @author N. H. Weideman
+ */
+public class DirectoryListingCborStream implements StreamingResponseBody {
+
+	private static final String[] ENTRY_FIELDS = {
+		"fileName",
+		"link",
+		"isDirectory",
+		"isRegularFile",
+		"isSymbolicLink",
+		"isOther",
+		"size",
+		"creationTime",
+		"lastModifiedTime",
+		"lastAccessTime",
+		"fileKey"
+	};
+
+	private final CBORFactory cborFactory;
+	private final String url;
+	private final String fullPath;
+	private final String directoryPath;
+	private final int numPages;
+	private final int pageNumber;
+	private final int pageSize;
+	private final String firstLink;
+	private final String lastLink;
+	private final String prevLink;
+	private final String nextLink;
+	private final List<DirectoryListingEntry> directoryEntries;
+
+	public DirectoryListingCborStream(CBORFactory cborFactory, ListingPage listingPage) {
+		this.cborFactory = cborFactory;
+		this.url = listingPage.getUrl();
+		this.fullPath = listingPage.getDpath();
+		this.directoryPath = listingPage.getDirectoryPath();
+		this.numPages = listingPage.getNumPages();
+		this.pageNumber = listingPage.getPageNumber();
+		this.pageSize = listingPage.getPageSize();
+		this.firstLink = listingPage.getFirstLink();
+		this.lastLink = listingPage.getLastLink();
+		this.prevLink = listingPage.getPrevLink();
+		this.nextLink = listingPage.getNextLink();
+		this.directoryEntries = listingPage.getDirectoryEntries();
+	}
+
+	/**
+	 * Estimates the size of the CBOR representation, to size the buffer it is rendered into.
+	 * @return The estimated size in bytes
+	 */
+	public int getEstimatedSize() {
+		return 1024 + 96 * directoryEntries.size();
+	}
+
+	/**
+	 * Writes the CBOR representation of the directory listing response to a stream.
+	 * @param outputStream The stream to write to
+	 * @throws IOException If an I/O error occurs
+	 */
+	@Override
+	public void writeTo(OutputStream outputStream) throws IOException {
+		JsonGenerator cborGenerator = cborFactory.createGenerator(outputStream);
+
+		cborGenerator.writeStartObject();
+		cborGenerator.writeStringField("url", url);
+		cborGenerator.writeStringField("fullPath", fullPath);
+		cborGenerator.writeNumberField("numEntries", directoryEntries.size());
+		cborGenerator.writeNumberField("numPages", numPages);
+		cborGenerator.writeNumberField("pageNumber", pageNumber);
+		cborGenerator.writeNumberField("pageSize", pageSize);
+		cborGenerator.writeStringField("firstLink", firstLink);
+		cborGenerator.writeStringField("lastLink", lastLink);
+		cborGenerator.writeStringField("prevLink", prevLink);
+		cborGenerator.writeStringField("nextLink", nextLink);
+
+		cborGenerator.writeFieldName("entryFields");
+		cborGenerator.writeStartArray(ENTRY_FIELDS.length);
+		for (String entryField : ENTRY_FIELDS) {
+			cborGenerator.writeString(entryField);
+		}
+		cborGenerator.writeEndArray();
+
+		LinkTemplate directoryLinkTemplate = LinkTemplate.forDirectories(url);
+		cborGenerator.writeFieldName("directoryEntries");
+		cborGenerator.writeStartArray(directoryEntries.size());
+		for (DirectoryListingEntry directoryEntry : directoryEntries) {
+			writeEntry(cborGenerator, directoryLinkTemplate, directoryEntry);
+		}
+		cborGenerator.writeEndArray();
+
+		cborGenerator.writeEndObject();
+		cborGenerator.close();
+	}
+
+	/* Writes the values of a single directory entry, in the order of the entry fields. */
+	private void writeEntry(JsonGenerator cborGenerator, LinkTemplate directoryLinkTemplate, DirectoryListingEntry directoryEntry) throws IOException {
+		BasicFileAttributes basicFileAttributes = directoryEntry.getFileAttributes();
+
+		cborGenerator.writeStartArray(ENTRY_FIELDS.length);
+		cborGenerator.writeString(directoryEntry.getFileName());
+		cborGenerator.writeString(DirectoryListingResponse.createEntryLink(directoryLinkTemplate, directoryPath, directoryEntry));
+		cborGenerator.writeBoolean(basicFileAttributes.isDirectory());
+		cborGenerator.writeBoolean(basicFileAttributes.isRegularFile());
+		cborGenerator.writeBoolean(basicFileAttributes.isSymbolicLink());
+		cborGenerator.writeBoolean(basicFileAttributes.isOther());
+		cborGenerator.writeNumber(basicFileAttributes.size());
+		cborGenerator.writeNumber(basicFileAttributes.creationTime().to(TimeUnit.NANOSECONDS));
+		cborGenerator.writeNumber(basicFileAttributes.lastModifiedTime().to(TimeUnit.NANOSECONDS));
+		cborGenerator.writeNumber(basicFileAttributes.lastAccessTime().to(TimeUnit.NANOSECONDS));
+		cborGenerator.writeString(String.valueOf(basicFileAttributes.fileKey()));
+		cborGenerator.writeEndArray();
+	}
+
+}
@@ -0,0 +1,199 @@
+package spring.datarepresentation;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.attribute.BasicFileAttributes;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import spring.directorylisting.DirectoryListingEntry;
+import spring.rest.ListingPage;
+import spring.rest.response.DirectoryListingResponse;
+import spring.rest.response.DirectoryListingResponseEntry;
+import spring.rest.response.LinkTemplate;
+
+/**
+ * A class for writing the HTML representation of a directory listing response directly to a stream.
+ * Each entry is written as soon as it is converted, through a buffer that is reused by the thread,
+ * so neither response objects nor strings are built for the entries and their attributes.
+ * The file names and the requested path are escaped, so that names holding markup are shown as they are.
+ * @author N. H. Weideman
+ */
+public class DirectoryListingHtmlStream implements StreamingResponseBody {
+
+	private static final int CREATION_TIME = 0;
+	private static final int FILE_KEY = 1;
+	private static final int IS_DIRECTORY = 2;
+	private static final int IS_OTHER = 3;
+	private static final int IS_REGULAR_FILE = 4;
+	private static final int IS_SYMBOLIC_LINK = 5;
+	private static final int LAST_ACCESS_TIME = 6;
+	private static final int LAST_MODIFIED_TIME = 7;
+	private static final int SIZE = 8;
+
+	/* The attributes are listed in the iteration order of the attribute map of a response entry. */
+	private static final String[] ATTRIBUTE_PREFIXES;
+	private static final int[] ATTRIBUTE_ORDER;
+	static {
+		Map<String, Integer> attributeMap = new HashMap<String, Integer>();
+		attributeMap.put(DirectoryListingResponseEntry.CREATION_TIME_ATTRIBUTE_NAME, CREATION_TIME);
+		attributeMap.put(DirectoryListingResponseEntry.FILE_KEY_ATTRIBUTE_NAME, FILE_KEY);
+		attributeMap.put(DirectoryListingResponseEntry.IS_DIRECTORY_ATTRIBUTE_NAME, IS_DIRECTORY);
+		attributeMap.put(DirectoryListingResponseEntry.IS_OTHER_ATTRIBUTE_NAME, IS_OTHER);
+		attributeMap.put(DirectoryListingResponseEntry.IS_REGULAR_FILE_ATTRIBUTE_NAME, IS_REGULAR_FILE);
+		attributeMap.put(DirectoryListingResponseEntry.IS_SYMBOLIC_LINK_ATTRIBUTE_NAME, IS_SYMBOLIC_LINK);
+		attributeMap.put(DirectoryListingResponseEntry.LAST_ACCESS_TIME_ATTRIBUTE_NAME, LAST_ACCESS_TIME);
+		attributeMap.put(DirectoryListingResponseEntry.LAST_MODIFIED_TIME_ATTRIBUTE_NAME, LAST_MODIFIED_TIME);
+		attributeMap.put(DirectoryListingResponseEntry.SIZE_ATTRIBUTE_NAME, SIZE);
+
+		ATTRIBUTE_PREFIXES = new String[attributeMap.size()];
+		ATTRIBUTE_ORDER = new int[attributeMap.size()];
+		int i = 0;
+		for (Map.Entry<String, Integer> attribute : attributeMap.entrySet()) {
+			ATTRIBUTE_PREFIXES[i] = "<li>" + attribute.getKey() + ": ";
+			ATTRIBUTE_ORDER[i] = attribute.getValue();
+			i++;
+		}
+	}
+
+	private final String url;
+	private final String fullPath;
+	private final String directoryPath;
+	private final int numPages;
+	private final int pageNumber;
+	private final String firstLink;
+	private final String lastLink;
+	private final String prevLink;
+	private final String nextLink;
+	private final List<DirectoryListingEntry> directoryEntries;
+
+	public DirectoryListingHtmlStream(ListingPage listingPage) {
+		this.url = listingPage.getUrl();
+		this.fullPath = listingPage.getDpath();
+		this.directoryPath = listingPage.getDirectoryPath();
+		this.numPages = listingPage.getNumPages();
+		this.pageNumber = listingPage.getPageNumber();
+		this.firstLink = listingPage.getFirstLink();
+		this.lastLink = listingPage.getLastLink();
+		this.prevLink = listingPage.getPrevLink();
+		this.nextLink = listingPage.getNextLink();
+		this.directoryEntries = listingPage.getDirectoryEntries();
+	}
+
+	/**
+	 * Estimates the size of the HTML representation, to size the buffer it is rendered into.
+	 * @return The estimated size in bytes
+	 */
+	public int getEstimatedSize() {
+		return 1024 + 512 * directoryEntries.size();
+	}
+
+	/**
+	 * Writes the HTML representation of the directory listing response to a stream.
+	 * @param outputStream The stream to write to
+	 * @throws IOException If an I/O error occurs
+	 */
+	@Override
+	public void writeTo(OutputStream outputStream) throws IOException {
+		HtmlOutput htmlOutput = new HtmlOutput(outputStream);
+
+		htmlOutput.write("<h>Directory listing for: \"");
+		writeLink(htmlOutput, url, fullPath);
+		htmlOutput.write("\"</h><br>\n<br>\n");
+		writePageNavigation(htmlOutput);
+
+		LinkTemplate directoryLinkTemplate = LinkTemplate.forDirectories(url);
+		htmlOutput.write("<ul><br>\n");
+		for (DirectoryListingEntry directoryEntry : directoryEntries) {
+			writeEntry(htmlOutput, directoryLinkTemplate, directoryEntry);
+		}
+		htmlOutput.write("</ul><br>\n");
+
+		writePageNavigation(htmlOutput);
+		htmlOutput.flush();
+	}
+
+	/* Writes a single directory entry as a list item holding the list of its attributes. */
+	private void writeEntry(HtmlOutput htmlOutput, LinkTemplate directoryLinkTemplate, DirectoryListingEntry directoryEntry) throws IOException {
+		BasicFileAttributes basicFileAttributes = directoryEntry.getFileAttributes();
+
+		htmlOutput.write("<li>");
+		if (basicFileAttributes.isDirectory()) {
+			/* Create a link to the directory. */
+			writeLink(htmlOutput, DirectoryListingResponse.createEntryLink(directoryLinkTemplate, directoryPath, directoryEntry), directoryEntry.getFileName());
+		} else {
+			htmlOutput.writeText(directoryEntry.getFileName());
+		}
+		htmlOutput.write("<br>\n<ul><br>\n");
+
+		for (int i = 0; i < ATTRIBUTE_ORDER.length; i++) {
+			htmlOutput.write(ATTRIBUTE_PREFIXES[i]);
+			switch (ATTRIBUTE_ORDER[i]) {
+			case CREATION_TIME:
+				htmlOutput.write(basicFileAttributes.creationTime());
+				break;
+			case FILE_KEY:
+				htmlOutput.write(String.valueOf(basicFileAttributes.fileKey()));
+				break;
+			case IS_DIRECTORY:
+				htmlOutput.write(basicFileAttributes.isDirectory());
+				break;
+			case IS_OTHER:
+				htmlOutput.write(basicFileAttributes.isOther());
+				break;
+			case IS_REGULAR_FILE:
+				htmlOutput.write(basicFileAttributes.isRegularFile());
+				break;
+			case IS_SYMBOLIC_LINK:
+				htmlOutput.write(basicFileAttributes.isSymbolicLink());
+				break;
+			case LAST_ACCESS_TIME:
+				htmlOutput.write(basicFileAttributes.lastAccessTime());
+				break;
+			case LAST_MODIFIED_TIME:
+				htmlOutput.write(basicFileAttributes.lastModifiedTime());
+				break;
+			default:
+				htmlOutput.write(basicFileAttributes.size());
+				break;
+			}
+			htmlOutput.write("</li>\n");
+		}
+
+		htmlOutput.write("</ul><br>\n</li>\n");
+	}
+
+	/* Writes the page position and the links to the first, previous (if applicable), next (if applicable) and last pages. */
+	private void writePageNavigation(HtmlOutput htmlOutput) throws IOException {
+		htmlOutput.write("Page: ");
+		htmlOutput.write(pageNumber);
+		htmlOutput.write("/");
+		htmlOutput.write(numPages);
+		htmlOutput.write("<br>\n");
+
+		writeLink(htmlOutput, firstLink, "first");
+		htmlOutput.write(" ");
+		if (!prevLink.isEmpty()) {
+			writeLink(htmlOutput, prevLink, "prev");
+		}
+		htmlOutput.write(" ");
+		if (!nextLink.isEmpty()) {
+			writeLink(htmlOutput, nextLink, "next");
+		}
+		htmlOutput.write(" ");
+		writeLink(htmlOutput, lastLink, "last");
+		htmlOutput.write("<br>\n");
+	}
+
+	/* Writes an HTML hyperlink element, escaping the link and the text since they hold the requested path and the file names. */
+	private static void writeLink(HtmlOutput htmlOutput, String link, String linkText) throws IOException {
+		htmlOutput.write("<a href=\"");
+		htmlOutput.writeAttributeValue(link);
+		htmlOutput.write("\">");
+		htmlOutput.writeText(linkText);
+		htmlOutput.write("</a>");
+	}
+
+}
@@ -0,0 +1,120 @@
+package spring.datarepresentation;
+
+import java.util.List;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.attribute.BasicFileAttributes;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import spring.directorylisting.DirectoryListingEntry;
+import spring.rest.ListingPage;
+import spring.rest.response.DirectoryListingResponse;
+import spring.rest.response.DirectoryListingResponseEntry;
+import spring.rest.response.LinkTemplate;
+
+/**
+ * A class for writing the JSON representation of a directory listing response directly to the response stream.
+ * The JSON has the same structure as a serialized directory listing response, but each entry is written as soon
+ * as it is converted, so no response objects are built for the entries.
+ * @author N. H. Weideman
+ */
+public class DirectoryListingJsonStream implements StreamingResponseBody {
+
+	private final JsonFactory jsonFactory;
+	private final String url;
+	private final String fullPath;
+	private final String directoryPath;
+	private final int numPages;
+	private final int pageNumber;
+	private final int pageSize;
+	private final String firstLink;
+	private final String lastLink;
+	private final String prevLink;
+	private final String nextLink;
+	private final List<DirectoryListingEntry> directoryEntries;
+
+	public DirectoryListingJsonStream(JsonFactory jsonFactory, ListingPage listingPage) {
+		this.jsonFactory = jsonFactory;
+		this.url = listingPage.getUrl();
+		this.fullPath = listingPage.getDpath();
+		this.directoryPath = listingPage.getDirectoryPath();
+		this.numPages = listingPage.getNumPages();
+		this.pageNumber = listingPage.getPageNumber();
+		this.pageSize = listingPage.getPageSize();
+		this.firstLink = listingPage.getFirstLink();
+		this.lastLink = listingPage.getLastLink();
+		this.prevLink = listingPage.getPrevLink();
+		this.nextLink = listingPage.getNextLink();
+		this.directoryEntries = listingPage.getDirectoryEntries();
+	}
+
+	/**
+	 * Writes the JSON representation of the directory listing response to a stream.
+	 * @param outputStream The stream to write to
+	 * @throws IOException If an I/O error occurs
+	 */
+	@Override
+	public void writeTo(OutputStream outputStream) throws IOException {
+		JsonGenerator jsonGenerator = jsonFactory.createGenerator(outputStream, JsonEncoding.UTF8);
+
+		/* The page metadata is written first, so that a client can use it before all the entries have arrived. */
+		jsonGenerator.writeStartObject();
+		jsonGenerator.writeStringField("url", url);
+		jsonGenerator.writeStringField("fullPath", fullPath);
+		jsonGenerator.writeNumberField("numEntries", directoryEntries.size());
+		jsonGenerator.writeNumberField("numPages", numPages);
+		jsonGenerator.writeNumberField("pageNumber", pageNumber);
+		jsonGenerator.writeNumberField("pageSize", pageSize);
+		jsonGenerator.writeStringField("firstLink", firstLink);
+		jsonGenerator.writeStringField("lastLink", lastLink);
+		jsonGenerator.writeStringField("prevLink", prevLink);
+		jsonGenerator.writeStringField("nextLink", nextLink);
+
+		LinkTemplate directoryLinkTemplate = LinkTemplate.forDirectories(url);
+		jsonGenerator.writeArrayFieldStart("directoryEntries");
+		for (DirectoryListingEntry directoryEntry : directoryEntries) {
+			writeEntry(jsonGenerator, directoryLinkTemplate, directoryPath, directoryEntry);
+		}
+		jsonGenerator.writeEndArray();
+
+		jsonGenerator.writeEndObject();
+		jsonGenerator.close();
+	}
+
+	/* Writes a single directory entry of the directory with a canonical path, linking to its listing with a template created from the request URL. */
+	static void writeEntry(JsonGenerator jsonGenerator, LinkTemplate directoryLinkTemplate, String directoryPath, DirectoryListingEntry directoryEntry) throws IOException {
+		BasicFileAttributes basicFileAttributes = directoryEntry.getFileAttributes();
+		String link = DirectoryListingResponse.createEntryLink(directoryLinkTemplate, directoryPath, directoryEntry);
+
+		jsonGenerator.writeStartObject();
+		jsonGenerator.writeStringField("fileName", directoryEntry.getFileName());
+		jsonGenerator.writeStringField("link", link);
+		jsonGenerator.writeBooleanField("isDirectory", basicFileAttributes.isDirectory());
+
+		/* Attributes are written in the same form as the attribute map entries of a response entry. */
+		jsonGenerator.writeArrayFieldStart("attributes");
+		writeAttribute(jsonGenerator, DirectoryListingResponseEntry.CREATION_TIME_ATTRIBUTE_NAME, basicFileAttributes.creationTime().toString());
+		writeAttribute(jsonGenerator, DirectoryListingResponseEntry.FILE_KEY_ATTRIBUTE_NAME, basicFileAttributes.fileKey().toString());
+		writeAttribute(jsonGenerator, DirectoryListingResponseEntry.IS_DIRECTORY_ATTRIBUTE_NAME, String.valueOf(basicFileAttributes.isDirectory()));
+		writeAttribute(jsonGenerator, DirectoryListingResponseEntry.IS_OTHER_ATTRIBUTE_NAME, String.valueOf(basicFileAttributes.isOther()));
+		writeAttribute(jsonGenerator, DirectoryListingResponseEntry.IS_REGULAR_FILE_ATTRIBUTE_NAME, String.valueOf(basicFileAttributes.isRegularFile()));
+		writeAttribute(jsonGenerator, DirectoryListingResponseEntry.IS_SYMBOLIC_LINK_ATTRIBUTE_NAME, String.valueOf(basicFileAttributes.isSymbolicLink()));
+		writeAttribute(jsonGenerator, DirectoryListingResponseEntry.LAST_ACCESS_TIME_ATTRIBUTE_NAME, basicFileAttributes.lastAccessTime().toString());
+		writeAttribute(jsonGenerator, DirectoryListingResponseEntry.LAST_MODIFIED_TIME_ATTRIBUTE_NAME, basicFileAttributes.lastModifiedTime().toString());
+		writeAttribute(jsonGenerator, DirectoryListingResponseEntry.SIZE_ATTRIBUTE_NAME, String.valueOf(basicFileAttributes.size()));
+		jsonGenerator.writeEndArray();
+
+		jsonGenerator.writeEndObject();
+	}
+
+	/* Writes a single attribute as an object with one field. */
+	private static void writeAttribute(JsonGenerator jsonGenerator, String attributeName, String attributeValue) throws IOException {
+		jsonGenerator.writeStartObject();
+		jsonGenerator.writeStringField(attributeName, attributeValue);
+		jsonGenerator.writeEndObject();
+	}
+
+}
@@ -0,0 +1,131 @@
+package spring.datarepresentation;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import spring.directorylisting.DirectoryListingComponent;
+import spring.directorylisting.DirectoryListingEntry;
+import spring.directorylisting.DirectoryListingResult;
+import spring.directorylisting.DirectoryTreeVisitor;
+import spring.rest.response.LinkTemplate;
+
+/**
+ * A class for writing the JSON representation of a subtree directly to the response stream while it is walked.
+ * Each directory is written and flushed by the thread writing the response as soon as it has been listed, so the directories appear in no particular order.
+ * The entries of each directory have the same structure as in a directory listing response.
+ * @author N. H. Weideman
+ */
+public class DirectoryTreeJsonStream implements StreamingResponseBody, DirectoryTreeVisitor {
+
+	private final JsonFactory jsonFactory;
+	private final DirectoryListingComponent directoryListingComponent;
+	private final String url;
+	private final LinkTemplate directoryLinkTemplate;
+	private final DirectoryListingResult rootListingResult;
+	private final int maxDepth;
+	private final int maxEntries;
+
+	/* The generator and counts are only used by the thread writing the response, which the walk passes the directories to. */
+	private JsonGenerator jsonGenerator;
+	private int numDirectories;
+	private long numEntries;
+
+	/**
+	 * Creates a new stream for a subtree.
+	 * @param jsonFactory The factory to create the JSON generator with
+	 * @param directoryListingComponent The component to walk the subtree with
+	 * @param url The URL of the request
+	 * @param listUrl The URL of a directory listing request, which the links of the entries are based on
+	 * @param rootListingResult The listing of the root of the subtree
+	 * @param maxDepth The depth below the root up to which subdirectories are listed
+	 * @param maxEntries The maximum total number of entries to write
+	 */
+	public DirectoryTreeJsonStream(JsonFactory jsonFactory,
+					DirectoryListingComponent directoryListingComponent,
+					String url,
+					String listUrl,
+					DirectoryListingResult rootListingResult,
+					int maxDepth,
+					int maxEntries) {
+		this.jsonFactory = jsonFactory;
+		this.directoryListingComponent = directoryListingComponent;
+		this.url = url;
+		this.directoryLinkTemplate = LinkTemplate.forDirectories(listUrl);
+		this.rootListingResult = rootListingResult;
+		this.maxDepth = maxDepth;
+		this.maxEntries = maxEntries;
+	}
+
+	/**
+	 * Walks the subtree and writes the JSON representation of its directories to a stream.
+	 * @param outputStream The stream to write to
+	 * @throws IOException If an I/O error occurs
+	 */
+	@Override
+	public void writeTo(OutputStream outputStream) throws IOException {
+		jsonGenerator = jsonFactory.createGenerator(outputStream, JsonEncoding.UTF8);
+		jsonGenerator.writeStartObject();
+		jsonGenerator.writeStringField("url", url);
+		jsonGenerator.writeStringField("fullPath", rootListingResult.getFullPath());
+		jsonGenerator.writeNumberField("maxDepth", maxDepth);
+		jsonGenerator.writeNumberField("maxEntries", maxEntries);
+		jsonGenerator.writeArrayFieldStart("directories");
+
+		boolean complete = directoryListingComponent.walkTree(rootListingResult, maxDepth, maxEntries, this);
+
+		/* The totals are written last, since they are only known once the walk has finished. */
+		jsonGenerator.writeEndArray();
+		jsonGenerator.writeNumberField("numDirectories", numDirectories);
+		jsonGenerator.writeNumberField("numEntries", numEntries);
+		jsonGenerator.writeBooleanField("truncated", !complete);
+		jsonGenerator.writeEndObject();
+		jsonGenerator.close();
+	}
+
+	/**
+	 * Writes the listing of a directory of the subtree.
+	 * @param depth The depth of the directory below the root
+	 * @param directoryListingResult The listing of the directory
+	 * @throws IOException If an I/O error occurs
+	 */
+	@Override
+	public void visitDirectory(int depth, DirectoryListingResult directoryListingResult) throws IOException {
+		String fullPath = directoryListingResult.getFullPath();
+		jsonGenerator.writeStartObject();
+		jsonGenerator.writeStringField("fullPath", fullPath);
+		jsonGenerator.writeNumberField("depth", depth);
+		jsonGenerator.writeNumberField("numEntries", directoryListingResult.getNumEntries());
+		jsonGenerator.writeArrayFieldStart("directoryEntries");
+		for (DirectoryListingEntry directoryEntry : directoryListingResult.getDirectoryEntries()) {
+			DirectoryListingJsonStream.writeEntry(jsonGenerator, directoryLinkTemplate, fullPath, directoryEntry);
+		}
+		jsonGenerator.writeEndArray();
+		jsonGenerator.writeEndObject();
+		jsonGenerator.flush();
+
+		numDirectories++;
+		numEntries += directoryListingResult.getNumEntries();
+	}
+
+	/**
+	 * Writes a directory of the subtree that could not be listed.
+	 * @param depth The depth of the directory below the root
+	 * @param fullPath The path of the directory
+	 * @param e The exception raised while listing the directory
+	 * @throws IOException If an I/O error occurs
+	 */
+	@Override
+	public void visitError(int depth, String fullPath, IOException e) throws IOException {
+		jsonGenerator.writeStartObject();
+		jsonGenerator.writeStringField("fullPath", fullPath);
+		jsonGenerator.writeNumberField("depth", depth);
+		jsonGenerator.writeStringField("error", "Directory at " + fullPath + " could not be listed");
+		jsonGenerator.writeEndObject();
+		jsonGenerator.flush();
+	}
+
+}
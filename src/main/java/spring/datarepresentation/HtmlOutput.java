@@ -0,0 +1,264 @@
+package spring.datarepresentation;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A class for writing text as UTF-8 to a stream through a buffer that is reused by the thread, so that
+ * strings, numbers and file times are encoded straight into the buffer instead of being formatted into new strings first.
+ * @author N. H. Weideman
+ */
+final class HtmlOutput {
+
+	private static final int BUFFER_SIZE = 8192;
+
+	/* The largest number of bytes a single write, other than a write of a string, adds to the buffer. */
+	private static final int MAX_FIELD_BYTES = 40;
+
+	/* The largest number of bytes a single character of a string is written as, which is the length of "&quot;". */
+	private static final int MAX_CHARACTER_BYTES = 6;
+
+	/* For each ASCII character, the character reference it is written as, or NULL if it is written as it is. */
+	private static final byte[][] NO_REFERENCES = new byte[0x80][];
+	private static final byte[][] TEXT_REFERENCES = createReferences("&<>\"");
+	/* The ampersands of the links are left as they are, since they separate the query parameters, which are already percent-encoded. */
+	private static final byte[][] ATTRIBUTE_REFERENCES = createReferences("<>\"");
+
+	private static final ThreadLocal<byte[]> BUFFERS = new ThreadLocal<byte[]>() {
+		@Override
+		protected byte[] initialValue() {
+			return new byte[BUFFER_SIZE];
+		}
+	};
+
+	private static final long NANOS_PER_SECOND = 1000000000L;
+	private static final long SECONDS_PER_DAY = 86400L;
+
+	private final OutputStream outputStream;
+	private final byte[] buffer;
+	private int position;
+
+	/**
+	 * Creates an output that writes to a stream, the output must be flushed and used only by the creating thread.
+	 * @param outputStream The stream to write to
+	 */
+	HtmlOutput(OutputStream outputStream) {
+		this.outputStream = outputStream;
+		this.buffer = BUFFERS.get();
+		this.position = 0;
+	}
+
+	/**
+	 * Writes a string, unpaired surrogates are written as '?' like String.getBytes does.
+	 * @param s The string to write
+	 * @throws IOException If an I/O error occurs
+	 */
+	void write(String s) throws IOException {
+		write(s, NO_REFERENCES);
+	}
+
+	/**
+	 * Writes a string as the text of an element, with the characters "&", "<", ">" and '"' written as character references.
+	 * @param s The string to write
+	 * @throws IOException If an I/O error occurs
+	 */
+	void writeText(String s) throws IOException {
+		write(s, TEXT_REFERENCES);
+	}
+
+	/**
+	 * Writes a link as the quoted value of an attribute, with the characters "<", ">" and '"' written as character references.
+	 * @param s The link to write
+	 * @throws IOException If an I/O error occurs
+	 */
+	void writeAttributeValue(String s) throws IOException {
+		write(s, ATTRIBUTE_REFERENCES);
+	}
+
+	/* Writes a string, writing the ASCII characters that have a character reference as that reference. */
+	private void write(String s, byte[][] references) throws IOException {
+		int length = s.length();
+		for (int i = 0; i < length; i++) {
+			if (position > BUFFER_SIZE - MAX_CHARACTER_BYTES) {
+				drain();
+			}
+			char c = s.charAt(i);
+			if (c < 0x80) {
+				byte[] reference = references[c];
+				if (reference == null) {
+					buffer[position++] = (byte) c;
+				} else {
+					System.arraycopy(reference, 0, buffer, position, reference.length);
+					position += reference.length;
+				}
+			} else if (c < 0x800) {
+				buffer[position++] = (byte) (0xc0 | (c >> 6));
+				buffer[position++] = (byte) (0x80 | (c & 0x3f));
+			} else if (Character.isSurrogate(c)) {
+				if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+					int codePoint = Character.toCodePoint(c, s.charAt(++i));
+					buffer[position++] = (byte) (0xf0 | (codePoint >> 18));
+					buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+					buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+					buffer[position++] = (byte) (0x80 | (codePoint & 0x3f));
+				} else {
+					buffer[position++] = '?';
+				}
+			} else {
+				buffer[position++] = (byte) (0xe0 | (c >> 12));
+				buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+				buffer[position++] = (byte) (0x80 | (c & 0x3f));
+			}
+		}
+	}
+
+	/**
+	 * Writes a number in decimal.
+	 * @param value The number to write
+	 * @throws IOException If an I/O error occurs
+	 */
+	void write(long value) throws IOException {
+		ensureSpace();
+		if (value == Long.MIN_VALUE) {
+			write(Long.toString(value));
+			return;
+		}
+		if (value < 0) {
+			buffer[position++] = '-';
+			value = -value;
+		}
+		int numDigits = 1;
+		for (long bound = 10; numDigits < 19 && value >= bound; bound *= 10) {
+			numDigits++;
+		}
+		for (int i = position + numDigits - 1; i >= position; i--) {
+			buffer[i] = (byte) ('0' + value % 10);
+			value /= 10;
+		}
+		position += numDigits;
+	}
+
+	/**
+	 * Writes a boolean as "true" or "false".
+	 * @param value The boolean to write
+	 * @throws IOException If an I/O error occurs
+	 */
+	void write(boolean value) throws IOException {
+		write(value ? "true" : "false");
+	}
+
+	/**
+	 * Writes a file time in the same form as FileTime.toString, for example 2017-08-21T10:15:30.25Z.
+	 * @param fileTime The file time to write
+	 * @throws IOException If an I/O error occurs
+	 */
+	void write(FileTime fileTime) throws IOException {
+		long nanos = fileTime.to(TimeUnit.NANOSECONDS);
+		/* Times that do not fit in nanoseconds are far outside the years 1678 to 2261 and are left to FileTime. */
+		if (nanos == Long.MAX_VALUE || nanos == Long.MIN_VALUE) {
+			write(fileTime.toString());
+			return;
+		}
+		ensureSpace();
+		long seconds = Math.floorDiv(nanos, NANOS_PER_SECOND);
+		int fraction = (int) Math.floorMod(nanos, NANOS_PER_SECOND);
+		long days = Math.floorDiv(seconds, SECONDS_PER_DAY);
+		int secondOfDay = (int) Math.floorMod(seconds, SECONDS_PER_DAY);
+
+		/* The civil date of the day, counted in eras of 400 years starting on the 1st of March. */
+		long shiftedDays = days + 719468;
+		long era = Math.floorDiv(shiftedDays, 146097);
+		int dayOfEra = (int) (shiftedDays - era * 146097);
+		int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+		int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+		int shiftedMonth = (5 * dayOfYear + 2) / 153;
+		int day = dayOfYear - (153 * shiftedMonth + 2) / 5 + 1;
+		int month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+		int year = (int) (yearOfEra + era * 400) + (month <= 2 ? 1 : 0);
+
+		writeDigits(year, 4);
+		buffer[position++] = '-';
+		writeDigits(month, 2);
+		buffer[position++] = '-';
+		writeDigits(day, 2);
+		buffer[position++] = 'T';
+		writeDigits(secondOfDay / 3600, 2);
+		buffer[position++] = ':';
+		writeDigits(secondOfDay / 60 % 60, 2);
+		buffer[position++] = ':';
+		writeDigits(secondOfDay % 60, 2);
+		if (fraction != 0) {
+			/* The fraction is written without trailing zeros. */
+			int numDigits = 9;
+			while (fraction % 10 == 0) {
+				fraction /= 10;
+				numDigits--;
+			}
+			buffer[position++] = '.';
+			writeDigits(fraction, numDigits);
+		}
+		buffer[position++] = 'Z';
+	}
+
+	/**
+	 * Writes the buffered bytes to the stream and flushes it.
+	 * @throws IOException If an I/O error occurs
+	 */
+	void flush() throws IOException {
+		drain();
+		outputStream.flush();
+	}
+
+	/* Creates the table of the character references of the given ASCII characters. */
+	private static byte[][] createReferences(String characters) {
+		byte[][] references = new byte[0x80][];
+		for (int i = 0; i < characters.length(); i++) {
+			char c = characters.charAt(i);
+			String reference;
+			switch (c) {
+			case '&':
+				reference = "&amp;";
+				break;
+			case '<':
+				reference = "&lt;";
+				break;
+			case '>':
+				reference = "&gt;";
+				break;
+			default:
+				reference = "&quot;";
+				break;
+			}
+			references[c] = reference.getBytes(StandardCharsets.US_ASCII);
+		}
+		return references;
+	}
+
+	/* Writes a non-negative number with leading zeros, the caller must have ensured there is space for it. */
+	private void writeDigits(int value, int numDigits) {
+		for (int i = position + numDigits - 1; i >= position; i--) {
+			buffer[i] = (byte) ('0' + value % 10);
+			value /= 10;
+		}
+		position += numDigits;
+	}
+
+	/* Makes room for a number or a file time in the buffer. */
+	private void ensureSpace() throws IOException {
+		if (position > BUFFER_SIZE - MAX_FIELD_BYTES) {
+			drain();
+		}
+	}
+
+	/* Writes the buffered bytes to the stream. */
+	private void drain() throws IOException {
+		if (position > 0) {
+			outputStream.write(buffer, 0, position);
+			position = 0;
+		}
+	}
+
+}
@@ -0,0 +1,69 @@
+package spring.directorylisting;
+
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The file attributes of an entry of a directory listing, read from the columns of the listing when they are asked for
+ * @author N. H. Weideman
+ */
+class ColumnFileAttributes implements BasicFileAttributes {
+
+	private final DirectoryListingColumns columns;
+	private final int index;
+
+	ColumnFileAttributes(DirectoryListingColumns columns, int index) {
+		this.columns = columns;
+		this.index = index;
+	}
+
+	@Override
+	public FileTime lastModifiedTime() {
+		return FileTime.from(columns.getLastModifiedTime(index), TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public FileTime lastAccessTime() {
+		return FileTime.from(columns.getLastAccessTime(index), TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public FileTime creationTime() {
+		return FileTime.from(columns.getCreationTime(index), TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public boolean isRegularFile() {
+		return (columns.getFlags(index) & DirectoryListingColumns.REGULAR_FILE_FLAG) != 0;
+	}
+
+	@Override
+	public boolean isDirectory() {
+		return (columns.getFlags(index) & DirectoryListingColumns.DIRECTORY_FLAG) != 0;
+	}
+
+	@Override
+	public boolean isSymbolicLink() {
+		return (columns.getFlags(index) & DirectoryListingColumns.SYMBOLIC_LINK_FLAG) != 0;
+	}
+
+	@Override
+	public boolean isOther() {
+		return (columns.getFlags(index) & DirectoryListingColumns.OTHER_FLAG) != 0;
+	}
+
+	@Override
+	public long size() {
+		return columns.getSize(index);
+	}
+
+	/**
+	 * Returns the file key in the string form of the file system, since only that is kept in the columns.
+	 */
+	@Override
+	public Object fileKey() {
+		return columns.getFileKey(index);
+	}
+
+}
@@ -0,0 +1,33 @@
+package spring.directorylisting;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the daemon threads that read directories and file attributes in the background.
+ * @author N. H. Weideman
+ */
+class DaemonThreadFactory implements ThreadFactory {
+
+	private final String namePrefix;
+	private final int priority;
+	private final AtomicInteger threadCount = new AtomicInteger();
+
+	DaemonThreadFactory(String namePrefix) {
+		this(namePrefix, Thread.NORM_PRIORITY);
+	}
+
+	DaemonThreadFactory(String namePrefix, int priority) {
+		this.namePrefix = namePrefix;
+		this.priority = priority;
+	}
+
+	@Override
+	public Thread newThread(Runnable runnable) {
+		Thread thread = new Thread(runnable, namePrefix + threadCount.incrementAndGet());
+		thread.setDaemon(true);
+		thread.setPriority(priority);
+		return thread;
+	}
+
+}
@@ -0,0 +1,473 @@
+package spring.directorylisting;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The entries of a directory listing, stored column by column in primitive arrays instead of one object per entry.
+ * The file names are packed one after the other in a single array, as Latin-1 bytes if all of them allow it,
+ * and times are stored in nanoseconds. Strings and file times are only created for the entries that are read.
+ * @author N. H. Weideman
+ */
+final class DirectoryListingColumns {
+
+	static final int DIRECTORY_FLAG = 1;
+	static final int REGULAR_FILE_FLAG = 2;
+	static final int SYMBOLIC_LINK_FLAG = 4;
+	static final int OTHER_FLAG = 8;
+	private static final int TYPE_FLAGS = DIRECTORY_FLAG | REGULAR_FILE_FLAG | SYMBOLIC_LINK_FLAG | OTHER_FLAG;
+	/* Set if the file key of an entry is not a Unix file key, and is stored as a string. */
+	private static final int STRING_FILE_KEY_FLAG = 16;
+
+	private static final long COLUMNS_OVERHEAD_BYTES = 96;
+	private static final long ARRAY_OVERHEAD_BYTES = 16;
+
+	private final int numEntries;
+
+	/* Exactly one of the name arrays is used, the name of entry i spans nameOffsets[i] up to nameOffsets[i + 1]. */
+	private final byte[] latin1Names;
+	private final char[] utf16Names;
+	private final int[] nameOffsets;
+
+	private final byte[] flags;
+	private final LongColumn sizes;
+	private final long[] lastModifiedTimes;
+	/* The creation and last access times relative to the last modified time, which are mostly equal to it. */
+	private final LongColumn creationTimeOffsets;
+	private final LongColumn lastAccessTimeOffsets;
+
+	/* The parts of the Unix file keys, formatted as the file keys of the file system when they are read. */
+	private final LongColumn fileKeyDevices;
+	private final LongColumn fileKeyInodes;
+	/* The file keys that are not Unix file keys, NULL if there are none. */
+	private final String[] fileKeyStrings;
+
+	private DirectoryListingColumns(Builder builder) {
+		this.numEntries = builder.numEntries;
+		this.latin1Names = (builder.latin1Names == null) ? null : Arrays.copyOf(builder.latin1Names, builder.nameLength);
+		this.utf16Names = (builder.utf16Names == null) ? null : Arrays.copyOf(builder.utf16Names, builder.nameLength);
+		this.nameOffsets = Arrays.copyOf(builder.nameOffsets, numEntries + 1);
+		this.flags = Arrays.copyOf(builder.flags, numEntries);
+		this.sizes = LongColumn.of(builder.sizes, numEntries);
+		this.lastModifiedTimes = Arrays.copyOf(builder.lastModifiedTimes, numEntries);
+		this.creationTimeOffsets = LongColumn.of(builder.creationTimeOffsets, numEntries);
+		this.lastAccessTimeOffsets = LongColumn.of(builder.lastAccessTimeOffsets, numEntries);
+		this.fileKeyDevices = LongColumn.of(builder.fileKeyDevices, numEntries);
+		this.fileKeyInodes = LongColumn.of(builder.fileKeyInodes, numEntries);
+		this.fileKeyStrings = (builder.fileKeyStrings == null) ? null : Arrays.copyOf(builder.fileKeyStrings, numEntries);
+	}
+
+	int size() {
+		return numEntries;
+	}
+
+	String getFileName(int index) {
+		int start = nameOffsets[index];
+		int end = nameOffsets[index + 1];
+		if (latin1Names != null) {
+			return new String(latin1Names, start, end - start, StandardCharsets.ISO_8859_1);
+		}
+		return new String(utf16Names, start, end - start);
+	}
+
+	/* Returns a character of the packed file names. */
+	private char nameChar(int position) {
+		return (latin1Names != null) ? (char) (latin1Names[position] & 0xff) : utf16Names[position];
+	}
+
+	/**
+	 * Compares the file name of an entry to a string, in the order of String.compareTo, without creating the file name.
+	 * @param index The index of the entry
+	 * @param other The string to compare the file name to
+	 * @return A negative number, zero or a positive number if the file name is smaller than, equal to or larger than the string
+	 */
+	int compareFileName(int index, String other) {
+		int start = nameOffsets[index];
+		int length = nameOffsets[index + 1] - start;
+		int commonLength = Math.min(length, other.length());
+		for (int i = 0; i < commonLength; i++) {
+			char c = nameChar(start + i);
+			char otherC = other.charAt(i);
+			if (c != otherC) {
+				return c - otherC;
+			}
+		}
+		return length - other.length();
+	}
+
+	/**
+	 * Compares the file names of two entries, in the order of String.compareTo.
+	 * @param index1 The index of the first entry
+	 * @param index2 The index of the second entry
+	 * @return A negative number, zero or a positive number if the first file name is smaller than, equal to or larger than the second
+	 */
+	int compareFileNames(int index1, int index2) {
+		int start1 = nameOffsets[index1];
+		int length1 = nameOffsets[index1 + 1] - start1;
+		int start2 = nameOffsets[index2];
+		int length2 = nameOffsets[index2 + 1] - start2;
+		int commonLength = Math.min(length1, length2);
+		for (int i = 0; i < commonLength; i++) {
+			char c1 = nameChar(start1 + i);
+			char c2 = nameChar(start2 + i);
+			if (c1 != c2) {
+				return c1 - c2;
+			}
+		}
+		return length1 - length2;
+	}
+
+	/**
+	 * Computes the hash code of the file name of an entry, without creating the file name.
+	 * @param index The index of the entry
+	 * @return The hash code that String.hashCode returns for the file name
+	 */
+	int getFileNameHashCode(int index) {
+		int hashCode = 0;
+		for (int position = nameOffsets[index]; position < nameOffsets[index + 1]; position++) {
+			hashCode = 31 * hashCode + nameChar(position);
+		}
+		return hashCode;
+	}
+
+	boolean fileNameStartsWith(int index, String prefix) {
+		int start = nameOffsets[index];
+		if (nameOffsets[index + 1] - start < prefix.length()) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length(); i++) {
+			if (nameChar(start + i) != prefix.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the flags for the type of an entry.
+	 * @param index The index of the entry
+	 * @return A combination of DIRECTORY_FLAG, REGULAR_FILE_FLAG, SYMBOLIC_LINK_FLAG and OTHER_FLAG
+	 */
+	int getFlags(int index) {
+		return flags[index] & TYPE_FLAGS;
+	}
+
+	boolean isDirectory(int index) {
+		return (flags[index] & DIRECTORY_FLAG) != 0;
+	}
+
+	long getSize(int index) {
+		return sizes.get(index);
+	}
+
+	/* The times are in nanoseconds since the epoch, the offsets are added with wrap-around like they were subtracted. */
+	long getLastModifiedTime(int index) {
+		return lastModifiedTimes[index];
+	}
+
+	long getCreationTime(int index) {
+		return lastModifiedTimes[index] + creationTimeOffsets.get(index);
+	}
+
+	long getLastAccessTime(int index) {
+		return lastModifiedTimes[index] + lastAccessTimeOffsets.get(index);
+	}
+
+	/**
+	 * Returns the string form of the file key of an entry.
+	 * @param index The index of the entry
+	 * @return The file key as it is formatted by the file system, or NULL if the entry has no file key
+	 */
+	String getFileKey(int index) {
+		if ((flags[index] & STRING_FILE_KEY_FLAG) != 0) {
+			return fileKeyStrings[index];
+		}
+		return formatUnixFileKey(fileKeyDevices.get(index), fileKeyInodes.get(index));
+	}
+
+	/**
+	 * Returns whether the file key of an entry is a Unix file key, whose device and inode are stored as numbers.
+	 * @param index The index of the entry
+	 * @return True if the entry has a Unix file key, false if its file key is stored as a string or it has none
+	 */
+	boolean hasUnixFileKey(int index) {
+		return (flags[index] & STRING_FILE_KEY_FLAG) == 0;
+	}
+
+	/**
+	 * Returns the device of the Unix file key of an entry.
+	 * @param index The index of the entry, which must have a Unix file key
+	 * @return The device
+	 */
+	long getFileKeyDevice(int index) {
+		return fileKeyDevices.get(index);
+	}
+
+	/**
+	 * Returns the inode of the Unix file key of an entry.
+	 * @param index The index of the entry, which must have a Unix file key
+	 * @return The inode
+	 */
+	long getFileKeyInode(int index) {
+		return fileKeyInodes.get(index);
+	}
+
+	/**
+	 * Returns an entry, the entry and its attributes are created on every call.
+	 * @param index The index of the entry
+	 * @return The directory entry
+	 */
+	DirectoryListingEntry getEntry(int index) {
+		return new DirectoryListingEntry(getFileName(index), new ColumnFileAttributes(this, index));
+	}
+
+	/**
+	 * Estimates the number of bytes of heap used by the columns.
+	 * @return The estimated size in bytes
+	 */
+	long getEstimatedSize() {
+		long estimatedSize = COLUMNS_OVERHEAD_BYTES;
+		estimatedSize += ARRAY_OVERHEAD_BYTES + ((latin1Names != null) ? latin1Names.length : 2L * utf16Names.length);
+		estimatedSize += ARRAY_OVERHEAD_BYTES + 4L * nameOffsets.length;
+		estimatedSize += ARRAY_OVERHEAD_BYTES + flags.length;
+		estimatedSize += sizes.getEstimatedSize();
+		estimatedSize += ARRAY_OVERHEAD_BYTES + 8L * lastModifiedTimes.length;
+		estimatedSize += creationTimeOffsets.getEstimatedSize() + lastAccessTimeOffsets.getEstimatedSize();
+		estimatedSize += fileKeyDevices.getEstimatedSize() + fileKeyInodes.getEstimatedSize();
+		if (fileKeyStrings != null) {
+			estimatedSize += ARRAY_OVERHEAD_BYTES + 4L * fileKeyStrings.length;
+			for (String fileKeyString : fileKeyStrings) {
+				estimatedSize += (fileKeyString == null) ? 0 : 40 + 2 * fileKeyString.length();
+			}
+		}
+		return estimatedSize;
+	}
+
+	/**
+	 * Returns the flags that store the type of a file.
+	 * @param fileAttributes The attributes of the file
+	 * @return The flags for the type of the file
+	 */
+	static int getFlags(BasicFileAttributes fileAttributes) {
+		int flags = 0;
+		if (fileAttributes.isDirectory()) {
+			flags |= DIRECTORY_FLAG;
+		}
+		if (fileAttributes.isRegularFile()) {
+			flags |= REGULAR_FILE_FLAG;
+		}
+		if (fileAttributes.isSymbolicLink()) {
+			flags |= SYMBOLIC_LINK_FLAG;
+		}
+		if (fileAttributes.isOther()) {
+			flags |= OTHER_FLAG;
+		}
+		return flags;
+	}
+
+	/* Formats the parts of a Unix file key in the same way as the file system does. */
+	private static String formatUnixFileKey(long device, long inode) {
+		return "(dev=" + Long.toHexString(device) + ",ino=" + inode + ")";
+	}
+
+	/**
+	 * A builder of columns, to which entries are added one at a time.
+	 */
+	static final class Builder {
+
+		private int numEntries;
+		private byte[] latin1Names;
+		private char[] utf16Names;
+		private int nameLength;
+		private int[] nameOffsets;
+		private byte[] flags;
+		private long[] sizes;
+		private long[] lastModifiedTimes;
+		private long[] creationTimeOffsets;
+		private long[] lastAccessTimeOffsets;
+		private long[] fileKeyDevices;
+		private long[] fileKeyInodes;
+		private String[] fileKeyStrings;
+
+		/**
+		 * Creates a new builder.
+		 * @param expectedEntries The number of entries that is expected to be added
+		 */
+		Builder(int expectedEntries) {
+			int capacity = Math.max(expectedEntries, 4);
+			this.numEntries = 0;
+			this.latin1Names = new byte[capacity * 16];
+			this.nameLength = 0;
+			this.nameOffsets = new int[capacity + 1];
+			this.flags = new byte[capacity];
+			this.sizes = new long[capacity];
+			this.lastModifiedTimes = new long[capacity];
+			this.creationTimeOffsets = new long[capacity];
+			this.lastAccessTimeOffsets = new long[capacity];
+			this.fileKeyDevices = new long[capacity];
+			this.fileKeyInodes = new long[capacity];
+		}
+
+		/**
+		 * Adds an entry.
+		 * @param directoryListingEntry The entry to add
+		 */
+		void add(DirectoryListingEntry directoryListingEntry) {
+			BasicFileAttributes fileAttributes = directoryListingEntry.getFileAttributes();
+			Object fileKey = fileAttributes.fileKey();
+			add(directoryListingEntry.getFileName(),
+							getFlags(fileAttributes),
+							fileAttributes.size(),
+							fileAttributes.creationTime().to(TimeUnit.NANOSECONDS),
+							fileAttributes.lastModifiedTime().to(TimeUnit.NANOSECONDS),
+							fileAttributes.lastAccessTime().to(TimeUnit.NANOSECONDS),
+							(fileKey == null) ? null : fileKey.toString());
+		}
+
+		/**
+		 * Adds an entry of other columns, without creating its file name or attributes.
+		 * @param columns The columns holding the entry
+		 * @param index The index of the entry in the columns
+		 */
+		void add(DirectoryListingColumns columns, int index) {
+			int start = columns.nameOffsets[index];
+			int length = columns.nameOffsets[index + 1] - start;
+			ensureNameCapacity(length);
+			for (int i = 0; i < length; i++) {
+				appendNameChar(columns.nameChar(start + i));
+			}
+			boolean isStringFileKey = (columns.flags[index] & STRING_FILE_KEY_FLAG) != 0;
+			addAttributes(columns.getFlags(index),
+							columns.getSize(index),
+							columns.getCreationTime(index),
+							columns.getLastModifiedTime(index),
+							columns.getLastAccessTime(index),
+							columns.fileKeyDevices.get(index),
+							columns.fileKeyInodes.get(index),
+							isStringFileKey,
+							isStringFileKey ? columns.fileKeyStrings[index] : null);
+		}
+
+		/**
+		 * Adds an entry from its attributes.
+		 * @param fileName The file name of the entry
+		 * @param flags The flags for the type of the entry
+		 * @param size The size of the entry in bytes
+		 * @param creationTime The creation time in nanoseconds since the epoch
+		 * @param lastModifiedTime The last modified time in nanoseconds since the epoch
+		 * @param lastAccessTime The last access time in nanoseconds since the epoch
+		 * @param fileKey The string form of the file key of the entry, NULL if it has none
+		 */
+		void add(String fileName, int flags, long size, long creationTime, long lastModifiedTime, long lastAccessTime, String fileKey) {
+			ensureNameCapacity(fileName.length());
+			for (int i = 0; i < fileName.length(); i++) {
+				appendNameChar(fileName.charAt(i));
+			}
+			long device = 0;
+			long inode = 0;
+			boolean isStringFileKey = true;
+			if (fileKey != null && fileKey.startsWith("(dev=") && fileKey.endsWith(")")) {
+				int inodeStart = fileKey.indexOf(",ino=");
+				try {
+					device = Long.parseUnsignedLong(fileKey.substring(5, inodeStart), 16);
+					inode = Long.parseLong(fileKey.substring(inodeStart + 5, fileKey.length() - 1));
+					/* Only keys that are formatted back to exactly the same string are stored as numbers. */
+					isStringFileKey = !formatUnixFileKey(device, inode).equals(fileKey);
+				} catch (RuntimeException re) {
+					isStringFileKey = true;
+				}
+			}
+			addAttributes(flags, size, creationTime, lastModifiedTime, lastAccessTime, device, inode, isStringFileKey, isStringFileKey ? fileKey : null);
+		}
+
+		/**
+		 * Adds an entry with a Unix file key from its attributes.
+		 * @param fileName The file name of the entry
+		 * @param flags The flags for the type of the entry
+		 * @param size The size of the entry in bytes
+		 * @param creationTime The creation time in nanoseconds since the epoch
+		 * @param lastModifiedTime The last modified time in nanoseconds since the epoch
+		 * @param lastAccessTime The last access time in nanoseconds since the epoch
+		 * @param device The device of the file key of the entry
+		 * @param inode The inode of the file key of the entry
+		 */
+		void add(String fileName, int flags, long size, long creationTime, long lastModifiedTime, long lastAccessTime, long device, long inode) {
+			ensureNameCapacity(fileName.length());
+			for (int i = 0; i < fileName.length(); i++) {
+				appendNameChar(fileName.charAt(i));
+			}
+			addAttributes(flags, size, creationTime, lastModifiedTime, lastAccessTime, device, inode, false, null);
+		}
+
+		/* Adds the attributes of the entry whose name was just appended, and ends the entry. */
+		private void addAttributes(int typeFlags, long size, long creationTime, long lastModifiedTime, long lastAccessTime,
+						long device, long inode, boolean isStringFileKey, String fileKeyString) {
+			if (numEntries == flags.length) {
+				int capacity = 2 * numEntries;
+				nameOffsets = Arrays.copyOf(nameOffsets, capacity + 1);
+				flags = Arrays.copyOf(flags, capacity);
+				sizes = Arrays.copyOf(sizes, capacity);
+				lastModifiedTimes = Arrays.copyOf(lastModifiedTimes, capacity);
+				creationTimeOffsets = Arrays.copyOf(creationTimeOffsets, capacity);
+				lastAccessTimeOffsets = Arrays.copyOf(lastAccessTimeOffsets, capacity);
+				fileKeyDevices = Arrays.copyOf(fileKeyDevices, capacity);
+				fileKeyInodes = Arrays.copyOf(fileKeyInodes, capacity);
+				if (fileKeyStrings != null) {
+					fileKeyStrings = Arrays.copyOf(fileKeyStrings, capacity);
+				}
+			}
+			flags[numEntries] = (byte) (typeFlags | (isStringFileKey ? STRING_FILE_KEY_FLAG : 0));
+			sizes[numEntries] = size;
+			lastModifiedTimes[numEntries] = lastModifiedTime;
+			creationTimeOffsets[numEntries] = creationTime - lastModifiedTime;
+			lastAccessTimeOffsets[numEntries] = lastAccessTime - lastModifiedTime;
+			fileKeyDevices[numEntries] = device;
+			fileKeyInodes[numEntries] = inode;
+			if (isStringFileKey) {
+				if (fileKeyStrings == null) {
+					fileKeyStrings = new String[flags.length];
+				}
+				fileKeyStrings[numEntries] = fileKeyString;
+			}
+			numEntries++;
+			nameOffsets[numEntries] = nameLength;
+		}
+
+		/* Makes room for a file name of a length. */
+		private void ensureNameCapacity(int length) {
+			int capacity = (latin1Names != null) ? latin1Names.length : utf16Names.length;
+			if (nameLength + length > capacity) {
+				int newCapacity = Math.max(2 * capacity, nameLength + length);
+				if (latin1Names != null) {
+					latin1Names = Arrays.copyOf(latin1Names, newCapacity);
+				} else {
+					utf16Names = Arrays.copyOf(utf16Names, newCapacity);
+				}
+			}
+		}
+
+		/* Appends a character of a file name, switching to UTF-16 on the first character that is not Latin-1. */
+		private void appendNameChar(char c) {
+			if (latin1Names != null) {
+				if (c <= 0xff) {
+					latin1Names[nameLength++] = (byte) c;
+					return;
+				}
+				utf16Names = new char[latin1Names.length];
+				for (int i = 0; i < nameLength; i++) {
+					utf16Names[i] = (char) (latin1Names[i] & 0xff);
+				}
+				latin1Names = null;
+			}
+			utf16Names[nameLength++] = c;
+		}
+
+		DirectoryListingColumns build() {
+			return new DirectoryListingColumns(this);
+		}
+
+	}
+
+}
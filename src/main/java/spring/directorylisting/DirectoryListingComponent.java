@@ -1,14 +1,35 @@
 package spring.directorylisting;
 
 import org.springframework.stereotype.Component;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import javax.annotation.PreDestroy;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.File;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.nio.file.DirectoryStream;
 import java.nio.file.FileSystems;
 import java.nio.file.FileSystem;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.nio.file.attribute.BasicFileAttributes;
 
 import debugging.Debug;
@@ -29,10 +50,229 @@ public class DirectoryListingComponent {
 
 	private DirectoryListingResultCache cache;
 
+	private final DirectoryListingMetrics metrics;
 
-	public DirectoryListingComponent() throws IOException {
-		this.fileSystem = FileSystems.getDefault();	
-		this.cache = new DirectoryListingResultCache();
+	/* The memoized usage of directories, kept up to date by the invalidations of the listing cache. */
+	private final DirectoryUsageCache usageCache;
+
+	/* The listings that are currently being read, so that concurrent requests for a directory share a single read. */
+	private final ConcurrentHashMap<String, CompletableFuture<DirectoryListingResult>> inFlightListings;
+	private final AtomicLong directoryReadCount;
+	private final AtomicLong coalescedRequestCount;
+
+	/* The pool for reading directories that are not cached, so that request threads are not blocked by slow directories. */
+	private final ThreadPoolExecutor ioExecutor;
+
+	/* The pool for walking subtrees, each directory of a subtree is listed by its own task. */
+	private final ForkJoinPool treePool;
+
+	/* The snapshot of the cache that is written periodically and on shutdown, NULL if snapshots are disabled. */
+	private final Path snapshotPath;
+	private final ScheduledExecutorService snapshotExecutor;
+	/* The snapshot loaded at startup, NULL once all its listings have been taken or if there was none. */
+	private volatile DirectoryListingSnapshot loadedSnapshot;
+	private final AtomicLong snapshotListingCount;
+
+	/* The pool for reading file attributes in parallel, NULL if directories are listed serially. */
+	private final ExecutorService statExecutor;
+	private final int statBatchSize;
+
+
+	/**
+	 * Creates a new directory listing component.
+	 * @param metrics The metrics to record the reading and caching of directories in
+	 * @param maxCacheEntries The maximum number of directory listings to cache
+	 * @param maxCacheBytes The maximum estimated size, in bytes, of the cached directory listings
+	 * @param statParallelism The number of threads reading file attributes in parallel, 1 to read them serially
+	 * @param statBatchSize The number of directory entries read by a thread at a time
+	 * @param ioThreads The number of threads reading directories that are not cached
+	 * @param ioQueueSize The number of directory reads that may wait for an I/O thread before further reads are rejected
+	 * @param treeParallelism The number of threads listing the directories of a subtree in parallel
+	 * @param snapshotPathStr The path of the file to keep a snapshot of the cache in, empty to disable snapshots
+	 * @param snapshotInterval The time in milliseconds between writing snapshots
+	 * @throws IOException If an I/O error occurs
+	 */
+	@Autowired
+	public DirectoryListingComponent(DirectoryListingMetrics metrics,
+					@Value("${directorylisting.cache.max-entries:10000}") int maxCacheEntries,
+					@Value("${directorylisting.cache.max-bytes:268435456}") long maxCacheBytes,
+					@Value("${directorylisting.listing.parallelism:1}") int statParallelism,
+					@Value("${directorylisting.listing.batch-size:512}") int statBatchSize,
+					@Value("${directorylisting.io.threads:16}") int ioThreads,
+					@Value("${directorylisting.io.queue-size:256}") int ioQueueSize,
+					@Value("${directorylisting.tree.parallelism:4}") int treeParallelism,
+					@Value("${directorylisting.snapshot.path:}") String snapshotPathStr,
+					@Value("${directorylisting.snapshot.interval-ms:300000}") long snapshotInterval) throws IOException {
+		this(FileSystems.getDefault(), metrics, maxCacheEntries, maxCacheBytes, statParallelism, statBatchSize,
+						ioThreads, ioQueueSize, treeParallelism, snapshotPathStr, snapshotInterval);
+	}
+
+	/* Creates a new directory listing component that reads directories through a file system, which the tests use to count the calls to the file system. */
+	DirectoryListingComponent(FileSystem fileSystem,
+					DirectoryListingMetrics metrics,
+					int maxCacheEntries,
+					long maxCacheBytes,
+					int statParallelism,
+					int statBatchSize,
+					int ioThreads,
+					int ioQueueSize,
+					int treeParallelism,
+					String snapshotPathStr,
+					long snapshotInterval) throws IOException {
+		this.fileSystem = fileSystem;
+		this.metrics = metrics;
+		this.cache = new DirectoryListingResultCache(maxCacheEntries, maxCacheBytes, metrics);
+		this.usageCache = new DirectoryUsageCache(cache);
+		cache.addInvalidationListener(usageCache);
+		this.inFlightListings = new ConcurrentHashMap<String, CompletableFuture<DirectoryListingResult>>();
+		this.directoryReadCount = new AtomicLong();
+		this.coalescedRequestCount = new AtomicLong();
+		this.statBatchSize = Math.max(statBatchSize, 1);
+		this.ioExecutor = new ThreadPoolExecutor(ioThreads, ioThreads,
+						0L, TimeUnit.MILLISECONDS,
+						new ArrayBlockingQueue<Runnable>(Math.max(ioQueueSize, 1)),
+						new DaemonThreadFactory("directory-listing-io-"));
+		this.treePool = new ForkJoinPool(Math.max(treeParallelism, 1));
+		if (statParallelism > 1) {
+			this.statExecutor = Executors.newFixedThreadPool(statParallelism, new DaemonThreadFactory("directory-listing-stat-"));
+		} else {
+			this.statExecutor = null;
+		}
+
+		this.snapshotListingCount = new AtomicLong();
+		if (snapshotPathStr.isEmpty()) {
+			this.snapshotPath = null;
+			this.snapshotExecutor = null;
+		} else {
+			this.snapshotPath = Paths.get(snapshotPathStr);
+			try {
+				this.loadedSnapshot = DirectoryListingSnapshot.load(snapshotPath);
+			} catch (IOException ioe) {
+				/* A missing or damaged snapshot only means that the cache starts empty. */
+				Debug.debugStackTrace(ioe);
+			}
+			this.snapshotExecutor = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("directory-listing-snapshot-"));
+			snapshotExecutor.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					writeSnapshot();
+				}
+			}, snapshotInterval, snapshotInterval, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Stops the threads reading directories, subtrees and file attributes, and writes a last snapshot of the cache.
+	 */
+	@PreDestroy
+	public void shutdown() {
+		ioExecutor.shutdownNow();
+		treePool.shutdownNow();
+		if (statExecutor != null) {
+			statExecutor.shutdownNow();
+		}
+		if (snapshotExecutor != null) {
+			snapshotExecutor.shutdownNow();
+			writeSnapshot();
+		}
+	}
+
+	/**
+	 * Writes a snapshot of the cached directory listings, if snapshots are enabled.
+	 * Snapshots are written periodically and on shutdown, and are used to fill the cache again after a restart.
+	 */
+	public synchronized void writeSnapshot() {
+		if (snapshotPath == null) {
+			return;
+		}
+		try {
+			DirectoryListingSnapshot.write(snapshotPath, cache.getResults());
+		} catch (IOException | RuntimeException e) {
+			Debug.debugStackTrace(e);
+		}
+	}
+
+	/**
+	 * Returns the number of directory listings that were taken from the snapshot instead of being read.
+	 * @return The number of listings taken from the snapshot
+	 */
+	public long getSnapshotListingCount() {
+		return snapshotListingCount.get();
+	}
+
+	/**
+	 * Registers a listener to notify whenever the cached listing of a directory changes or is removed.
+	 * @param invalidationListener The listener to register
+	 */
+	public void addInvalidationListener(DirectoryListingInvalidationListener invalidationListener) {
+		cache.addInvalidationListener(invalidationListener);
+	}
+
+	/**
+	 * Checks if a directory listing result is the currently cached result for its directory.
+	 * Only the currently cached results are kept up to date, and listeners are notified when they change.
+	 * @param directoryListingResult The directory listing result to check
+	 * @return True if the result is cached, false otherwise
+	 */
+	public boolean isCached(DirectoryListingResult directoryListingResult) {
+		return cache.peek(directoryListingResult.getFullPath()) == directoryListingResult;
+	}
+
+	/**
+	 * Returns the number of cached directory listings.
+	 * @return The number of cached directories
+	 */
+	public int getCacheSize() {
+		return cache.size();
+	}
+
+	/**
+	 * Returns the total estimated size of the cached directory listings.
+	 * @return The estimated size in bytes
+	 */
+	public long getCacheBytes() {
+		return cache.weight();
+	}
+
+	/**
+	 * Returns the number of directories being watched for changes, counted from the watch keys that have been registered and not cancelled.
+	 * @return The number of active watch keys
+	 */
+	public int getWatchKeyCount() {
+		return cache.getWatchKeyCount();
+	}
+
+	/**
+	 * Returns the number of times a directory has been read from the file system.
+	 * @return The number of directory reads
+	 */
+	public long getDirectoryReadCount() {
+		return directoryReadCount.get();
+	}
+
+	/**
+	 * Returns the number of requests that waited for the read of a directory started by another request, instead of reading it themselves.
+	 * @return The number of coalesced requests
+	 */
+	public long getCoalescedRequestCount() {
+		return coalescedRequestCount.get();
+	}
+
+	/**
+	 * Checks if requests are waiting for directories to be read, so that background work can give way to them.
+	 * @return True if an I/O thread is reading a directory or reads are queued, false otherwise
+	 */
+	public boolean isBusy() {
+		return ioExecutor.getActiveCount() > 0 || !ioExecutor.getQueue().isEmpty();
+	}
+
+	/*
+	 * Obtains the canonical path of a directory, this is the only time the path is resolved.
+	 * The file system resolves the path every time, unlike File.getCanonicalPath whose results the JDK keeps for a while,
+	 * so a symbolic link that has been pointed elsewhere leads to its new target straight away.
+	 */
+	private String getCanonicalPath(String pathStr) throws IOException {
+		return fileSystem.getPath(pathStr).toRealPath().toString();
 	}
 
 	/**
@@ -41,19 +281,269 @@ public class DirectoryListingComponent {
 	 * @return The directory listing result corresponding to the path
 	 */
 	public DirectoryListingResult getListing(String fullPathStr) throws IOException {
-		Path fullPath = fileSystem.getPath(fullPathStr); 
-		/* Obtaining the canonical path */
-		File fullPathFile = fullPath.toFile().getCanonicalFile();
-		fullPathStr = fullPathFile.getCanonicalPath();
-		fullPath = new File(fullPathStr).toPath();
+		fullPathStr = getCanonicalPath(fullPathStr);
 
 		/* Check if the directory has been cached */
-		if (cache.contains(fullPathStr)) {
+		DirectoryListingResult cachedDirectoryListingResult = cache.get(fullPathStr);
+		if (cachedDirectoryListingResult != null) {
 			Debug.debugln("Obtained " + fullPathStr + " from cache.");
-			return cache.get(fullPathStr);
+			return cachedDirectoryListingResult;
 		}
-	
-		LinkedList<DirectoryListingEntry> directoryEntries = new LinkedList<DirectoryListingEntry>();
+		return readListingOnce(fullPathStr);
+	}
+
+	/**
+	 * Gets a directory listing for a path without waiting for the directory to be read.
+	 * Cached listings are returned as completed futures, other directories are read on the I/O threads.
+	 * A directory that is already being read is not read again, the future of the read in progress is returned instead,
+	 * so only the request that reads a directory takes up an I/O thread.
+	 * If all the I/O threads are busy and the queue of waiting reads is full, the future fails with a RejectedExecutionException.
+	 * @param path The path to obtain the directory listing for
+	 * @return A future for the directory listing result corresponding to the path
+	 */
+	public CompletableFuture<DirectoryListingResult> getListingAsync(String fullPathStr) {
+		final CompletableFuture<DirectoryListingResult> listingFuture = new CompletableFuture<DirectoryListingResult>();
+		final String canonicalPathStr;
+		try {
+			canonicalPathStr = getCanonicalPath(fullPathStr);
+		} catch (IOException ioe) {
+			listingFuture.completeExceptionally(ioe);
+			return listingFuture;
+		}
+
+		/* Check if the directory has been cached */
+		DirectoryListingResult cachedDirectoryListingResult = cache.get(canonicalPathStr);
+		if (cachedDirectoryListingResult != null) {
+			Debug.debugln("Obtained " + canonicalPathStr + " from cache.");
+			listingFuture.complete(cachedDirectoryListingResult);
+			return listingFuture;
+		}
+
+		/* If the directory is already being read, share that read instead of taking an I/O thread to wait for it. */
+		CompletableFuture<DirectoryListingResult> inFlightListing = inFlightListings.putIfAbsent(canonicalPathStr, listingFuture);
+		if (inFlightListing != null) {
+			Debug.debugln("Sharing the read of " + canonicalPathStr + " with another request.");
+			coalescedRequestCount.incrementAndGet();
+			return inFlightListing;
+		}
+		try {
+			ioExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						readRegisteredListing(canonicalPathStr, listingFuture);
+					} catch (IOException | RuntimeException e) {
+						/* The future has already failed with the error. */
+					}
+				}
+			});
+		} catch (RejectedExecutionException ree) {
+			Debug.debugln("Rejecting read of " + canonicalPathStr + ", all I/O threads are busy.");
+			inFlightListings.remove(canonicalPathStr, listingFuture);
+			listingFuture.completeExceptionally(ree);
+		}
+		return listingFuture;
+	}
+
+	/**
+	 * Walks the subtree below a directory, listing its directories in parallel.
+	 * Each directory is obtained as by getListing, so cached listings are reused and new listings are cached.
+	 * Symbolic links are not included in listings, so the walk never leaves the subtree or revisits a directory.
+	 * The listings are passed to the visitor on the calling thread, so the visitor may write to a client without holding up the tree threads,
+	 * but if it does not take a listing within a second of it being queued the walk is stopped.
+	 * @param rootListingResult The listing of the root of the subtree
+	 * @param maxDepth The depth below the root up to which subdirectories are listed, 0 to visit only the root
+	 * @param maxEntries The maximum total number of entries of the visited listings
+	 * @param visitor The visitor receiving the listings as they are obtained
+	 * @return True if the whole subtree up to the maximum depth was visited, false if the walk stopped at the entry limit or because the visitor was too slow
+	 * @throws IOException If the visitor failed
+	 */
+	public boolean walkTree(DirectoryListingResult rootListingResult, int maxDepth, int maxEntries, DirectoryTreeVisitor visitor) throws IOException {
+		DirectoryTreeWalker directoryTreeWalker = new DirectoryTreeWalker(this, visitor, maxDepth, maxEntries);
+		return directoryTreeWalker.walk(treePool, rootListingResult);
+	}
+
+	/**
+	 * Gets the usage of the subtree below a directory.
+	 * The usage of every directory in the subtree is memoized while its listing and the listings below it are cached, so after a change
+	 * only the changed directory and its ancestors are recomputed, from the memoized usage of their other children.
+	 * The subdirectories are computed in parallel on the same threads that walk subtrees.
+	 * @param path The path of the directory
+	 * @return The usage of the directory
+	 * @throws IOException If the directory could not be read
+	 */
+	public DirectoryUsage getUsage(String fullPathStr) throws IOException {
+		fullPathStr = getCanonicalPath(fullPathStr);
+
+		DirectoryUsage cachedDirectoryUsage = usageCache.get(fullPathStr);
+		if (cachedDirectoryUsage != null) {
+			Debug.debugln("Obtained usage of " + fullPathStr + " from cache.");
+			return cachedDirectoryUsage;
+		}
+		long startVersion = usageCache.startComputation(fullPathStr);
+		try {
+			DirectoryListingResult directoryListingResult = getListing(fullPathStr);
+			return treePool.invoke(new UsageTask(fullPathStr, directoryListingResult, startVersion));
+		} finally {
+			usageCache.finishComputation(fullPathStr);
+		}
+	}
+
+	/**
+	 * Gets the usage of the subtree below a directory without waiting for it to be computed.
+	 * Memoized usage is returned as a completed future, other usage is computed on the I/O threads.
+	 * If all the I/O threads are busy and the queue of waiting reads is full, the future fails with a RejectedExecutionException.
+	 * @param path The path of the directory
+	 * @return A future for the usage of the directory
+	 */
+	public CompletableFuture<DirectoryUsage> getUsageAsync(final String fullPathStr) {
+		final CompletableFuture<DirectoryUsage> usageFuture = new CompletableFuture<DirectoryUsage>();
+		try {
+			ioExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						usageFuture.complete(getUsage(fullPathStr));
+					} catch (IOException | RuntimeException e) {
+						usageFuture.completeExceptionally(e);
+					}
+				}
+			});
+		} catch (RejectedExecutionException ree) {
+			Debug.debugln("Rejecting usage of " + fullPathStr + ", all I/O threads are busy.");
+			usageFuture.completeExceptionally(ree);
+		}
+		return usageFuture;
+	}
+
+	/*
+	 * Gets the listing of a directory with a canonical path from a task of the tree threads.
+	 * A directory that is not cached is read in a managed block, so the pool can start another thread to keep its parallelism while the task waits.
+	 */
+	DirectoryListingResult getListingInPool(String fullPathStr) throws IOException {
+		DirectoryListingResult cachedDirectoryListingResult = cache.get(fullPathStr);
+		if (cachedDirectoryListingResult != null) {
+			return cachedDirectoryListingResult;
+		}
+		ListingBlocker listingBlocker = new ListingBlocker(fullPathStr);
+		try {
+			ForkJoinPool.managedBlock(listingBlocker);
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while listing directory");
+		}
+		if (listingBlocker.exception != null) {
+			throw listingBlocker.exception;
+		}
+		return listingBlocker.directoryListingResult;
+	}
+
+	/* Reads a directory that is not cached, unless it is already being read by another request. */
+	private DirectoryListingResult readListingOnce(String fullPathStr) throws IOException {
+		/* If the directory is already being read, wait for that read instead of reading it again. */
+		CompletableFuture<DirectoryListingResult> listingFuture = new CompletableFuture<DirectoryListingResult>();
+		CompletableFuture<DirectoryListingResult> inFlightListing = inFlightListings.putIfAbsent(fullPathStr, listingFuture);
+		if (inFlightListing != null) {
+			Debug.debugln("Waiting for " + fullPathStr + " to be read by another request.");
+			coalescedRequestCount.incrementAndGet();
+			return awaitListing(inFlightListing);
+		}
+		return readRegisteredListing(fullPathStr, listingFuture);
+	}
+
+	/* Reads a directory whose future was registered as the read in progress by the caller, completes the future and unregisters it. */
+	private DirectoryListingResult readRegisteredListing(String fullPathStr, CompletableFuture<DirectoryListingResult> listingFuture) throws IOException {
+		Path fullPath = fileSystem.getPath(fullPathStr);
+		try {
+			/* The directory may have been cached by a read that finished after the cache was checked. */
+			DirectoryListingResult directoryListingResult = cache.peek(fullPathStr);
+			if (directoryListingResult == null) {
+				/* The directory is watched before it is read, so the changes made while it is read are applied to its listing when it is cached. */
+				cache.watch(fullPathStr);
+				try {
+					directoryListingResult = takeSnapshotListing(fullPathStr, fullPath);
+					if (directoryListingResult == null) {
+						directoryListingResult = readListing(fullPathStr, fullPath);
+					}
+				} finally {
+					cache.unwatch(fullPathStr);
+				}
+			}
+			listingFuture.complete(directoryListingResult);
+			return directoryListingResult;
+		} catch (IOException | RuntimeException e) {
+			listingFuture.completeExceptionally(e);
+			throw e;
+		} finally {
+			inFlightListings.remove(fullPathStr, listingFuture);
+		}
+	}
+
+	/* Waits for a directory that is being read by another request. */
+	private DirectoryListingResult awaitListing(CompletableFuture<DirectoryListingResult> inFlightListing) throws IOException {
+		try {
+			return inFlightListing.get();
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for directory listing");
+		} catch (ExecutionException ee) {
+			Throwable cause = ee.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+
+	/*
+	 * Takes the listing of a directory from the snapshot loaded at startup and adds it to the cache,
+	 * if the directory has the same modification time and file key as when the snapshot was written.
+	 */
+	private DirectoryListingResult takeSnapshotListing(String fullPathStr, Path fullPath) {
+		DirectoryListingSnapshot loadedSnapshot = this.loadedSnapshot;
+		if (loadedSnapshot == null) {
+			return null;
+		}
+		try {
+			DirectoryListingResult snapshotListingResult = loadedSnapshot.take(fullPathStr);
+			if (loadedSnapshot.size() == 0) {
+				/* Releases the mapping of the snapshot file. */
+				this.loadedSnapshot = null;
+			}
+			if (snapshotListingResult == null) {
+				return null;
+			}
+			/*
+			 * Only the directory itself is checked, so that taking a listing from the snapshot costs one read of attributes instead of one per entry.
+			 * Files that were added, removed or renamed change the modification time of the directory, but files that were written in place
+			 * do not, so their size and times are served as they were in the snapshot until the file changes again while it is watched.
+			 */
+			BasicFileAttributes currentAttributes = Files.readAttributes(fullPath, BasicFileAttributes.class);
+			BasicFileAttributes snapshotAttributes = snapshotListingResult.getDirectoryAttributes();
+			if (!currentAttributes.lastModifiedTime().equals(snapshotAttributes.lastModifiedTime())
+							|| !String.valueOf(currentAttributes.fileKey()).equals(String.valueOf(snapshotAttributes.fileKey()))) {
+				Debug.debugln("Snapshot of " + fullPathStr + " is out of date.");
+				return null;
+			}
+			Debug.debugln("Obtained " + fullPathStr + " from snapshot.");
+			snapshotListingCount.incrementAndGet();
+			cache.put(fullPathStr, snapshotListingResult);
+			return snapshotListingResult;
+		} catch (IOException ioe) {
+			/* The directory is read from the file system instead. */
+			Debug.debugStackTrace(ioe);
+			return null;
+		}
+	}
+
+	/* Reads the listing of a directory from the file system and adds it to the cache. */
+	private DirectoryListingResult readListing(String fullPathStr, Path fullPath) throws IOException {
+		long readStart = System.nanoTime();
+		directoryReadCount.incrementAndGet();
+		List<DirectoryListingEntry> directoryEntries = new ArrayList<DirectoryListingEntry>();
 
 		/* Adding current directory */
 		BasicFileAttributes basicCurrentFileAttributes = Files.readAttributes(fullPath, BasicFileAttributes.class);
@@ -68,26 +558,243 @@ public class DirectoryListingComponent {
 			directoryEntries.add(parentDirectoryEntry);
 		}
 
-		/* Adding directory entries. */
+		/*
+		 * Adding directory entries, the time spent reading attributes is measured apart from the time spent scanning the directory.
+		 * When the attributes are read in parallel, only the time the scan waited for them is left out of the scan time.
+		 */
+		long scanStart = System.nanoTime();
+		long statNanos = 0;
+		long statWaitNanos;
 		DirectoryStream<Path> directoryStream = Files.newDirectoryStream(fullPath);	
-		for (Path path : directoryStream) {
-			File file = path.toFile();
-			/* Obtaining the canonical path */
-			path = new File(file.getCanonicalPath()).toPath();
-			String fileName = file.getName();
-			/* Symlinks are broken in Docker, so we do not include them in our results. */
-			if (!Files.isSymbolicLink(path)) {
-				BasicFileAttributes basicFileAttributes = Files.readAttributes(path, BasicFileAttributes.class);	
-				DirectoryListingEntry directoryListingEntry = new DirectoryListingEntry(fileName, basicFileAttributes);
-				directoryEntries.add(directoryListingEntry);
-			}
-		}
-		directoryStream.close();
+		try {
+			if (statExecutor == null) {
+				for (Path path : directoryStream) {
+					long statStart = System.nanoTime();
+					DirectoryListingEntry directoryListingEntry = DirectoryListingEntry.read(path);
+					statNanos += System.nanoTime() - statStart;
+					if (directoryListingEntry != null) {
+						directoryEntries.add(directoryListingEntry);
+					}
+				}
+				statWaitNanos = statNanos;
+			} else {
+				AtomicLong batchStatNanos = new AtomicLong();
+				statWaitNanos = readEntriesInParallel(directoryStream, directoryEntries, batchStatNanos);
+				statNanos = batchStatNanos.get();
+			}
+		} finally {
+			directoryStream.close();
+		}
+		long scanNanos = System.nanoTime() - scanStart - statWaitNanos;
 		DirectoryListingResult directoryListingResult = new DirectoryListingResult(fullPathStr, directoryEntries);
+		metrics.recordRead(System.nanoTime() - readStart, scanNanos, statNanos, directoryListingResult.getNumEntries());
 
 		/* Add the directory to the cache */
 		cache.put(fullPathStr, directoryListingResult);
 		return directoryListingResult;
 	}
 
+	/*
+	 * Reads the entries of a directory stream in batches on the stat threads, and adds them in the order of the stream.
+	 * The last, partial batch is read by the calling thread, so small directories are never handed to the stat threads.
+	 * The time every batch spends reading attributes is added to the given total.
+	 * Returns the time in nanoseconds spent waiting for the attributes after the whole stream was scanned.
+	 */
+	private long readEntriesInParallel(DirectoryStream<Path> directoryStream, List<DirectoryListingEntry> directoryEntries, AtomicLong statNanos) throws IOException {
+		List<Future<List<DirectoryListingEntry>>> batchFutures = new ArrayList<Future<List<DirectoryListingEntry>>>();
+		List<Path> batch = new ArrayList<Path>(statBatchSize);
+		try {
+			for (Path path : directoryStream) {
+				batch.add(path);
+				if (batch.size() == statBatchSize) {
+					batchFutures.add(statExecutor.submit(new ReadBatchTask(batch, statNanos)));
+					batch = new ArrayList<Path>(statBatchSize);
+				}
+			}
+			/* The last, partial batch is read while the other batches are being read. */
+			long statStart = System.nanoTime();
+			List<DirectoryListingEntry> lastBatchEntries = new ReadBatchTask(batch, statNanos).call();
+			for (Future<List<DirectoryListingEntry>> batchFuture : batchFutures) {
+				directoryEntries.addAll(batchFuture.get());
+			}
+			directoryEntries.addAll(lastBatchEntries);
+			return System.nanoTime() - statStart;
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while listing directory");
+		} catch (ExecutionException ee) {
+			Throwable cause = ee.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			throw new IOException(cause);
+		} finally {
+			for (Future<List<DirectoryListingEntry>> batchFuture : batchFutures) {
+				batchFuture.cancel(true);
+			}
+		}
+	}
+
+	/**
+	 * A task to read the entries of a batch of paths, adding the time it takes to the stat time of the directory.
+	 */
+	private class ReadBatchTask implements Callable<List<DirectoryListingEntry>> {
+
+		private final List<Path> batch;
+		private final AtomicLong statNanos;
+
+		private ReadBatchTask(List<Path> batch, AtomicLong statNanos) {
+			this.batch = batch;
+			this.statNanos = statNanos;
+		}
+
+		@Override
+		public List<DirectoryListingEntry> call() throws IOException {
+			long statStart = System.nanoTime();
+			List<DirectoryListingEntry> batchEntries = new ArrayList<DirectoryListingEntry>(batch.size());
+			for (Path path : batch) {
+				DirectoryListingEntry directoryListingEntry = DirectoryListingEntry.read(path);
+				if (directoryListingEntry != null) {
+					batchEntries.add(directoryListingEntry);
+				}
+			}
+			statNanos.addAndGet(System.nanoTime() - statStart);
+			return batchEntries;
+		}
+
+	}
+
+	/**
+	 * Reads a directory that is not cached for a task of the tree threads, allowing the pool to make up for the blocked thread.
+	 */
+	private class ListingBlocker implements ForkJoinPool.ManagedBlocker {
+
+		private final String fullPathStr;
+		private DirectoryListingResult directoryListingResult;
+		private IOException exception;
+
+		private ListingBlocker(String fullPathStr) {
+			this.fullPathStr = fullPathStr;
+		}
+
+		@Override
+		public boolean block() {
+			try {
+				directoryListingResult = readListingOnce(fullPathStr);
+			} catch (IOException ioe) {
+				exception = ioe;
+			}
+			return true;
+		}
+
+		@Override
+		public boolean isReleasable() {
+			return directoryListingResult != null || exception != null;
+		}
+
+	}
+
+	/**
+	 * Computes the usage of a directory from its files and the usage of its subdirectories.
+	 */
+	private class UsageTask extends RecursiveTask<DirectoryUsage> {
+
+		private static final long serialVersionUID = 100L;
+
+		private final String fullPathStr;
+		/* The listing of the directory if it has already been obtained, NULL otherwise. */
+		private final DirectoryListingResult directoryListingResult;
+		/* The version of the subtree when the computation was registered, if the listing has already been obtained. */
+		private final long startVersion;
+		/* Whether the computed usage was memoized, set by compute. */
+		private boolean memoized;
+
+		/* Creates a task for a directory whose computation has been registered and whose listing has been obtained. */
+		private UsageTask(String fullPathStr, DirectoryListingResult directoryListingResult, long startVersion) {
+			this.fullPathStr = fullPathStr;
+			this.directoryListingResult = directoryListingResult;
+			this.startVersion = startVersion;
+		}
+
+		/* Creates a task for a subdirectory, which registers its computation and obtains its listing itself. */
+		private UsageTask(String fullPathStr) {
+			this(fullPathStr, null, 0);
+		}
+
+		@Override
+		protected DirectoryUsage compute() {
+			if (directoryListingResult != null) {
+				return computeUsage(directoryListingResult, startVersion);
+			}
+			/* The computation is registered before the listing is obtained, so that any later change to the subtree discards the usage. */
+			long subdirectoryStartVersion = usageCache.startComputation(fullPathStr);
+			try {
+				DirectoryListingResult listingResult;
+				try {
+					listingResult = getListingInPool(fullPathStr);
+				} catch (IOException ioe) {
+					Debug.debugln("Could not list " + fullPathStr + " while computing usage.");
+					/* The directory becoming readable changes the listing of its parent, which discards the usage of the parent. */
+					memoized = true;
+					return new DirectoryUsage(fullPathStr, 0, 0, 0, 1);
+				}
+				return computeUsage(listingResult, subdirectoryStartVersion);
+			} finally {
+				usageCache.finishComputation(fullPathStr);
+			}
+		}
+
+		/*
+		 * Computes the usage of the directory from its files and from the usage of its subdirectories, and memoizes it if the usage of
+		 * every subdirectory was memoized. A subdirectory whose listing was not admitted to the cache is not watched, so a change within it
+		 * would never discard the usage of the directory.
+		 */
+		private DirectoryUsage computeUsage(DirectoryListingResult listingResult, long startVersion) {
+			long totalSize = 0;
+			long fileCount = 0;
+			long directoryCount = 0;
+			long unreadableDirectoryCount = 0;
+			boolean subdirectoriesMemoized = true;
+			List<UsageTask> subdirectoryTasks = new ArrayList<UsageTask>();
+			for (DirectoryListingEntry directoryEntry : listingResult.getDirectoryEntries()) {
+				String fileName = directoryEntry.getFileName();
+				if (fileName.equals(CURRENT_DIRECTORY_NAME) || fileName.equals(PARENT_DIRECTORY_NAME)) {
+					continue;
+				}
+				if (!directoryEntry.isDirectory()) {
+					totalSize += directoryEntry.getFileAttributes().size();
+					fileCount++;
+					continue;
+				}
+				String subdirectoryPathStr = new File(listingResult.getFullPath(), fileName).getPath();
+				DirectoryUsage subdirectoryUsage = usageCache.get(subdirectoryPathStr);
+				if (subdirectoryUsage == null) {
+					subdirectoryTasks.add(new UsageTask(subdirectoryPathStr));
+				} else {
+					totalSize += subdirectoryUsage.getTotalSize();
+					fileCount += subdirectoryUsage.getFileCount();
+					directoryCount += 1 + subdirectoryUsage.getDirectoryCount();
+					unreadableDirectoryCount += subdirectoryUsage.getUnreadableDirectoryCount();
+				}
+			}
+			for (UsageTask subdirectoryTask : invokeAll(subdirectoryTasks)) {
+				DirectoryUsage subdirectoryUsage = subdirectoryTask.join();
+				totalSize += subdirectoryUsage.getTotalSize();
+				fileCount += subdirectoryUsage.getFileCount();
+				directoryCount += 1 + subdirectoryUsage.getDirectoryCount();
+				unreadableDirectoryCount += subdirectoryUsage.getUnreadableDirectoryCount();
+				subdirectoriesMemoized &= subdirectoryTask.memoized;
+			}
+
+			DirectoryUsage directoryUsage = new DirectoryUsage(listingResult.getFullPath(), totalSize, fileCount, directoryCount, unreadableDirectoryCount);
+			if (subdirectoriesMemoized) {
+				memoized = usageCache.put(listingResult, directoryUsage, startVersion);
+			} else {
+				Debug.debugln("Not memoizing usage of " + listingResult.getFullPath() + ", a subdirectory is not cached.");
+			}
+			return directoryUsage;
+		}
+
+	}
+
 }
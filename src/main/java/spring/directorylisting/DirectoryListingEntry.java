@@ -1,5 +1,10 @@
 package spring.directorylisting;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.nio.file.attribute.BasicFileAttributes;
 
 /**
@@ -27,4 +32,26 @@ public class DirectoryListingEntry {
 		this.fileAttributes = fileAttributes;
 	}
 
+	/**
+	 * Reads the directory entry for a path with a single call to the file system.
+	 * The attributes are read without following symbolic links, and the same attributes are used to exclude symbolic links.
+	 * @param path The path of the entry, the last element of the path is used as the file name
+	 * @return The directory entry, or NULL if the path is a symbolic link or no longer exists
+	 * @throws IOException If an I/O error occurs
+	 */
+	static DirectoryListingEntry read(Path path) throws IOException {
+		BasicFileAttributes fileAttributes;
+		try {
+			fileAttributes = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+		} catch (NoSuchFileException nsfe) {
+			/* The entry was removed after the directory was read. */
+			return null;
+		}
+		/* Symlinks are broken in Docker, so we do not include them in our results. */
+		if (fileAttributes.isSymbolicLink()) {
+			return null;
+		}
+		return new DirectoryListingEntry(path.getFileName().toString(), fileAttributes);
+	}
+
 }
@@ -0,0 +1,15 @@
+package spring.directorylisting;
+
+/**
+ * A listener that is notified when the cached directory listing result of a directory changes or is removed.
+ * @author N. H. Weideman
+ */
+public interface DirectoryListingInvalidationListener {
+
+	/**
+	 * Called after the cached directory listing result of a directory has been replaced, updated or removed.
+	 * @param fullPath The canonical path of the directory
+	 */
+	void directoryInvalidated(String fullPath);
+
+}
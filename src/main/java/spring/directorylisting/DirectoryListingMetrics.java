@@ -0,0 +1,159 @@
+package spring.directorylisting;
+
+import java.util.concurrent.atomic.LongAdder;
+import org.springframework.stereotype.Component;
+
+/**
+ * A class for recording measurements of the hot paths of the service.
+ * Times are recorded in microseconds.
+ * @author N. H. Weideman
+ */
+@Component
+public class DirectoryListingMetrics {
+
+	private final LongAdder cacheHits = new LongAdder();
+	public long getCacheHits() {
+		return cacheHits.sum();
+	}
+
+	private final LongAdder cacheMisses = new LongAdder();
+	public long getCacheMisses() {
+		return cacheMisses.sum();
+	}
+
+	/* Entries removed to make room for other entries. */
+	private final LongAdder cacheEvictions = new LongAdder();
+	public long getCacheEvictions() {
+		return cacheEvictions.sum();
+	}
+
+	/* Listings that were not admitted to the cache. */
+	private final LongAdder cacheRejections = new LongAdder();
+	public long getCacheRejections() {
+		return cacheRejections.sum();
+	}
+
+	/* The time to read a directory that was not cached. */
+	private final Histogram readTime = new Histogram();
+	public Histogram getReadTime() {
+		return readTime;
+	}
+
+	/* The time spent iterating the entries of a directory while reading it. */
+	private final Histogram scanTime = new Histogram();
+	public Histogram getScanTime() {
+		return scanTime;
+	}
+
+	/* The time spent reading the attributes of the entries of a directory, summed over the threads reading them. */
+	private final Histogram statTime = new Histogram();
+	public Histogram getStatTime() {
+		return statTime;
+	}
+
+	private final Histogram entriesPerListing = new Histogram();
+	public Histogram getEntriesPerListing() {
+		return entriesPerListing;
+	}
+
+	private final Histogram htmlRenderTime = new Histogram();
+	public Histogram getHtmlRenderTime() {
+		return htmlRenderTime;
+	}
+
+	private final Histogram jsonRenderTime = new Histogram();
+	public Histogram getJsonRenderTime() {
+		return jsonRenderTime;
+	}
+
+	private final Histogram cborRenderTime = new Histogram();
+	public Histogram getCborRenderTime() {
+		return cborRenderTime;
+	}
+
+	/* The time to write a streamed response, which includes waiting for the client to receive it. */
+	private final Histogram streamRenderTime = new Histogram();
+	public Histogram getStreamRenderTime() {
+		return streamRenderTime;
+	}
+
+	/* The size in bytes of a streamed response before compression. */
+	private final Histogram streamRenderBytes = new Histogram();
+	public Histogram getStreamRenderBytes() {
+		return streamRenderBytes;
+	}
+
+	private final EventRate watchEvents = new EventRate();
+	public EventRate getWatchEvents() {
+		return watchEvents;
+	}
+
+	void recordCacheHit() {
+		cacheHits.increment();
+	}
+
+	void recordCacheMiss() {
+		cacheMisses.increment();
+	}
+
+	void recordCacheEviction() {
+		cacheEvictions.increment();
+	}
+
+	void recordCacheRejection() {
+		cacheRejections.increment();
+	}
+
+	void recordWatchEvents(int numEvents) {
+		watchEvents.mark(numEvents);
+	}
+
+	/**
+	 * Records the phases of reading a directory.
+	 * @param readNanos The time in nanoseconds to read the directory
+	 * @param scanNanos The time in nanoseconds spent iterating the entries, apart from waiting for their attributes
+	 * @param statNanos The time in nanoseconds spent reading attributes, summed over the threads reading them
+	 * @param numEntries The number of entries of the directory
+	 */
+	void recordRead(long readNanos, long scanNanos, long statNanos, int numEntries) {
+		readTime.record(readNanos / 1000);
+		scanTime.record(scanNanos / 1000);
+		statTime.record(statNanos / 1000);
+		entriesPerListing.record(numEntries);
+	}
+
+	/**
+	 * Records the time to render an HTML response.
+	 * @param renderNanos The time in nanoseconds
+	 */
+	public void recordHtmlRender(long renderNanos) {
+		htmlRenderTime.record(renderNanos / 1000);
+	}
+
+	/**
+	 * Records the time to render a JSON response.
+	 * @param renderNanos The time in nanoseconds
+	 */
+	public void recordJsonRender(long renderNanos) {
+		jsonRenderTime.record(renderNanos / 1000);
+	}
+
+	/**
+	 * Records the time to render a CBOR response.
+	 * @param renderNanos The time in nanoseconds
+	 */
+	public void recordCborRender(long renderNanos) {
+		cborRenderTime.record(renderNanos / 1000);
+	}
+
+	/**
+	 * Records a streamed response once it has been written.
+	 * @param renderNanos The time in nanoseconds to write the response
+	 * @param numBytes The size of the response in bytes before compression
+	 */
+	public void recordStreamRender(long renderNanos, long numBytes) {
+		streamRenderTime.record(renderNanos / 1000);
+		streamRenderBytes.record(numBytes);
+	}
+
+}
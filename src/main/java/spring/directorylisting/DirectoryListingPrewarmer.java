@@ -0,0 +1,192 @@
+package spring.directorylisting;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import debugging.Debug;
+
+/**
+ * A class for filling the cache with the listings of known directories after startup.
+ * The directories below the configured roots are crawled up to a maximum depth on low priority threads,
+ * which wait while requests are waiting for directories to be read, so that the crawl gives way to live traffic.
+ * @author N. H. Weideman
+ */
+@Component
+public class DirectoryListingPrewarmer {
+
+	private final String CURRENT_DIRECTORY_NAME = ".";
+	private final String PARENT_DIRECTORY_NAME = "..";
+
+	/* The time in milliseconds to wait before checking again whether requests are still waiting. */
+	private static final long YIELD_INTERVAL = 50;
+
+	private final DirectoryListingComponent directoryListingComponent;
+	private final String[] roots;
+	private final int maxDepth;
+	private final int parallelism;
+
+	private ExecutorService crawlExecutor;
+	/* The number of directories that have been found but not yet visited. */
+	private final AtomicInteger pendingCount;
+	private final AtomicLong directoryCount;
+	private final AtomicLong entryCount;
+	private final AtomicLong errorCount;
+	private volatile long startTime;
+	private volatile long endTime;
+	private volatile boolean ready;
+
+	/**
+	 * Creates a new pre-warmer.
+	 * @param directoryListingComponent The component whose cache is filled
+	 * @param roots The directories to crawl, none to start ready, blank roots are skipped
+	 * @param maxDepth The depth below the roots up to which directories are crawled, 0 to only list the roots
+	 * @param parallelism The number of threads crawling the directories
+	 */
+	@Autowired
+	public DirectoryListingPrewarmer(DirectoryListingComponent directoryListingComponent,
+					@Value("${directorylisting.prewarm.roots:}") String[] roots,
+					@Value("${directorylisting.prewarm.max-depth:2}") int maxDepth,
+					@Value("${directorylisting.prewarm.parallelism:2}") int parallelism) {
+		this.directoryListingComponent = directoryListingComponent;
+		this.roots = trimRoots(roots);
+		this.maxDepth = maxDepth;
+		this.parallelism = Math.max(parallelism, 1);
+		this.pendingCount = new AtomicInteger();
+		this.directoryCount = new AtomicLong();
+		this.entryCount = new AtomicLong();
+		this.errorCount = new AtomicLong();
+	}
+
+	/**
+	 * Starts crawling the roots once the application is ready to serve requests.
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public synchronized void start() {
+		startTime = System.currentTimeMillis();
+		if (roots.length == 0) {
+			finish();
+			return;
+		}
+		Debug.debugln("Pre-warming cache from " + roots.length + " roots.");
+		crawlExecutor = Executors.newFixedThreadPool(parallelism, new DaemonThreadFactory("directory-listing-prewarm-", Thread.MIN_PRIORITY));
+		pendingCount.set(roots.length);
+		for (String root : roots) {
+			crawlExecutor.execute(new CrawlTask(root, 0));
+		}
+	}
+
+	/**
+	 * Stops the crawl.
+	 */
+	@PreDestroy
+	public synchronized void stop() {
+		if (crawlExecutor != null) {
+			crawlExecutor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Returns the progress of the crawl.
+	 * @return The progress of the crawl
+	 */
+	public PrewarmProgress getProgress() {
+		boolean ready = this.ready;
+		long elapsedTime = 0;
+		if (startTime != 0) {
+			elapsedTime = (ready ? endTime : System.currentTimeMillis()) - startTime;
+		}
+		return new PrewarmProgress(ready, directoryCount.get(), entryCount.get(), errorCount.get(), elapsedTime);
+	}
+
+	/* Trims the configured roots and leaves out blank ones, such as the one after a trailing comma, which would resolve to the working directory. */
+	private static String[] trimRoots(String[] roots) {
+		List<String> trimmedRoots = new ArrayList<String>(roots.length);
+		for (String root : roots) {
+			String trimmedRoot = root.trim();
+			if (!trimmedRoot.isEmpty()) {
+				trimmedRoots.add(trimmedRoot);
+			}
+		}
+		return trimmedRoots.toArray(new String[trimmedRoots.size()]);
+	}
+
+	/* Marks the crawl as finished and stops the crawling threads. */
+	private synchronized void finish() {
+		endTime = System.currentTimeMillis();
+		ready = true;
+		if (crawlExecutor != null) {
+			crawlExecutor.shutdown();
+		}
+		Debug.debugln("Pre-warmed cache with " + directoryCount.get() + " directories in " + (endTime - startTime) + " ms.");
+	}
+
+	/**
+	 * Lists a single directory and queues its subdirectories.
+	 */
+	private class CrawlTask implements Runnable {
+
+		private final String fullPathStr;
+		private final int depth;
+
+		private CrawlTask(String fullPathStr, int depth) {
+			this.fullPathStr = fullPathStr;
+			this.depth = depth;
+		}
+
+		@Override
+		public void run() {
+			try {
+				/* Requests waiting for directories go first. */
+				while (directoryListingComponent.isBusy()) {
+					Thread.sleep(YIELD_INTERVAL);
+				}
+				DirectoryListingResult directoryListingResult = directoryListingComponent.getListing(fullPathStr);
+				directoryCount.incrementAndGet();
+				entryCount.addAndGet(directoryListingResult.getNumEntries());
+
+				if (depth < maxDepth) {
+					for (DirectoryListingEntry directoryEntry : directoryListingResult.getDirectoryEntries()) {
+						String fileName = directoryEntry.getFileName();
+						if (directoryEntry.isDirectory()
+										&& !fileName.equals(CURRENT_DIRECTORY_NAME)
+										&& !fileName.equals(PARENT_DIRECTORY_NAME)) {
+							String subdirectoryPathStr = new File(directoryListingResult.getFullPath(), fileName).getPath();
+							pendingCount.incrementAndGet();
+							try {
+								crawlExecutor.execute(new CrawlTask(subdirectoryPathStr, depth + 1));
+							} catch (RejectedExecutionException ree) {
+								/* The crawl has been stopped. */
+								pendingCount.decrementAndGet();
+								return;
+							}
+						}
+					}
+				}
+			} catch (IOException ioe) {
+				Debug.debugln("Could not pre-warm " + fullPathStr + ".");
+				errorCount.incrementAndGet();
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+			} finally {
+				if (pendingCount.decrementAndGet() == 0) {
+					finish();
+				}
+			}
+		}
+
+	}
+
+}
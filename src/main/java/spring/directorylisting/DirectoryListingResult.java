@@ -1,29 +1,363 @@
 package spring.directorylisting;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.nio.file.attribute.BasicFileAttributes;
 
 /**
  * A path for storing directory listing results.
+ * The directory entries are stored column by column in arrays that are never modified, so that the entries and pages of entries
+ * can be handed out as read-only views without copying, and only the entries that are read are created.
  * @author N. H. Weideman
  */
 public class DirectoryListingResult {
 
+	/* Versions are based on the start time, so that versions from before a restart are not reused. */
+	private static final AtomicLong VERSION_COUNTER = new AtomicLong(System.currentTimeMillis() * 1000);
+
 	private final String fullPath;
 	public String getFullPath() {
 		return fullPath;
 	}
 
-	private final LinkedList<DirectoryListingEntry> directoryEntries;
-	public LinkedList<DirectoryListingEntry> getDirectoryEntries() {
-		/* We copy the directory entries into a new linked list to preserve immutability. */
-		return new LinkedList<DirectoryListingEntry>(directoryEntries);
+	private final long version;
+	/**
+	 * Returns the version of the listing, which differs for every listing and every change to a listing.
+	 * @return The version of the listing
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	private final DirectoryListingColumns columns;
+	DirectoryListingColumns getColumns() {
+		return columns;
+	}
+
+	private final DirectoryListingView directoryEntriesView;
+	public List<DirectoryListingEntry> getDirectoryEntries() {
+		/* The entries are returned as a read-only view to preserve immutability. */
+		return directoryEntriesView;
 	}
 
 	private final int numEntries;
+	public int getNumEntries() {
+		return numEntries;
+	}
+
+	/**
+	 * Returns a read-only view of a range of the directory entries.
+	 * @param fromIndex The index of the first entry of the page (inclusive)
+	 * @param toIndex The index of the last entry of the page (exclusive)
+	 * @return The directory entries in the range
+	 */
+	public List<DirectoryListingEntry> getPage(int fromIndex, int toIndex) {
+		return directoryEntriesView.subList(fromIndex, toIndex);
+	}
+
+	/* The indices of the entries in each sort order, ascending and descending for every sort key, created when first needed. */
+	private final AtomicReferenceArray<int[]> sortOrders;
+
+	/**
+	 * Returns a read-only view of the directory entries sorted by file name.
+	 * @return The directory entries sorted by file name
+	 */
+	public DirectoryListingView getNameOrderedEntries() {
+		return getOrderedEntries(DirectoryListingSortKey.NAME, false);
+	}
+
+	/**
+	 * Returns a read-only view of the directory entries in a sort order.
+	 * Each sort order is computed once for the listing, so later views in the same order cost no more than the unsorted entries.
+	 * @param sortKey The key to sort the entries by
+	 * @param descending True to sort the entries in descending order, false to sort them in ascending order
+	 * @return The sorted directory entries
+	 */
+	public DirectoryListingView getOrderedEntries(DirectoryListingSortKey sortKey, boolean descending) {
+		return new DirectoryListingView(columns, getSortOrder(sortKey, descending));
+	}
+
+	/**
+	 * Returns a read-only view of the directory entries that start with a prefix and are accepted by a filter, in a sort order.
+	 * The entries with the prefix are found by binary search in the name order, so only those entries are passed to the filter.
+	 * @param sortKey The key to sort the entries by
+	 * @param descending True to sort the entries in descending order, false to sort them in ascending order
+	 * @param prefix The prefix of the file names to return, the empty string for all file names
+	 * @param fileNameFilter The filter that the file names must be accepted by, NULL to accept all file names with the prefix
+	 * @return The selected directory entries in the sort order
+	 */
+	public DirectoryListingView getOrderedEntries(DirectoryListingSortKey sortKey, boolean descending, String prefix, Predicate<String> fileNameFilter) {
+		int[] nameOrder = getSortOrder(DirectoryListingSortKey.NAME, false);
+
+		/* The file names with the prefix follow each other in the name order, starting at the first name that is not smaller than the prefix. */
+		int low = 0;
+		int high = nameOrder.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (columns.compareFileName(nameOrder[middle], prefix) < 0) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		int prefixStart = low;
+		high = nameOrder.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (columns.fileNameStartsWith(nameOrder[middle], prefix)) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		int prefixEnd = low;
+
+		int[] selectedOrder = new int[prefixEnd - prefixStart];
+		int numSelected = 0;
+		if (sortKey == DirectoryListingSortKey.NAME && !descending) {
+			for (int i = prefixStart; i < prefixEnd; i++) {
+				if (fileNameFilter == null || fileNameFilter.test(columns.getFileName(nameOrder[i]))) {
+					selectedOrder[numSelected++] = nameOrder[i];
+				}
+			}
+		} else {
+			/* The selected entries are marked, and then collected in the requested order. */
+			BitSet selectedEntries = new BitSet(numEntries);
+			for (int i = prefixStart; i < prefixEnd; i++) {
+				if (fileNameFilter == null || fileNameFilter.test(columns.getFileName(nameOrder[i]))) {
+					selectedEntries.set(nameOrder[i]);
+				}
+			}
+			for (int index : getSortOrder(sortKey, descending)) {
+				if (selectedEntries.get(index)) {
+					selectedOrder[numSelected++] = index;
+				}
+			}
+		}
+		if (numSelected < selectedOrder.length) {
+			selectedOrder = Arrays.copyOf(selectedOrder, numSelected);
+		}
+		return new DirectoryListingView(columns, selectedOrder);
+	}
+
+	/* Returns the indices of the entries in a sort order, sorting them on the first call. */
+	private int[] getSortOrder(DirectoryListingSortKey sortKey, boolean descending) {
+		int orderIndex = 2 * sortKey.ordinal() + (descending ? 1 : 0);
+		int[] sortOrder = sortOrders.get(orderIndex);
+		if (sortOrder == null) {
+			if (descending) {
+				/* The descending order is the exact reverse of the ascending order. */
+				int[] ascendingOrder = getSortOrder(sortKey, false);
+				sortOrder = new int[numEntries];
+				for (int i = 0; i < numEntries; i++) {
+					sortOrder[i] = ascendingOrder[numEntries - 1 - i];
+				}
+			} else {
+				sortOrder = sort(createComparator(sortKey));
+			}
+			sortOrders.set(orderIndex, sortOrder);
+		}
+		return sortOrder;
+	}
+
+	/**
+	 * Compares two entries by their indices, without boxing the indices.
+	 */
+	private interface IndexComparator {
+		int compare(int index1, int index2);
+	}
 
-	public DirectoryListingResult(String fullPath, LinkedList<DirectoryListingEntry> directoryEntries) {
+	/* Ranges of at most this many indices are sorted by insertion sort instead of being split further. */
+	private static final int INSERTION_SORT_THRESHOLD = 16;
+
+	/* Sorts the indices of the entries, ties are broken by file name. */
+	private int[] sort(final IndexComparator comparator) {
+		int[] sortOrder = new int[numEntries];
+		for (int i = 0; i < numEntries; i++) {
+			sortOrder[i] = i;
+		}
+		IndexComparator indexComparator = (i1, i2) -> {
+			int result = (comparator == null) ? 0 : comparator.compare(i1, i2);
+			if (result == 0) {
+				result = columns.compareFileNames(i1, i2);
+			}
+			return result;
+		};
+		mergeSort(sortOrder, new int[numEntries], 0, numEntries, indexComparator);
+		return sortOrder;
+	}
+
+	/* Sorts a range of indices with a merge sort, the buffer holds the first half of a range while it is merged with the second half. */
+	private static void mergeSort(int[] indices, int[] buffer, int fromIndex, int toIndex, IndexComparator comparator) {
+		if (toIndex - fromIndex <= INSERTION_SORT_THRESHOLD) {
+			for (int i = fromIndex + 1; i < toIndex; i++) {
+				int index = indices[i];
+				int j = i - 1;
+				while (j >= fromIndex && comparator.compare(indices[j], index) > 0) {
+					indices[j + 1] = indices[j];
+					j--;
+				}
+				indices[j + 1] = index;
+			}
+			return;
+		}
+
+		int middleIndex = (fromIndex + toIndex) >>> 1;
+		mergeSort(indices, buffer, fromIndex, middleIndex, comparator);
+		mergeSort(indices, buffer, middleIndex, toIndex, comparator);
+		/* Halves that are already in order, as are most entries when sorting by name, need no merging. */
+		if (comparator.compare(indices[middleIndex - 1], indices[middleIndex]) <= 0) {
+			return;
+		}
+
+		System.arraycopy(indices, fromIndex, buffer, fromIndex, middleIndex - fromIndex);
+		int i = fromIndex;
+		int j = middleIndex;
+		int k = fromIndex;
+		while (i < middleIndex && j < toIndex) {
+			indices[k++] = (comparator.compare(indices[j], buffer[i]) < 0) ? indices[j++] : buffer[i++];
+		}
+		while (i < middleIndex) {
+			indices[k++] = buffer[i++];
+		}
+	}
+
+	/* Creates the comparator of entry indices for a sort key, NULL for sorting by file name only. The keys are read from the columns. */
+	private IndexComparator createComparator(DirectoryListingSortKey sortKey) {
+		switch (sortKey) {
+		case SIZE:
+			return (i1, i2) -> Long.compare(columns.getSize(i1), columns.getSize(i2));
+		case MTIME:
+			return (i1, i2) -> Long.compare(columns.getLastModifiedTime(i1), columns.getLastModifiedTime(i2));
+		case TYPE: {
+			final int[] kinds = new int[numEntries];
+			final String[] extensions = new String[numEntries];
+			for (int i = 0; i < numEntries; i++) {
+				int flags = columns.getFlags(i);
+				kinds[i] = ((flags & DirectoryListingColumns.DIRECTORY_FLAG) != 0) ? 0 : (((flags & DirectoryListingColumns.REGULAR_FILE_FLAG) != 0) ? 1 : 2);
+				String fileName = columns.getFileName(i);
+				int extensionStart = fileName.lastIndexOf('.');
+				extensions[i] = (extensionStart > 0) ? fileName.substring(extensionStart + 1) : "";
+			}
+			return (i1, i2) -> {
+				int result = Integer.compare(kinds[i1], kinds[i2]);
+				return (result != 0) ? result : extensions[i1].compareTo(extensions[i2]);
+			};
+		}
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the attributes of the listed directory itself.
+	 * @return The attributes of the "." entry of the listing
+	 */
+	public BasicFileAttributes getDirectoryAttributes() {
+		return new ColumnFileAttributes(columns, 0);
+	}
+
+	/* A rough estimate of the heap used by a result apart from its columns, used to weigh results in the cache. */
+	private static final long RESULT_OVERHEAD_BYTES = 128;
+
+	private final long estimatedSize;
+	/**
+	 * Estimates the number of bytes of heap used by this result.
+	 * @return The estimated size in bytes
+	 */
+	public long getEstimatedSize() {
+		return estimatedSize;
+	}
+
+	public DirectoryListingResult(String fullPath, List<DirectoryListingEntry> directoryEntries) {
+		this(fullPath, createColumns(directoryEntries));
+	}
+
+	/**
+	 * Creates a result from entries that are already stored in columns.
+	 * @param fullPath The canonical path of the directory
+	 * @param columns The directory entries, starting with the "." entry
+	 */
+	DirectoryListingResult(String fullPath, DirectoryListingColumns columns) {
 		this.fullPath = fullPath;
-		this.directoryEntries = new LinkedList<DirectoryListingEntry>(directoryEntries);
-		this.numEntries = directoryEntries.size();
+		this.version = VERSION_COUNTER.incrementAndGet();
+		this.columns = columns;
+		this.directoryEntriesView = new DirectoryListingView(columns, null);
+		this.numEntries = columns.size();
+		this.sortOrders = new AtomicReferenceArray<int[]>(2 * DirectoryListingSortKey.values().length);
+		this.estimatedSize = RESULT_OVERHEAD_BYTES + 2 * fullPath.length() + columns.getEstimatedSize();
+	}
+
+	/* Stores directory entries in columns. */
+	private static DirectoryListingColumns createColumns(List<DirectoryListingEntry> directoryEntries) {
+		DirectoryListingColumns.Builder columnsBuilder = new DirectoryListingColumns.Builder(directoryEntries.size());
+		for (DirectoryListingEntry directoryEntry : directoryEntries) {
+			columnsBuilder.add(directoryEntry);
+		}
+		return columnsBuilder.build();
+	}
+
+	/**
+	 * Creates a copy of this result with some of the directory entries changed.
+	 * Changed entries keep their position in the listing and new entries are added at the end.
+	 * @param changedEntries The changed entries by file name, an entry mapped to NULL is removed from the listing
+	 * @return The patched directory listing result
+	 */
+	DirectoryListingResult patch(Map<String, DirectoryListingEntry> changedEntries) {
+		/* The changed entries are found by the hash codes of their file names, so the file names of the other entries are never created. */
+		Map<Integer, List<String>> changedFileNamesByHash = new HashMap<Integer, List<String>>();
+		for (String fileName : changedEntries.keySet()) {
+			List<String> fileNames = changedFileNamesByHash.get(fileName.hashCode());
+			if (fileNames == null) {
+				fileNames = new ArrayList<String>(1);
+				changedFileNamesByHash.put(fileName.hashCode(), fileNames);
+			}
+			fileNames.add(fileName);
+		}
+		BitSet changedIndices = new BitSet(numEntries);
+		Map<Integer, String> changedFileNames = new HashMap<Integer, String>();
+		for (int i = 0; i < numEntries; i++) {
+			List<String> fileNames = changedFileNamesByHash.get(columns.getFileNameHashCode(i));
+			if (fileNames != null) {
+				for (String fileName : fileNames) {
+					if (columns.compareFileName(i, fileName) == 0) {
+						changedIndices.set(i);
+						changedFileNames.put(i, fileName);
+					}
+				}
+			}
+		}
+		Set<String> existingFileNames = new HashSet<String>(changedFileNames.values());
+		List<DirectoryListingEntry> addedEntries = new ArrayList<DirectoryListingEntry>();
+		for (Map.Entry<String, DirectoryListingEntry> changedEntry : changedEntries.entrySet()) {
+			if (changedEntry.getValue() != null && !existingFileNames.contains(changedEntry.getKey())) {
+				addedEntries.add(changedEntry.getValue());
+			}
+		}
+
+		DirectoryListingColumns.Builder columnsBuilder = new DirectoryListingColumns.Builder(numEntries + addedEntries.size());
+		for (int i = 0; i < numEntries; i++) {
+			if (changedIndices.get(i)) {
+				DirectoryListingEntry changedEntry = changedEntries.get(changedFileNames.get(i));
+				if (changedEntry != null) {
+					columnsBuilder.add(changedEntry);
+				}
+			} else {
+				columnsBuilder.add(columns, i);
+			}
+		}
+		for (DirectoryListingEntry addedEntry : addedEntries) {
+			columnsBuilder.add(addedEntry);
+		}
+		return new DirectoryListingResult(fullPath, columnsBuilder.build());
 	}
 }
@@ -1,68 +1,299 @@
 package spring.directorylisting;
 
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.io.IOException;
-import java.io.File;
-import java.nio.file.Path;
 import java.nio.file.FileSystems;
 import java.nio.file.FileSystem;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.WatchService;
 import java.nio.file.WatchKey;
 import java.nio.file.WatchEvent;
 import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.attribute.BasicFileAttributes;
 
 import debugging.Debug;
 
 /**
  * A class for caching Directory Listing Results.
+ * The cache is bounded by both the number of cached directories and the estimated heap size of the cached results.
+ * When the cache is full, a new result is only admitted if it has been requested more frequently than the
+ * least recently used results it would replace (TinyLFU admission), so that a scan over many directories
+ * that are each requested once does not flush the frequently requested directories from the cache.
+ * Cached directories stay watched while they are cached, and changes reported by the watch service are
+ * applied to the cached results entry by entry. Directories are watched from before they are read, so the
+ * changes made while a directory is read are applied to its result when it is added.
  * @author N. H. Weideman
  */
 public class DirectoryListingResultCache {
 
-	private final ConcurrentHashMap<String, DirectoryListingResult> cacheMap;
-	
+	private final ConcurrentHashMap<String, CacheEntry> cacheMap;
+
+	/* The cached entries in least recently used order, guarded by evictionLock. */
+	private final LinkedHashMap<String, CacheEntry> accessOrder;
+	/* Estimates how often each path has been requested, guarded by evictionLock. */
+	private final FrequencySketch frequencySketch;
+	private final ReentrantLock evictionLock;
+
+	private static final String CURRENT_DIRECTORY_NAME = ".";
+
+	private final int maxEntries;
+	private final long maxWeight;
+	/* The total estimated size of the cached results, guarded by evictionLock. */
+	private long totalWeight;
+
 	private final FileSystem fileSystem;
 	private final WatchService watchService;
+	/* The watch keys registered with the watch service that have not been cancelled. */
+	private final Set<WatchKey> watchKeys;
+	/* The directories that are being read, watched since before they were read, guarded by evictionLock. */
+	private final HashMap<String, PendingWatch> pendingWatches;
+
+	private final CopyOnWriteArrayList<DirectoryListingInvalidationListener> invalidationListeners;
+
+	private final DirectoryListingMetrics metrics;
 
 	/**
 	 * Creates a new cache.
+	 * @param maxEntries The maximum number of directory listing results to cache
+	 * @param maxWeight The maximum total estimated size, in bytes, of the cached directory listing results
+	 * @param metrics The metrics to record hits, misses, evictions and watch events in
 	 * @throws IOException If an I/O error occurs
 	 */
-	public DirectoryListingResultCache() throws IOException {
-		this.cacheMap = new ConcurrentHashMap<String, DirectoryListingResult>();
+	public DirectoryListingResultCache(int maxEntries, long maxWeight, DirectoryListingMetrics metrics) throws IOException {
+		this.cacheMap = new ConcurrentHashMap<String, CacheEntry>();
+		this.accessOrder = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true);
+		this.frequencySketch = new FrequencySketch(maxEntries);
+		this.evictionLock = new ReentrantLock();
+		this.maxEntries = maxEntries;
+		this.maxWeight = maxWeight;
+		this.totalWeight = 0;
 		this.fileSystem = FileSystems.getDefault();
 		this.watchService = fileSystem.newWatchService();
+		this.watchKeys = ConcurrentHashMap.newKeySet();
+		this.pendingWatches = new HashMap<String, PendingWatch>();
+		this.invalidationListeners = new CopyOnWriteArrayList<DirectoryListingInvalidationListener>();
+		this.metrics = metrics;
 
 		/* Start a new thread to handle events from the watch service. */
 		DirectoryListingResultValidityThread dlrvt = new DirectoryListingResultValidityThread();
 		dlrvt.start();
-		
+
 	}
 
 	/**
-	 * Obtains the directory listing result for the cached path.
+	 * Obtains the directory listing result for the cached path and records the access.
 	 * @param path The path of the directory listing result
 	 * @return The directory listing result if the path has been cached, NULL otherwise
 	 */
 	public DirectoryListingResult get(String fileStr) {
-		return cacheMap.get(fileStr);
+		CacheEntry cacheEntry = cacheMap.get(fileStr);
+		recordAccess(fileStr, cacheEntry);
+		if (cacheEntry == null) {
+			return null;
+		}
+		return cacheEntry.directoryListingResult;
+	}
+
+	/* Records an access to a path in the frequency sketch, the access order and the metrics. */
+	private void recordAccess(String fileStr, CacheEntry cacheEntry) {
+		/* Recording the access is best effort, it is skipped rather than waiting for a busy lock. */
+		if (evictionLock.tryLock()) {
+			try {
+				frequencySketch.increment(fileStr);
+				if (cacheEntry != null) {
+					accessOrder.get(fileStr);
+				}
+			} finally {
+				evictionLock.unlock();
+			}
+		}
+		if (cacheEntry == null) {
+			metrics.recordCacheMiss();
+		} else {
+			metrics.recordCacheHit();
+		}
 	}
 
 	/**
-	 * Adds a new entry to the cache.
-	 * @param path The path of the directory listing result
+	 * Starts watching a directory before it is read, so that the changes made while it is read are applied to its result when it is added by put.
+	 * Every call must be followed by a call to unwatch once the result has been added, or once reading the directory has failed.
+	 * @param path The canonical path of the directory
+	 * @throws IOException If the directory could not be watched
+	 */
+	public void watch(String fileStr) throws IOException {
+		Path path = fileSystem.getPath(fileStr);
+		evictionLock.lock();
+		try {
+			PendingWatch pendingWatch = pendingWatches.get(fileStr);
+			if (pendingWatch == null) {
+				pendingWatch = new PendingWatch(register(path));
+				pendingWatches.put(fileStr, pendingWatch);
+			}
+			pendingWatch.reads++;
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	/**
+	 * Ends a read of a directory started by watch, and stops watching the directory if it is neither cached nor being read.
+	 * @param path The canonical path of the directory
+	 */
+	public void unwatch(String fileStr) {
+		evictionLock.lock();
+		try {
+			PendingWatch pendingWatch = pendingWatches.get(fileStr);
+			if (pendingWatch == null || --pendingWatch.reads > 0) {
+				return;
+			}
+			pendingWatches.remove(fileStr);
+			CacheEntry cacheEntry = cacheMap.get(fileStr);
+			if (cacheEntry == null || cacheEntry.watchKey != pendingWatch.watchKey) {
+				cancelWatchKey(pendingWatch.watchKey);
+			}
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	/**
+	 * Adds a new entry to the cache, if the cache admits it.
+	 * If the directory was watched by watch before it was read, the changes reported since are applied to the result first.
+	 * Otherwise the directory is watched from now on, and the result is only added if the directory was not modified since it was read.
+	 * @param path The canonical path of the directory listing result
 	 * @param directoryListingResult The directory listing result to cache
+	 * @return True if the result was added to the cache, false if it was rejected
 	 * @throws IOException If an I/O error occurs
 	 */
-	public void put(String fileStr, DirectoryListingResult directoryListingResult) throws IOException {
+	public boolean put(String fileStr, DirectoryListingResult directoryListingResult) throws IOException {
+		/* The path is already canonical, so it is not resolved again. */
 		Path path = fileSystem.getPath(fileStr);
-		/* Obtaining the canonical path */
-		path = new File(path.toFile().getCanonicalPath()).toPath();
 
-		path.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
-		Debug.debugln("Adding " + fileStr + " to cache.");
-		cacheMap.put(fileStr, directoryListingResult);
+		evictionLock.lock();
+		try {
+			PendingWatch pendingWatch = pendingWatches.get(fileStr);
+			if (pendingWatch != null) {
+				if (pendingWatch.eventsLost) {
+					Debug.debugln("Rejecting " + fileStr + ", changes made while it was being listed were lost.");
+					metrics.recordCacheRejection();
+					return false;
+				}
+				if (!pendingWatch.changedFileNames.isEmpty()) {
+					/* Events arriving from now on wait for the lock, and are applied to the added result. */
+					Debug.debugln("Updating " + pendingWatch.changedFileNames.size() + " entries of " + fileStr + " changed while it was being listed.");
+					try {
+						directoryListingResult = directoryListingResult.patch(readChangedEntries(path, pendingWatch.changedFileNames));
+					} catch (IOException ioe) {
+						Debug.debugStackTrace(ioe);
+						metrics.recordCacheRejection();
+						return false;
+					}
+				}
+			}
+
+			long weight = directoryListingResult.getEstimatedSize();
+			CacheEntry existingEntry = cacheMap.get(fileStr);
+			long existingWeight = (existingEntry == null) ? 0 : existingEntry.weight;
+			int existingCount = (existingEntry == null) ? 0 : 1;
+
+			/* Find the least recently used entries that have to make way for the new entry. */
+			LinkedList<CacheEntry> victims = new LinkedList<CacheEntry>();
+			int numEntries = cacheMap.size() - existingCount + 1;
+			long newTotalWeight = totalWeight - existingWeight + weight;
+			Iterator<CacheEntry> lruIterator = accessOrder.values().iterator();
+			while ((numEntries > maxEntries || newTotalWeight > maxWeight) && lruIterator.hasNext()) {
+				CacheEntry victim = lruIterator.next();
+				if (victim == existingEntry) {
+					continue;
+				}
+				victims.add(victim);
+				numEntries--;
+				newTotalWeight -= victim.weight;
+			}
+			if (numEntries > maxEntries || newTotalWeight > maxWeight) {
+				Debug.debugln("Rejecting " + fileStr + ", it is larger than the cache.");
+				metrics.recordCacheRejection();
+				return false;
+			}
+
+			/* Only admit the new entry if it is more popular than every entry it replaces. */
+			int candidateFrequency = frequencySketch.frequency(fileStr);
+			for (CacheEntry victim : victims) {
+				if (frequencySketch.frequency(victim.fullPath) >= candidateFrequency) {
+					Debug.debugln("Rejecting " + fileStr + ", it is less frequently used than " + victim.fullPath + ".");
+					metrics.recordCacheRejection();
+					return false;
+				}
+			}
+
+			WatchKey watchKey;
+			if (pendingWatch != null) {
+				watchKey = pendingWatch.watchKey;
+			} else {
+				watchKey = register(path);
+				/* Changes made while the directory was being listed, but before it was watched, would never be reported. */
+				BasicFileAttributes directoryAttributes = directoryListingResult.getDirectoryAttributes();
+				if (!Files.getLastModifiedTime(path).equals(directoryAttributes.lastModifiedTime())) {
+					Debug.debugln("Rejecting " + fileStr + ", it was modified while being listed.");
+					if (existingEntry == null) {
+						cancelWatchKey(watchKey);
+					}
+					metrics.recordCacheRejection();
+					return false;
+				}
+			}
+
+			for (CacheEntry victim : victims) {
+				Debug.debugln("Evicting " + victim.fullPath + " from cache.");
+				metrics.recordCacheEviction();
+				removeEntry(victim);
+			}
+			Debug.debugln("Adding " + fileStr + " to cache.");
+			CacheEntry cacheEntry = new CacheEntry(fileStr, directoryListingResult, watchKey, weight);
+			cacheMap.put(fileStr, cacheEntry);
+			accessOrder.put(fileStr, cacheEntry);
+			totalWeight = totalWeight - existingWeight + weight;
+			if (existingEntry != null) {
+				notifyInvalidationListeners(fileStr);
+			}
+			return true;
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	/**
+	 * Obtains the directory listing result for the cached path without recording the access.
+	 * @param path The path of the directory listing result
+	 * @return The directory listing result if the path has been cached, NULL otherwise
+	 */
+	public DirectoryListingResult peek(String fileStr) {
+		CacheEntry cacheEntry = cacheMap.get(fileStr);
+		if (cacheEntry == null) {
+			return null;
+		}
+		return cacheEntry.directoryListingResult;
+	}
+
+	/**
+	 * Registers a listener to notify whenever a cached result is replaced, updated or removed.
+	 * @param invalidationListener The listener to register
+	 */
+	public void addInvalidationListener(DirectoryListingInvalidationListener invalidationListener) {
+		invalidationListeners.add(invalidationListener);
 	}
 
 	/**
@@ -73,6 +304,224 @@ public class DirectoryListingResultCache {
 		return cacheMap.containsKey(fileStr);
 	}
 
+	/**
+	 * Returns the number of cached directory listing results.
+	 * @return The number of cached entries
+	 */
+	public int size() {
+		return cacheMap.size();
+	}
+
+	/**
+	 * Returns the number of directories being watched, which are the watch keys registered and not yet cancelled.
+	 * @return The number of active watch keys
+	 */
+	public int getWatchKeyCount() {
+		return watchKeys.size();
+	}
+
+	/**
+	 * Returns the currently cached directory listing results.
+	 * @return A copy of the cached results, in no particular order
+	 */
+	List<DirectoryListingResult> getResults() {
+		List<DirectoryListingResult> directoryListingResults = new ArrayList<DirectoryListingResult>(cacheMap.size());
+		for (CacheEntry cacheEntry : cacheMap.values()) {
+			directoryListingResults.add(cacheEntry.directoryListingResult);
+		}
+		return directoryListingResults;
+	}
+
+	/**
+	 * Returns the total estimated size of the cached directory listing results.
+	 * @return The estimated size in bytes
+	 */
+	public long weight() {
+		evictionLock.lock();
+		try {
+			return totalWeight;
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	/* Watches a directory for changes to its entries, registering a watched directory again returns its existing key. */
+	private WatchKey register(Path path) throws IOException {
+		WatchKey watchKey = path.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+		watchKeys.add(watchKey);
+		return watchKey;
+	}
+
+	/* Reads the latest state of the named entries of a directory, NULL for the entries that no longer exist, and of the directory itself. */
+	private static Map<String, DirectoryListingEntry> readChangedEntries(Path directory, Collection<String> fileNames) throws IOException {
+		Map<String, DirectoryListingEntry> changedEntries = new LinkedHashMap<String, DirectoryListingEntry>();
+		for (String fileName : fileNames) {
+			changedEntries.put(fileName, DirectoryListingEntry.read(directory.resolve(fileName)));
+		}
+		BasicFileAttributes directoryAttributes = Files.readAttributes(directory, BasicFileAttributes.class);
+		changedEntries.put(CURRENT_DIRECTORY_NAME, new DirectoryListingEntry(CURRENT_DIRECTORY_NAME, directoryAttributes));
+		return changedEntries;
+	}
+
+	/* Applies the changes to the entries of a watched directory to its cached result. */
+	private void applyEvents(String fileStr, WatchKey watchKey, List<WatchEvent<?>> watchEvents) {
+		boolean pending = recordPendingEvents(fileStr, watchKey, watchEvents);
+		CacheEntry cacheEntry = cacheMap.get(fileStr);
+		if (cacheEntry == null || cacheEntry.watchKey != watchKey) {
+			if (!pending) {
+				cancelWatchKey(watchKey);
+			}
+			return;
+		}
+
+		metrics.recordWatchEvents(watchEvents.size());
+
+		/* The latest state of every entry named in an event is read once, regardless of the kind and number of events. */
+		Set<String> changedFileNames = new LinkedHashSet<String>();
+		for (WatchEvent<?> watchEvent : watchEvents) {
+			if (watchEvent.kind() == StandardWatchEventKinds.OVERFLOW) {
+				/* Events were lost, so only a full listing of the directory can be trusted. */
+				Debug.debugln("Events lost for " + fileStr + ".");
+				invalidate(fileStr, watchKey);
+				return;
+			}
+			changedFileNames.add(((Path) watchEvent.context()).toString());
+		}
+		Map<String, DirectoryListingEntry> changedEntries;
+		try {
+			changedEntries = readChangedEntries((Path) watchKey.watchable(), changedFileNames);
+		} catch (IOException ioe) {
+			Debug.debugStackTrace(ioe);
+			invalidate(fileStr, watchKey);
+			return;
+		}
+
+		evictionLock.lock();
+		try {
+			/*
+			 * A result that replaced the cached one while the entries were read is patched as well, since the entries were read after the changes.
+			 * Any change since they were read is reported by a later event.
+			 */
+			CacheEntry currentEntry = cacheMap.get(fileStr);
+			if (currentEntry == null) {
+				return;
+			}
+			Debug.debugln("Updating " + changedEntries.size() + " entries of " + fileStr + " in cache.");
+			DirectoryListingResult patchedResult = currentEntry.directoryListingResult.patch(changedEntries);
+			long weight = patchedResult.getEstimatedSize();
+			CacheEntry patchedEntry = new CacheEntry(fileStr, patchedResult, currentEntry.watchKey, weight);
+			cacheMap.put(fileStr, patchedEntry);
+			accessOrder.put(fileStr, patchedEntry);
+			totalWeight = totalWeight - currentEntry.weight + weight;
+			notifyInvalidationListeners(fileStr);
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	/* Records the changes to a directory that is being read, to apply them when its result is added. Returns true if the directory is being read. */
+	private boolean recordPendingEvents(String fileStr, WatchKey watchKey, List<WatchEvent<?>> watchEvents) {
+		evictionLock.lock();
+		try {
+			PendingWatch pendingWatch = pendingWatches.get(fileStr);
+			if (pendingWatch == null || pendingWatch.watchKey != watchKey) {
+				return false;
+			}
+			for (WatchEvent<?> watchEvent : watchEvents) {
+				if (watchEvent.kind() == StandardWatchEventKinds.OVERFLOW) {
+					pendingWatch.eventsLost = true;
+				} else {
+					pendingWatch.changedFileNames.add(((Path) watchEvent.context()).toString());
+				}
+			}
+			return true;
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	/* Removes a cached path and stops watching it. */
+	private void invalidate(String fileStr, WatchKey watchKey) {
+		evictionLock.lock();
+		try {
+			PendingWatch pendingWatch = pendingWatches.get(fileStr);
+			if (pendingWatch != null && pendingWatch.watchKey == watchKey) {
+				/* The key is no longer valid, so the changes to the directory that is being read are not reported. */
+				pendingWatch.eventsLost = true;
+			}
+			CacheEntry cacheEntry = cacheMap.get(fileStr);
+			if (cacheEntry != null) {
+				Debug.debugln("Removing " + fileStr + " from cache.");
+				removeEntry(cacheEntry);
+			} else {
+				cancelWatchKey(watchKey);
+			}
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	/* Removes an entry from the cache and cancels its watch key, the caller must hold evictionLock. */
+	private void removeEntry(CacheEntry cacheEntry) {
+		cacheMap.remove(cacheEntry.fullPath);
+		accessOrder.remove(cacheEntry.fullPath);
+		totalWeight -= cacheEntry.weight;
+		Debug.debugln("Canceling " + cacheEntry.fullPath + " from watch service.");
+		cancelWatchKey(cacheEntry.watchKey);
+		notifyInvalidationListeners(cacheEntry.fullPath);
+	}
+
+	/* Stops watching the directory of a watch key. */
+	private void cancelWatchKey(WatchKey watchKey) {
+		watchKey.cancel();
+		watchKeys.remove(watchKey);
+	}
+
+	/* Notifies the listeners that the cached result of a path changed, the caller must hold evictionLock. */
+	private void notifyInvalidationListeners(String fileStr) {
+		for (DirectoryListingInvalidationListener invalidationListener : invalidationListeners) {
+			invalidationListener.directoryInvalidated(fileStr);
+		}
+	}
+
+	/**
+	 * A cached directory listing result with its watch key and estimated size.
+	 */
+	private static class CacheEntry {
+
+		private final String fullPath;
+		private final DirectoryListingResult directoryListingResult;
+		private final WatchKey watchKey;
+		private final long weight;
+
+		private CacheEntry(String fullPath, DirectoryListingResult directoryListingResult, WatchKey watchKey, long weight) {
+			this.fullPath = fullPath;
+			this.directoryListingResult = directoryListingResult;
+			this.watchKey = watchKey;
+			this.weight = weight;
+		}
+
+	}
+
+	/**
+	 * A directory that is being read, with its watch key and the names of the entries that changed since it was watched.
+	 * The fields are guarded by evictionLock.
+	 */
+	private static class PendingWatch {
+
+		private final WatchKey watchKey;
+		private int reads;
+		private final Set<String> changedFileNames;
+		/* Whether changes may have gone unreported, because events overflowed or the key became invalid. */
+		private boolean eventsLost;
+
+		private PendingWatch(WatchKey watchKey) {
+			this.watchKey = watchKey;
+			this.changedFileNames = new LinkedHashSet<String>();
+		}
+
+	}
+
 	/**
 	 * A thread to handle events of the watch service.
 	 */
@@ -82,27 +531,26 @@ public class DirectoryListingResultCache {
 		public void run() {
 			try {
 				boolean watchDirectory = true;
-				/* If an event occurs in a watched directory, remove it from the cache, as the cached entry has become invalid. */
+				/* If events occur in a watched directory, update the changed entries of its cached result. */
 				while (watchDirectory) {
 					WatchKey watchKey = watchService.take();
-					for (WatchEvent<?> watchEvent : watchKey.pollEvents()) {
- 
-						Path directory = (Path) watchKey.watchable();
-						String directoryStr = directory.toString();
-						if (cacheMap.containsKey(directoryStr)) {
-							Debug.debugln("Removing " + directoryStr + " from cache.");
-							cacheMap.remove(directoryStr);
-							Debug.debugln("Canceling " + directory + " from watch service.");
-							watchKey.cancel();
-						}
-					}	
+					Path directory = (Path) watchKey.watchable();
+					String directoryStr = directory.toString();
+					List<WatchEvent<?>> watchEvents = watchKey.pollEvents();
+					if (!watchEvents.isEmpty()) {
+						applyEvents(directoryStr, watchKey, watchEvents);
+					}
+					/* A key that can not be reset is no longer valid, for example because the directory was deleted. */
+					if (!watchKey.reset()) {
+						invalidate(directoryStr, watchKey);
+					}
 				}
 			} catch (InterruptedException ie) {
-				
+
 			}
 		}
 
-	
+
 	}
 
 }
@@ -0,0 +1,258 @@
+package spring.directorylisting;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import debugging.Debug;
+
+/**
+ * A snapshot of cached directory listings, stored in a compact binary file that is memory-mapped when it is loaded.
+ * Loading only reads the index of the snapshot, and a listing is decoded when it is first taken from the snapshot.
+ * The file consists of a header, a record with the entries of every listing, an index of the record of every listing
+ * and a trailer with the position and size of the index.
+ * Unix file keys are stored as their inode, preceded by their device when it differs from the device of the previous entry of the record.
+ * @author N. H. Weideman
+ */
+class DirectoryListingSnapshot {
+
+	private static final int MAGIC = 0x444C5331;
+	private static final int FORMAT_VERSION = 2;
+	private static final int HEADER_SIZE = 8;
+	private static final int TRAILER_SIZE = 12;
+
+	/* The kinds of file keys of the entries. */
+	private static final byte NO_FILE_KEY = 0;
+	private static final byte STRING_FILE_KEY = 1;
+	private static final byte UNIX_FILE_KEY = 2;
+	private static final byte UNIX_FILE_KEY_SAME_DEVICE = 3;
+
+	private final MappedByteBuffer buffer;
+
+	/* The position of the record of every listing that has not been taken yet. */
+	private final ConcurrentHashMap<String, Integer> recordPositions;
+
+	private DirectoryListingSnapshot(MappedByteBuffer buffer, ConcurrentHashMap<String, Integer> recordPositions) {
+		this.buffer = buffer;
+		this.recordPositions = recordPositions;
+	}
+
+	/**
+	 * Loads the index of a snapshot.
+	 * @param snapshotPath The path of the snapshot file
+	 * @return The snapshot, or NULL if there is no snapshot file
+	 * @throws IOException If the snapshot could not be read or is not a valid snapshot
+	 */
+	static DirectoryListingSnapshot load(Path snapshotPath) throws IOException {
+		if (!Files.isRegularFile(snapshotPath)) {
+			return null;
+		}
+		MappedByteBuffer buffer;
+		FileChannel fileChannel = FileChannel.open(snapshotPath, StandardOpenOption.READ);
+		try {
+			long fileSize = fileChannel.size();
+			if (fileSize < HEADER_SIZE + TRAILER_SIZE || fileSize > Integer.MAX_VALUE) {
+				throw new IOException("Invalid snapshot size " + fileSize);
+			}
+			/* The mapping stays valid after the channel is closed. */
+			buffer = fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+		} finally {
+			fileChannel.close();
+		}
+		if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+			throw new IOException("Invalid snapshot header");
+		}
+		int trailerPosition = buffer.capacity() - TRAILER_SIZE;
+		long indexPosition = buffer.getLong(trailerPosition);
+		int numDirectories = buffer.getInt(trailerPosition + 8);
+		if (indexPosition < HEADER_SIZE || indexPosition > trailerPosition || numDirectories < 0) {
+			throw new IOException("Invalid snapshot trailer");
+		}
+
+		ConcurrentHashMap<String, Integer> recordPositions = new ConcurrentHashMap<String, Integer>(numDirectories * 2);
+		ByteBuffer indexBuffer = buffer.duplicate();
+		indexBuffer.position((int) indexPosition);
+		try {
+			for (int i = 0; i < numDirectories; i++) {
+				String fullPath = readString(indexBuffer);
+				int recordPosition = indexBuffer.getInt();
+				recordPositions.put(fullPath, recordPosition);
+			}
+		} catch (RuntimeException re) {
+			/* Thrown for reads past the end of the buffer and invalid lengths. */
+			throw new IOException("Invalid snapshot index", re);
+		}
+		Debug.debugln("Loaded snapshot index of " + numDirectories + " directories from " + snapshotPath);
+		return new DirectoryListingSnapshot(buffer, recordPositions);
+	}
+
+	/**
+	 * Takes the listing of a directory from the snapshot, so it is decoded at most once.
+	 * The listing is returned as it was when the snapshot was written, it is up to the caller to check that it is still valid.
+	 * @param fullPath The canonical path of the directory
+	 * @return The directory listing, or NULL if the directory is not in the snapshot
+	 * @throws IOException If the record of the listing is not valid
+	 */
+	DirectoryListingResult take(String fullPath) throws IOException {
+		Integer recordPosition = recordPositions.remove(fullPath);
+		if (recordPosition == null) {
+			return null;
+		}
+		ByteBuffer recordBuffer = buffer.duplicate();
+		try {
+			recordBuffer.position(recordPosition);
+			int numEntries = recordBuffer.getInt();
+			/* The entries are decoded straight into columns. */
+			DirectoryListingColumns.Builder columnsBuilder = new DirectoryListingColumns.Builder(numEntries);
+			long device = 0;
+			for (int i = 0; i < numEntries; i++) {
+				String fileName = readString(recordBuffer);
+				int flags = recordBuffer.get();
+				long size = recordBuffer.getLong();
+				long creationTime = recordBuffer.getLong();
+				long lastModifiedTime = recordBuffer.getLong();
+				long lastAccessTime = recordBuffer.getLong();
+				byte fileKeyKind = recordBuffer.get();
+				switch (fileKeyKind) {
+				case NO_FILE_KEY:
+					columnsBuilder.add(fileName, flags, size, creationTime, lastModifiedTime, lastAccessTime, null);
+					break;
+				case STRING_FILE_KEY:
+					columnsBuilder.add(fileName, flags, size, creationTime, lastModifiedTime, lastAccessTime, readString(recordBuffer));
+					break;
+				case UNIX_FILE_KEY:
+					device = recordBuffer.getLong();
+					columnsBuilder.add(fileName, flags, size, creationTime, lastModifiedTime, lastAccessTime, device, recordBuffer.getLong());
+					break;
+				case UNIX_FILE_KEY_SAME_DEVICE:
+					/* The entry is on the device of the last entry that stored one. */
+					columnsBuilder.add(fileName, flags, size, creationTime, lastModifiedTime, lastAccessTime, device, recordBuffer.getLong());
+					break;
+				default:
+					throw new IOException("Invalid file key kind " + fileKeyKind + " in snapshot record of " + fullPath);
+				}
+			}
+			return new DirectoryListingResult(fullPath, columnsBuilder.build());
+		} catch (RuntimeException re) {
+			throw new IOException("Invalid snapshot record of " + fullPath, re);
+		}
+	}
+
+	/**
+	 * Returns the number of listings in the snapshot that have not been taken yet.
+	 * @return The number of remaining listings
+	 */
+	int size() {
+		return recordPositions.size();
+	}
+
+	/**
+	 * Writes a snapshot of directory listings.
+	 * The snapshot is written to a temporary file that then replaces the snapshot file, so a snapshot is never left half written.
+	 * @param snapshotPath The path of the snapshot file
+	 * @param directoryListingResults The listings to write
+	 * @throws IOException If an I/O error occurs or the snapshot would be too large to map
+	 */
+	static void write(Path snapshotPath, Collection<DirectoryListingResult> directoryListingResults) throws IOException {
+		Path temporaryPath = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+		OutputStream outputStream = Files.newOutputStream(temporaryPath);
+		try {
+			DataOutputStream dataOutputStream = new DataOutputStream(new BufferedOutputStream(outputStream));
+			dataOutputStream.writeInt(MAGIC);
+			dataOutputStream.writeInt(FORMAT_VERSION);
+
+			/* DataOutputStream counts the bytes written up to Integer.MAX_VALUE, which is also the largest file that can be mapped. */
+			List<String> fullPaths = new ArrayList<String>(directoryListingResults.size());
+			List<Integer> recordPositions = new ArrayList<Integer>(directoryListingResults.size());
+			for (DirectoryListingResult directoryListingResult : directoryListingResults) {
+				fullPaths.add(directoryListingResult.getFullPath());
+				recordPositions.add(dataOutputStream.size());
+				writeRecord(dataOutputStream, directoryListingResult);
+				if (dataOutputStream.size() == Integer.MAX_VALUE) {
+					throw new IOException("Snapshot too large");
+				}
+			}
+
+			int indexPosition = dataOutputStream.size();
+			for (int i = 0; i < fullPaths.size(); i++) {
+				writeString(dataOutputStream, fullPaths.get(i));
+				dataOutputStream.writeInt(recordPositions.get(i));
+			}
+			dataOutputStream.writeLong(indexPosition);
+			dataOutputStream.writeInt(fullPaths.size());
+			if (dataOutputStream.size() == Integer.MAX_VALUE) {
+				throw new IOException("Snapshot too large");
+			}
+			dataOutputStream.flush();
+		} finally {
+			outputStream.close();
+		}
+		Files.move(temporaryPath, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		Debug.debugln("Wrote snapshot of " + directoryListingResults.size() + " directories to " + snapshotPath);
+	}
+
+	/* Writes the entries of a listing. */
+	private static void writeRecord(DataOutputStream dataOutputStream, DirectoryListingResult directoryListingResult) throws IOException {
+		DirectoryListingColumns columns = directoryListingResult.getColumns();
+		dataOutputStream.writeInt(columns.size());
+		/* The device of the previous Unix file key of the record, the entries of a directory are mostly on the same device. */
+		boolean hasDevice = false;
+		long device = 0;
+		for (int i = 0; i < columns.size(); i++) {
+			writeString(dataOutputStream, columns.getFileName(i));
+			dataOutputStream.writeByte(columns.getFlags(i));
+			dataOutputStream.writeLong(columns.getSize(i));
+			dataOutputStream.writeLong(columns.getCreationTime(i));
+			dataOutputStream.writeLong(columns.getLastModifiedTime(i));
+			dataOutputStream.writeLong(columns.getLastAccessTime(i));
+			if (columns.hasUnixFileKey(i)) {
+				if (hasDevice && columns.getFileKeyDevice(i) == device) {
+					dataOutputStream.writeByte(UNIX_FILE_KEY_SAME_DEVICE);
+				} else {
+					device = columns.getFileKeyDevice(i);
+					hasDevice = true;
+					dataOutputStream.writeByte(UNIX_FILE_KEY);
+					dataOutputStream.writeLong(device);
+				}
+				dataOutputStream.writeLong(columns.getFileKeyInode(i));
+			} else {
+				String fileKey = columns.getFileKey(i);
+				if (fileKey == null) {
+					dataOutputStream.writeByte(NO_FILE_KEY);
+				} else {
+					dataOutputStream.writeByte(STRING_FILE_KEY);
+					writeString(dataOutputStream, fileKey);
+				}
+			}
+		}
+	}
+
+	/* Writes a string as its length followed by its UTF-8 bytes. */
+	private static void writeString(DataOutputStream dataOutputStream, String string) throws IOException {
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		dataOutputStream.writeInt(bytes.length);
+		dataOutputStream.write(bytes);
+	}
+
+	/* Reads a string written by writeString. */
+	private static String readString(ByteBuffer byteBuffer) {
+		int length = byteBuffer.getInt();
+		byte[] bytes = new byte[length];
+		byteBuffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+}
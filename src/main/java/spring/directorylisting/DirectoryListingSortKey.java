@@ -0,0 +1,19 @@
+package spring.directorylisting;
+
+/**
+ * The keys by which the entries of a directory listing can be sorted.
+ * Entries with equal keys are sorted by file name.
+ * @author N. H. Weideman
+ */
+public enum DirectoryListingSortKey {
+
+	/* The file name. */
+	NAME,
+	/* The size in bytes. */
+	SIZE,
+	/* The last modified time. */
+	MTIME,
+	/* Directories first, then regular files and then other files, each by file extension. */
+	TYPE
+
+}
@@ -0,0 +1,64 @@
+package spring.directorylisting;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * A read-only view of directory entries in the order given by an array of entry indices.
+ * Sub lists of the view are views as well, so pages of the view are obtained without copying.
+ * The entries are created from the columns of the listing when they are read, so only the entries of a page are created.
+ * @author N. H. Weideman
+ */
+public class DirectoryListingView extends AbstractList<DirectoryListingEntry> implements RandomAccess {
+
+	private final DirectoryListingColumns columns;
+	/* NULL for the order in which the entries are stored. */
+	private final int[] order;
+
+	/**
+	 * Creates a new view.
+	 * @param columns The directory entries to view
+	 * @param order The indices of the directory entries, in the order of the view, or NULL for the order of the columns
+	 */
+	DirectoryListingView(DirectoryListingColumns columns, int[] order) {
+		this.columns = columns;
+		this.order = order;
+	}
+
+	@Override
+	public DirectoryListingEntry get(int index) {
+		if (order == null) {
+			if (index < 0 || index >= columns.size()) {
+				throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + columns.size());
+			}
+			return columns.getEntry(index);
+		}
+		return columns.getEntry(order[index]);
+	}
+
+	@Override
+	public int size() {
+		return (order == null) ? columns.size() : order.length;
+	}
+
+	/**
+	 * Finds the position of the first entry with a file name that follows a given file name, for a view sorted by file name.
+	 * @param fileName The file name to search for
+	 * @return The position of the first entry with a greater file name, or the size of the view if there is none
+	 */
+	public int findNameOrderPosition(String fileName) {
+		int low = 0;
+		int high = size();
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			int index = (order == null) ? middle : order[middle];
+			if (columns.compareFileName(index, fileName) <= 0) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+}
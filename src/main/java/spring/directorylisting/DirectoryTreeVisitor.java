@@ -0,0 +1,29 @@
+package spring.directorylisting;
+
+import java.io.IOException;
+
+/**
+ * An interface for receiving the directories of a subtree while it is being walked.
+ * The methods are called by the thread that started the walk, in the order in which the directories were listed by the threads walking the subtree.
+ * @author N. H. Weideman
+ */
+public interface DirectoryTreeVisitor {
+
+	/**
+	 * Called for every directory listing in the subtree.
+	 * @param depth The depth of the directory below the root of the subtree, 0 for the root itself
+	 * @param directoryListingResult The listing of the directory
+	 * @throws IOException If the listing could not be processed, which stops the walk
+	 */
+	void visitDirectory(int depth, DirectoryListingResult directoryListingResult) throws IOException;
+
+	/**
+	 * Called for every directory in the subtree that could not be read.
+	 * @param depth The depth of the directory below the root of the subtree
+	 * @param fullPath The path of the directory
+	 * @param e The exception raised while reading the directory
+	 * @throws IOException If the error could not be processed, which stops the walk
+	 */
+	void visitError(int depth, String fullPath, IOException e) throws IOException;
+
+}
@@ -0,0 +1,204 @@
+package spring.directorylisting;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import debugging.Debug;
+
+/**
+ * A class for walking the subtree below a directory in parallel.
+ * Every directory is listed by its own fork-join task, which forks a task for each of its subdirectories,
+ * so the listings are obtained through the directory listing component and its cache.
+ * The tasks hand the listings to the thread that started the walk through a bounded queue, and that thread passes them to the visitor,
+ * so a visitor that is slow to write its output holds up the threads of the pool for no longer than the hand-over timeout.
+ * The walk stops descending at a maximum depth, stops listing once a maximum number of entries has been visited,
+ * and stops altogether once the queue has stayed full for the hand-over timeout.
+ * @author N. H. Weideman
+ */
+class DirectoryTreeWalker {
+
+	private final String CURRENT_DIRECTORY_NAME = ".";
+	private final String PARENT_DIRECTORY_NAME = "..";
+
+	/* The number of listings that may wait for the visitor. */
+	private static final int QUEUE_SIZE = 256;
+	/* The time in milliseconds a task waits for room in the queue before the walk is stopped. */
+	private static final long HAND_OVER_TIMEOUT = 1000;
+	/* The time in milliseconds the visiting thread waits for a listing before checking if the walk has finished. */
+	private static final long POLL_INTERVAL = 50;
+
+	private final DirectoryListingComponent directoryListingComponent;
+	private final DirectoryTreeVisitor visitor;
+	private final int maxDepth;
+	private final int maxEntries;
+
+	private final BlockingQueue<Visit> visits;
+	private final AtomicInteger numEntries;
+	/* Set once the entry limit has been reached, the visitor stopped taking listings, or the walk has ended. */
+	private volatile boolean stopped;
+	private volatile boolean truncated;
+
+	DirectoryTreeWalker(DirectoryListingComponent directoryListingComponent, DirectoryTreeVisitor visitor, int maxDepth, int maxEntries) {
+		this.directoryListingComponent = directoryListingComponent;
+		this.visitor = visitor;
+		this.maxDepth = maxDepth;
+		this.maxEntries = maxEntries;
+		this.visits = new ArrayBlockingQueue<Visit>(QUEUE_SIZE);
+		this.numEntries = new AtomicInteger();
+	}
+
+	/**
+	 * Walks the subtree below a directory, passing the listings to the visitor on the calling thread.
+	 * @param forkJoinPool The pool to walk the subtree on
+	 * @param rootListingResult The listing of the root of the subtree
+	 * @return True if the whole subtree up to the maximum depth was visited, false if the walk was stopped
+	 * @throws IOException If the visitor failed
+	 */
+	boolean walk(ForkJoinPool forkJoinPool, DirectoryListingResult rootListingResult) throws IOException {
+		ForkJoinTask<Void> walkTask = forkJoinPool.submit(new WalkTask(rootListingResult.getFullPath(), 0, rootListingResult));
+		try {
+			while (true) {
+				/* Every listing has been queued once the walk is done, so the queue only has to be emptied after that. */
+				boolean done = walkTask.isDone();
+				Visit visit = done ? visits.poll() : visits.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+				if (visit == null) {
+					if (done) {
+						break;
+					}
+					continue;
+				}
+				if (visit.directoryListingResult != null) {
+					visitor.visitDirectory(visit.depth, visit.directoryListingResult);
+				} else {
+					visitor.visitError(visit.depth, visit.fullPath, visit.exception);
+				}
+			}
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while walking tree");
+		} finally {
+			/* The tasks that are still running stop, and those waiting for room in the queue are let go. */
+			stopped = true;
+			visits.clear();
+		}
+		return !truncated;
+	}
+
+	/* Stops the walk, with the response marked as incomplete. */
+	private void stop() {
+		truncated = true;
+		stopped = true;
+	}
+
+	/**
+	 * A listing of the subtree, or a directory that could not be listed, waiting to be passed to the visitor.
+	 */
+	private static class Visit {
+
+		private final int depth;
+		private final String fullPath;
+		private final DirectoryListingResult directoryListingResult;
+		private final IOException exception;
+
+		private Visit(int depth, String fullPath, DirectoryListingResult directoryListingResult, IOException exception) {
+			this.depth = depth;
+			this.fullPath = fullPath;
+			this.directoryListingResult = directoryListingResult;
+			this.exception = exception;
+		}
+
+	}
+
+	/**
+	 * Lists a single directory and forks the listing of its subdirectories.
+	 */
+	private class WalkTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 100L;
+
+		private final String fullPath;
+		private final int depth;
+		/* The listing of the directory if it has already been obtained, NULL otherwise. */
+		private final DirectoryListingResult directoryListingResult;
+
+		private WalkTask(String fullPath, int depth, DirectoryListingResult directoryListingResult) {
+			this.fullPath = fullPath;
+			this.depth = depth;
+			this.directoryListingResult = directoryListingResult;
+		}
+
+		@Override
+		protected void compute() {
+			if (stopped) {
+				return;
+			}
+			DirectoryListingResult listingResult = directoryListingResult;
+			if (listingResult == null) {
+				try {
+					listingResult = directoryListingComponent.getListingInPool(fullPath);
+				} catch (IOException ioe) {
+					Debug.debugln("Could not list " + fullPath + " while walking tree.");
+					handOver(new Visit(depth, fullPath, null, ioe));
+					return;
+				}
+			}
+
+			/* A listing is only visited if all of its entries fit within the entry limit. */
+			if (numEntries.addAndGet(listingResult.getNumEntries()) > maxEntries) {
+				stop();
+				return;
+			}
+			if (!handOver(new Visit(depth, fullPath, listingResult, null))) {
+				return;
+			}
+
+			if (depth < maxDepth) {
+				List<WalkTask> subdirectoryTasks = new ArrayList<WalkTask>();
+				for (DirectoryListingEntry directoryEntry : listingResult.getDirectoryEntries()) {
+					String fileName = directoryEntry.getFileName();
+					if (directoryEntry.isDirectory()
+									&& !fileName.equals(CURRENT_DIRECTORY_NAME)
+									&& !fileName.equals(PARENT_DIRECTORY_NAME)) {
+						String subdirectoryPath = new File(listingResult.getFullPath(), fileName).getPath();
+						subdirectoryTasks.add(new WalkTask(subdirectoryPath, depth + 1, null));
+					}
+				}
+				invokeAll(subdirectoryTasks);
+			}
+		}
+
+		/*
+		 * Hands a visit to the visiting thread, and stops the walk if the visitor has not made room for it in time. Returns false if the walk has stopped.
+		 * The wait is not a managed block, so the pool does not start more threads to fill a queue that is not being emptied.
+		 */
+		private boolean handOver(Visit visit) {
+			if (stopped) {
+				return false;
+			}
+			boolean handedOver;
+			try {
+				handedOver = visits.offer(visit, HAND_OVER_TIMEOUT, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+				handedOver = false;
+			}
+			if (!handedOver) {
+				Debug.debugln("Stopping walk at " + fullPath + ", the listings are not being taken.");
+				stop();
+			}
+			return !stopped;
+		}
+
+	}
+
+}
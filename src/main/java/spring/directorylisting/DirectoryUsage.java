@@ -0,0 +1,45 @@
+package spring.directorylisting;
+
+/**
+ * A class to store the aggregated size of the subtree below a directory
+ * @author N. H. Weideman
+ */
+public class DirectoryUsage {
+
+	private final String fullPath;
+	public String getFullPath() {
+		return fullPath;
+	}
+
+	/* The total size, in bytes, of the files in the subtree. */
+	private final long totalSize;
+	public long getTotalSize() {
+		return totalSize;
+	}
+
+	private final long fileCount;
+	public long getFileCount() {
+		return fileCount;
+	}
+
+	/* The number of directories in the subtree, not counting the directory itself. */
+	private final long directoryCount;
+	public long getDirectoryCount() {
+		return directoryCount;
+	}
+
+	/* The number of directories in the subtree that could not be read, and are therefore not included in the totals. */
+	private final long unreadableDirectoryCount;
+	public long getUnreadableDirectoryCount() {
+		return unreadableDirectoryCount;
+	}
+
+	public DirectoryUsage(String fullPath, long totalSize, long fileCount, long directoryCount, long unreadableDirectoryCount) {
+		this.fullPath = fullPath;
+		this.totalSize = totalSize;
+		this.fileCount = fileCount;
+		this.directoryCount = directoryCount;
+		this.unreadableDirectoryCount = unreadableDirectoryCount;
+	}
+
+}
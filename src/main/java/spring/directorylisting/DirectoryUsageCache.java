@@ -0,0 +1,156 @@
+package spring.directorylisting;
+
+import java.io.File;
+import java.util.concurrent.ConcurrentHashMap;
+
+import debugging.Debug;
+
+/**
+ * A class for memoizing the usage of directories.
+ * The usage of a directory is only kept while the listing it was computed from is cached, and it is removed
+ * together with the usage of all its ancestors as soon as that listing changes or is removed.
+ * The usage of the other directories is kept, so the ancestors are recomputed from the usage of their children.
+ * Usage that is still being computed is only discarded if a directory within its own subtree changes.
+ * Only changes to cached directories are reported, so the usage of a directory is only memoized by the
+ * component if the usage of every subdirectory was memoized as well.
+ * @author N. H. Weideman
+ */
+class DirectoryUsageCache implements DirectoryListingInvalidationListener {
+
+	private final DirectoryListingResultCache listingCache;
+
+	private final ConcurrentHashMap<String, CachedUsage> usageMap;
+
+	/* The versions of the subtrees whose usage is being computed, used to discard usage computed while its subtree changed. */
+	private final ConcurrentHashMap<String, SubtreeVersion> subtreeVersions;
+
+	DirectoryUsageCache(DirectoryListingResultCache listingCache) {
+		this.listingCache = listingCache;
+		this.usageMap = new ConcurrentHashMap<String, CachedUsage>();
+		this.subtreeVersions = new ConcurrentHashMap<String, SubtreeVersion>();
+	}
+
+	/**
+	 * Obtains the memoized usage of a directory.
+	 * @param fullPath The canonical path of the directory
+	 * @return The usage if it is memoized and the listing it was computed from is still cached, NULL otherwise
+	 */
+	DirectoryUsage get(String fullPath) {
+		CachedUsage cachedUsage = usageMap.get(fullPath);
+		if (cachedUsage == null) {
+			return null;
+		}
+		if (listingCache.peek(fullPath) != cachedUsage.directoryListingResult) {
+			usageMap.remove(fullPath, cachedUsage);
+			return null;
+		}
+		return cachedUsage.directoryUsage;
+	}
+
+	/**
+	 * Registers that the usage of a directory is being computed, before its listing is obtained.
+	 * Every call must be followed by a call to finishComputation once the usage has been computed or has failed.
+	 * @param fullPath The canonical path of the directory
+	 * @return The version of the subtree of the directory, to pass to put once the usage has been computed
+	 */
+	long startComputation(String fullPath) {
+		final long[] startVersion = new long[1];
+		subtreeVersions.compute(fullPath, (path, subtreeVersion) -> {
+			if (subtreeVersion == null) {
+				subtreeVersion = new SubtreeVersion();
+			}
+			subtreeVersion.computations++;
+			startVersion[0] = subtreeVersion.version;
+			return subtreeVersion;
+		});
+		return startVersion[0];
+	}
+
+	/**
+	 * Registers that a computation of the usage of a directory has ended.
+	 * @param fullPath The canonical path of the directory
+	 */
+	void finishComputation(String fullPath) {
+		subtreeVersions.computeIfPresent(fullPath, (path, subtreeVersion) -> {
+			subtreeVersion.computations--;
+			return (subtreeVersion.computations == 0) ? null : subtreeVersion;
+		});
+	}
+
+	/**
+	 * Memoizes the usage of a directory, unless a directory in its subtree was invalidated while the usage was computed.
+	 * Usage that counts unreadable directories is memoized as well, since a directory becoming readable changes the listing of its parent.
+	 * @param directoryListingResult The listing the usage was computed from
+	 * @param directoryUsage The usage of the directory
+	 * @param startVersion The version of the subtree returned by startComputation
+	 * @return True if the usage was memoized, false if it was discarded
+	 */
+	boolean put(DirectoryListingResult directoryListingResult, DirectoryUsage directoryUsage, long startVersion) {
+		String fullPath = directoryListingResult.getFullPath();
+		CachedUsage cachedUsage = new CachedUsage(directoryListingResult, directoryUsage);
+		usageMap.put(fullPath, cachedUsage);
+
+		/* An invalidation after this check removes the usage itself, an earlier one may have been missed. */
+		SubtreeVersion subtreeVersion = subtreeVersions.get(fullPath);
+		if (subtreeVersion == null || subtreeVersion.version != startVersion || listingCache.peek(fullPath) != directoryListingResult) {
+			usageMap.remove(fullPath, cachedUsage);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Removes the usage of a directory and all its ancestors, and discards the usage of them that is being computed.
+	 * @param fullPath The canonical path of the directory
+	 */
+	@Override
+	public void directoryInvalidated(String fullPath) {
+		File directory = new File(fullPath);
+		while (directory != null) {
+			String directoryPath = directory.getPath();
+			subtreeVersions.computeIfPresent(directoryPath, (path, subtreeVersion) -> {
+				subtreeVersion.version++;
+				return subtreeVersion;
+			});
+			if (usageMap.remove(directoryPath) != null) {
+				Debug.debugln("Removing usage of " + directoryPath + " from cache.");
+			}
+			directory = directory.getParentFile();
+		}
+	}
+
+	/**
+	 * Returns the number of directories whose usage is memoized.
+	 * @return The number of memoized directories
+	 */
+	int size() {
+		return usageMap.size();
+	}
+
+	/**
+	 * The number of computations of the usage of a directory in progress, and the number of times its subtree changed during them.
+	 * The fields are only changed while the map entry is locked by compute, the version is also read by put.
+	 */
+	private static class SubtreeVersion {
+
+		private int computations;
+		private volatile long version;
+
+	}
+
+	/**
+	 * A memoized usage together with the listing it was computed from.
+	 */
+	private static class CachedUsage {
+
+		private final DirectoryListingResult directoryListingResult;
+		private final DirectoryUsage directoryUsage;
+
+		private CachedUsage(DirectoryListingResult directoryListingResult, DirectoryUsage directoryUsage) {
+			this.directoryListingResult = directoryListingResult;
+			this.directoryUsage = directoryUsage;
+		}
+
+	}
+
+}
@@ -0,0 +1,72 @@
+package spring.directorylisting;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures the rate of events as a moving average over about a minute, as well as their total number.
+ * The average is brought up to date whenever it is read or events are marked, in steps of a few seconds.
+ * @author N. H. Weideman
+ */
+public class EventRate {
+
+	private static final long TICK_INTERVAL = 5000000000L;
+	/* The weight of the latest tick, for a one minute average with five second ticks. */
+	private static final double ALPHA = 1 - Math.exp(-5.0 / 60.0);
+
+	private final LongAdder count;
+	private final LongAdder uncounted;
+	/* The rate in events per second, guarded by this. */
+	private double rate;
+	private boolean initialized;
+	private volatile long lastTick;
+
+	public EventRate() {
+		this.count = new LongAdder();
+		this.uncounted = new LongAdder();
+		this.lastTick = System.nanoTime();
+	}
+
+	/**
+	 * Records a number of events.
+	 * @param numEvents The number of events
+	 */
+	public void mark(long numEvents) {
+		tickIfNecessary();
+		count.add(numEvents);
+		uncounted.add(numEvents);
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * Returns the moving average of the rate.
+	 * @return The rate in events per second
+	 */
+	public synchronized double getRate() {
+		tickIfNecessary();
+		return rate;
+	}
+
+	/* Folds the events of every tick interval that has passed into the average. */
+	private void tickIfNecessary() {
+		long now = System.nanoTime();
+		if (now - lastTick < TICK_INTERVAL) {
+			return;
+		}
+		synchronized (this) {
+			while (now - lastTick >= TICK_INTERVAL) {
+				double tickRate = uncounted.sumThenReset() / (TICK_INTERVAL / 1e9);
+				if (initialized) {
+					rate += ALPHA * (tickRate - rate);
+				} else {
+					rate = tickRate;
+					initialized = true;
+				}
+				lastTick += TICK_INTERVAL;
+			}
+		}
+	}
+
+}
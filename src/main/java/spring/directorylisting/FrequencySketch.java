@@ -0,0 +1,91 @@
+package spring.directorylisting;
+
+/**
+ * A count-min sketch with 4-bit counters for estimating how often a key has been accessed.
+ * The counters are periodically halved so that the estimates favour recent popularity (TinyLFU aging).
+ * This class is not thread safe, callers must synchronize access.
+ * @author N. H. Weideman
+ */
+class FrequencySketch {
+
+	/* Seeds for the four hash functions of the sketch. */
+	private static final long[] SEEDS = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+
+	/* Halves every 4-bit counter packed into a long after it has been shifted right by one. */
+	private static final long RESET_MASK = 0x7777777777777777L;
+
+	private static final int MAXIMUM_COUNT = 15;
+
+	private final long[] table;
+	private final int tableMask;
+	private final int sampleSize;
+	private int additions;
+
+	/**
+	 * Creates a new sketch.
+	 * @param expectedKeys The number of keys the sketch should be able to distinguish
+	 */
+	FrequencySketch(int expectedKeys) {
+		int tableSize = Integer.highestOneBit(Math.max(expectedKeys, 16) - 1) << 1;
+		this.table = new long[tableSize];
+		this.tableMask = tableSize - 1;
+		this.sampleSize = 10 * Math.max(expectedKeys, 16);
+		this.additions = 0;
+	}
+
+	/**
+	 * Estimates the number of times a key has been recorded.
+	 * @param key The key to estimate the frequency of
+	 * @return The estimated frequency, at most 15
+	 */
+	int frequency(Object key) {
+		int hash = key.hashCode();
+		int frequency = MAXIMUM_COUNT;
+		for (long seed : SEEDS) {
+			long h = rehash(hash, seed);
+			int index = (int) (h >>> 32) & tableMask;
+			int shift = ((int) h & 15) << 2;
+			int count = (int) ((table[index] >>> shift) & 0xfL);
+			frequency = Math.min(frequency, count);
+		}
+		return frequency;
+	}
+
+	/**
+	 * Records an access to a key.
+	 * @param key The key that was accessed
+	 */
+	void increment(Object key) {
+		int hash = key.hashCode();
+		boolean incremented = false;
+		for (long seed : SEEDS) {
+			long h = rehash(hash, seed);
+			int index = (int) (h >>> 32) & tableMask;
+			int shift = ((int) h & 15) << 2;
+			long count = (table[index] >>> shift) & 0xfL;
+			if (count < MAXIMUM_COUNT) {
+				table[index] += 1L << shift;
+				incremented = true;
+			}
+		}
+		if (incremented && ++additions >= sampleSize) {
+			reset();
+		}
+	}
+
+	/* Halves all the counters, so that old accesses are gradually forgotten. */
+	private void reset() {
+		for (int i = 0; i < table.length; i++) {
+			table[i] = (table[i] >>> 1) & RESET_MASK;
+		}
+		additions = additions / 2;
+	}
+
+	/* Mixes the hash code of a key with a seed. */
+	private static long rehash(int hash, long seed) {
+		long h = (hash + seed) * seed;
+		h += h >>> 32;
+		return h;
+	}
+
+}
@@ -0,0 +1,93 @@
+package spring.directorylisting;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of non-negative values, such as durations or sizes, with buckets that double in size.
+ * Recording a value is lock free and does not allocate, so it can be used on the hot path.
+ * Percentiles are estimated by the upper bound of the bucket they fall in, so they are exact to within a factor of two.
+ * @author N. H. Weideman
+ */
+public class Histogram {
+
+	/* Bucket i holds the values v with 2^(i-1) <= v < 2^i, bucket 0 holds the value 0. */
+	private static final int NUM_BUCKETS = 64;
+
+	private final AtomicLongArray bucketCounts;
+	private final LongAdder count;
+	private final LongAdder sum;
+	private final AtomicLong max;
+
+	public Histogram() {
+		this.bucketCounts = new AtomicLongArray(NUM_BUCKETS);
+		this.count = new LongAdder();
+		this.sum = new LongAdder();
+		this.max = new AtomicLong();
+	}
+
+	/**
+	 * Records a value.
+	 * @param value The value to record, negative values are recorded as 0
+	 */
+	public void record(long value) {
+		value = Math.max(value, 0);
+		bucketCounts.incrementAndGet(NUM_BUCKETS - Long.numberOfLeadingZeros(value));
+		count.increment();
+		sum.add(value);
+		long currentMax = max.get();
+		while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+			currentMax = max.get();
+		}
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	public long getSum() {
+		return sum.sum();
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Returns the mean of the recorded values.
+	 * @return The mean, or 0 if no values have been recorded
+	 */
+	public double getMean() {
+		long count = getCount();
+		return (count == 0) ? 0 : (double) getSum() / count;
+	}
+
+	/**
+	 * Estimates a percentile of the recorded values.
+	 * @param percentile The percentile, between 0 and 100
+	 * @return The upper bound of the bucket that holds the percentile, at most the largest recorded value, or 0 if no values have been recorded
+	 */
+	public long getPercentile(double percentile) {
+		long[] counts = new long[NUM_BUCKETS];
+		long total = 0;
+		for (int i = 0; i < NUM_BUCKETS; i++) {
+			counts[i] = bucketCounts.get(i);
+			total += counts[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(percentile / 100 * total);
+		long seen = 0;
+		for (int i = 0; i < NUM_BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= Math.max(rank, 1)) {
+				long upperBound = (i == 0) ? 0 : (i >= 63 ? Long.MAX_VALUE : (1L << i) - 1);
+				return Math.min(upperBound, getMax());
+			}
+		}
+		return getMax();
+	}
+
+}
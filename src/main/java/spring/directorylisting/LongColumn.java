@@ -0,0 +1,82 @@
+package spring.directorylisting;
+
+import java.util.Arrays;
+
+/**
+ * A column of long values stored in the smallest of three forms: a single value if all the values are equal,
+ * unsigned int offsets from the smallest value if the values lie within a range of 2^32, and the full values otherwise.
+ * @author N. H. Weideman
+ */
+final class LongColumn {
+
+	private static final long ARRAY_OVERHEAD_BYTES = 16;
+	private static final long MAX_OFFSET = 0xFFFFFFFFL;
+
+	private final long base;
+	/* The offsets of the values from the base, NULL if the values are stored in full or all equal the base. */
+	private final int[] offsets;
+	/* The full values, NULL if the values are stored as offsets. */
+	private final long[] values;
+
+	private LongColumn(long base, int[] offsets, long[] values) {
+		this.base = base;
+		this.offsets = offsets;
+		this.values = values;
+	}
+
+	/**
+	 * Creates a column of values in the smallest form that holds them.
+	 * @param values The array holding the values, which is kept if the values are stored in full
+	 * @param length The number of values in the array
+	 * @return The column
+	 */
+	static LongColumn of(long[] values, int length) {
+		if (length == 0) {
+			return new LongColumn(0, null, null);
+		}
+		long min = values[0];
+		long max = values[0];
+		for (int i = 1; i < length; i++) {
+			min = Math.min(min, values[i]);
+			max = Math.max(max, values[i]);
+		}
+		if (min == max) {
+			return new LongColumn(min, null, null);
+		}
+		/* The difference is negative if it overflows. */
+		long range = max - min;
+		if (range > 0 && range <= MAX_OFFSET) {
+			int[] offsets = new int[length];
+			for (int i = 0; i < length; i++) {
+				offsets[i] = (int) (values[i] - min);
+			}
+			return new LongColumn(min, offsets, null);
+		}
+		return new LongColumn(0, null, (values.length == length) ? values : Arrays.copyOf(values, length));
+	}
+
+	long get(int index) {
+		if (values != null) {
+			return values[index];
+		}
+		if (offsets != null) {
+			return base + (offsets[index] & MAX_OFFSET);
+		}
+		return base;
+	}
+
+	/**
+	 * Estimates the number of bytes of heap used by this column.
+	 * @return The estimated size in bytes
+	 */
+	long getEstimatedSize() {
+		if (values != null) {
+			return ARRAY_OVERHEAD_BYTES + 8L * values.length;
+		}
+		if (offsets != null) {
+			return ARRAY_OVERHEAD_BYTES + 4L * offsets.length;
+		}
+		return 0;
+	}
+
+}
@@ -0,0 +1,45 @@
+package spring.directorylisting;
+
+/**
+ * A class to store the progress of pre-warming the cache
+ * @author N. H. Weideman
+ */
+public class PrewarmProgress {
+
+	/* True once every configured directory has been visited. */
+	private final boolean ready;
+	public boolean isReady() {
+		return ready;
+	}
+
+	private final long directoryCount;
+	public long getDirectoryCount() {
+		return directoryCount;
+	}
+
+	private final long entryCount;
+	public long getEntryCount() {
+		return entryCount;
+	}
+
+	/* The number of directories that could not be read. */
+	private final long errorCount;
+	public long getErrorCount() {
+		return errorCount;
+	}
+
+	/* The time in milliseconds spent pre-warming so far, or in total once ready. */
+	private final long elapsedTime;
+	public long getElapsedTime() {
+		return elapsedTime;
+	}
+
+	public PrewarmProgress(boolean ready, long directoryCount, long entryCount, long errorCount, long elapsedTime) {
+		this.ready = ready;
+		this.directoryCount = directoryCount;
+		this.entryCount = entryCount;
+		this.errorCount = errorCount;
+		this.elapsedTime = elapsedTime;
+	}
+
+}
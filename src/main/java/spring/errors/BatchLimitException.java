@@ -0,0 +1,27 @@
+package spring.errors;
+
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.http.HttpStatus;
+
+/**
+ * An error for an attempt to list a batch of directories while giving no directories or too many
+ * @author N. H. Weideman
+ */
+
+@ResponseStatus(value=HttpStatus.BAD_REQUEST, reason="Invalid batch")
+public class BatchLimitException extends Exception {
+
+	private static final long serialVersionUID = 100L;
+
+	private final String message;
+
+	public BatchLimitException(String message) {
+		this.message = message;
+	}
+
+	@Override
+	public String getMessage() {
+		return message;
+	}
+
+}
@@ -0,0 +1,27 @@
+package spring.errors;
+
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.http.HttpStatus;
+
+/**
+ * An error for an attempt to filter a directory listing with an invalid pattern
+ * @author N. H. Weideman
+ */
+
+@ResponseStatus(value=HttpStatus.BAD_REQUEST, reason="Invalid filter")
+public class FilterException extends Exception {
+
+	private static final long serialVersionUID = 100L;
+
+	private final String message;
+
+	public FilterException(String message) {
+		this.message = message;
+	}
+
+	@Override
+	public String getMessage() {
+		return message;
+	}
+
+}
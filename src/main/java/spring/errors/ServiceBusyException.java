@@ -0,0 +1,27 @@
+package spring.errors;
+
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.http.HttpStatus;
+
+/**
+ * An error for a request that could not be served in time because the service is busy
+ * @author N. H. Weideman
+ */
+
+@ResponseStatus(value=HttpStatus.SERVICE_UNAVAILABLE, reason="Service busy")
+public class ServiceBusyException extends Exception {
+
+	private static final long serialVersionUID = 100L;
+
+	private final String message;
+
+	public ServiceBusyException(String message) {
+		this.message = message;
+	}
+
+	@Override
+	public String getMessage() {
+		return message;
+	}
+
+}
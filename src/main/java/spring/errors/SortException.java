@@ -0,0 +1,27 @@
+package spring.errors;
+
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.http.HttpStatus;
+
+/**
+ * An error for an attempt to sort a directory listing by an invalid sort order
+ * @author N. H. Weideman
+ */
+
+@ResponseStatus(value=HttpStatus.BAD_REQUEST, reason="Invalid sort order")
+public class SortException extends Exception {
+
+	private static final long serialVersionUID = 100L;
+
+	private final String message;
+
+	public SortException(String message) {
+		this.message = message;
+	}
+
+	@Override
+	public String getMessage() {
+		return message;
+	}
+
+}
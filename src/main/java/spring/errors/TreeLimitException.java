@@ -0,0 +1,27 @@
+package spring.errors;
+
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.http.HttpStatus;
+
+/**
+ * An error for an attempt to walk a subtree while giving an invalid depth or entry limit
+ * @author N. H. Weideman
+ */
+
+@ResponseStatus(value=HttpStatus.BAD_REQUEST, reason="Invalid limit")
+public class TreeLimitException extends Exception {
+
+	private static final long serialVersionUID = 100L;
+
+	private final String message;
+
+	public TreeLimitException(String message) {
+		this.message = message;
+	}
+
+	@Override
+	public String getMessage() {
+		return message;
+	}
+
+}
@@ -0,0 +1,54 @@
+package spring.rest;
+
+/**
+ * A class for reading the content codings a client accepts from the "Accept-Encoding" header of its request.
+ * @author N. H. Weideman
+ */
+public class AcceptEncoding {
+
+	private AcceptEncoding() {
+	}
+
+	/**
+	 * Determines whether a client accepts gzip compressed responses.
+	 * A coding that is named explicitly takes precedence over "*", and a coding with a quality of 0 is not acceptable.
+	 * @param acceptEncoding The value of the "Accept-Encoding" header, or NULL if the request has none
+	 * @return Whether the response may be compressed with gzip
+	 */
+	public static boolean acceptsGzip(String acceptEncoding) {
+		if (acceptEncoding == null) {
+			return false;
+		}
+		double gzipQuality = -1;
+		double anyQuality = -1;
+		for (String coding : acceptEncoding.split(",")) {
+			String[] codingParts = coding.split(";");
+			String codingName = codingParts[0].trim();
+			if (codingName.equalsIgnoreCase("gzip") || codingName.equalsIgnoreCase("x-gzip")) {
+				gzipQuality = Math.max(gzipQuality, parseQuality(codingParts));
+			} else if (codingName.equals("*")) {
+				anyQuality = Math.max(anyQuality, parseQuality(codingParts));
+			}
+		}
+		if (gzipQuality >= 0) {
+			return gzipQuality > 0;
+		}
+		return anyQuality > 0;
+	}
+
+	/* Returns the quality of a coding from its parameters, 1 if it has none and 0 if it is invalid. */
+	private static double parseQuality(String[] codingParts) {
+		for (int i = 1; i < codingParts.length; i++) {
+			String parameter = codingParts[i].trim();
+			if (parameter.startsWith("q=") || parameter.startsWith("Q=")) {
+				try {
+					return Double.parseDouble(parameter.substring(2).trim());
+				} catch (NumberFormatException nfe) {
+					return 0;
+				}
+			}
+		}
+		return 1;
+	}
+
+}
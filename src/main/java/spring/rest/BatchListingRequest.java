@@ -0,0 +1,42 @@
+package spring.rest;
+
+/**
+ * A class to store the path and paging of one directory of a batch listing request, read from the JSON body of the request
+ * @author N. H. Weideman
+ */
+public class BatchListingRequest {
+
+	private String dpath = "/";
+	public String getDpath() {
+		return dpath;
+	}
+	public void setDpath(String dpath) {
+		this.dpath = dpath;
+	}
+
+	private int page = 1;
+	public int getPage() {
+		return page;
+	}
+	public void setPage(int page) {
+		this.page = page;
+	}
+
+	private int psize = 2000;
+	public int getPsize() {
+		return psize;
+	}
+	public void setPsize(int psize) {
+		this.psize = psize;
+	}
+
+	/* The position to continue a listing sorted by file name from, which replaces the page number if it is given. */
+	private String cursor;
+	public String getCursor() {
+		return cursor;
+	}
+	public void setCursor(String cursor) {
+		this.cursor = cursor;
+	}
+
+}
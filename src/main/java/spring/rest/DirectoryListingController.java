@@ -1,14 +1,26 @@
 package spring.rest;
 
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.LinkedList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Path;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.zip.GZIPOutputStream;
 import javax.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.web.bind.annotation.ModelAttribute;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.bind.annotation.ResponseStatus;
@@ -17,16 +29,34 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.HttpHeaders;
 import org.springframework.web.util.UriComponentsBuilder;
-
-import spring.datarepresentation.DirectoryListingHtmlResponse;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.context.request.async.DeferredResult;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+
+import spring.datarepresentation.DirectoryBatchJsonStream;
+import spring.datarepresentation.DirectoryListingCborStream;
+import spring.datarepresentation.DirectoryListingHtmlStream;
+import spring.datarepresentation.DirectoryListingJsonStream;
+import spring.datarepresentation.DirectoryTreeJsonStream;
 import spring.directorylisting.DirectoryListingComponent;
+import spring.directorylisting.DirectoryListingMetrics;
 import spring.directorylisting.DirectoryListingResult;
-import spring.directorylisting.DirectoryListingEntry;
+import spring.directorylisting.DirectoryUsage;
+import spring.rest.response.CountingOutputStream;
 import spring.rest.response.DirectoryListingResponse;
 import spring.rest.response.DirectoryListingResponseEntry;
+import spring.rest.response.LinkTemplate;
+import spring.rest.response.RenderedResponse;
+import spring.rest.response.RenderedResponseCache;
+import spring.errors.BatchLimitException;
 import spring.errors.NoSuchDirectoryException;
 import spring.errors.PageException;
 import spring.errors.PageSizeException;
+import spring.errors.ServiceBusyException;
+import spring.errors.FilterException;
+import spring.errors.SortException;
+import spring.errors.TreeLimitException;
 import debugging.Debug;
 
 /**
@@ -39,93 +69,519 @@ public class DirectoryListingController {
 
 	private final DirectoryListingComponent directoryListingComponent;
 
+	private final ObjectMapper objectMapper;
+
+	private final CBORFactory cborFactory;
+
+	private final RenderedResponseCache renderedResponseCache;
+
+	private final DirectoryListingMetrics metrics;
+
+	private static final String HTML_CONTENT_TYPE = "text/html;charset=UTF-8";
+	private static final String JSON_CONTENT_TYPE = "application/json;charset=UTF-8";
+	private static final String CBOR_CONTENT_TYPE = "application/cbor";
+
+	/* The request headers that select the representation of a listing, which shared caches must take into account. */
+	private static final String VARY_HEADER = HttpHeaders.ACCEPT + ", " + HttpHeaders.ACCEPT_ENCODING;
+
+	/* The time in milliseconds a request may wait for a directory to be read. */
+	private final long listingTimeout;
+
+	/* The largest depth and number of entries a subtree request may ask for. */
+	private final int maxTreeDepth;
+	private final int maxTreeEntries;
+
+	/* The size in bytes from which rendered pages are compressed for clients that accept gzip. */
+	private final int compressionMinBytes;
+
+	/* The largest number of directories a batch request may list, and the number of them that may be read at the same time. */
+	private final int maxBatchDirectories;
+	private final int maxBatchReads;
+
 	@Autowired
-	public DirectoryListingController(DirectoryListingComponent directoryListingComponent) {
+	public DirectoryListingController(DirectoryListingComponent directoryListingComponent,
+					ObjectMapper objectMapper,
+					RenderedResponseCache renderedResponseCache,
+					DirectoryListingMetrics metrics,
+					@Value("${directorylisting.io.timeout-ms:30000}") long listingTimeout,
+					@Value("${directorylisting.tree.max-depth:32}") int maxTreeDepth,
+					@Value("${directorylisting.tree.max-entries:1000000}") int maxTreeEntries,
+					@Value("${directorylisting.compression.min-bytes:1024}") int compressionMinBytes,
+					@Value("${directorylisting.batch.max-directories:256}") int maxBatchDirectories,
+					@Value("${directorylisting.batch.max-concurrent-reads:16}") int maxBatchReads) {
 		this.directoryListingComponent = directoryListingComponent;
+		this.objectMapper = objectMapper;
+		this.cborFactory = new CBORFactory();
+		this.renderedResponseCache = renderedResponseCache;
+		this.metrics = metrics;
+		this.listingTimeout = listingTimeout;
+		this.maxTreeDepth = maxTreeDepth;
+		this.maxTreeEntries = maxTreeEntries;
+		this.compressionMinBytes = compressionMinBytes;
+		this.maxBatchDirectories = maxBatchDirectories;
+		this.maxBatchReads = Math.max(maxBatchReads, 1);
 	}	
 
 	/**
 	 * Returns an HTML response for requesting a directory.
-	 * @param dpath A URL query parameter for the path of the directory to list
-	 * @param page A URL query parameter for the page number of the resource list to return
-	 * @param psize A URL query parameter for the number of resources to show on the page
-	 * @throws NoSuchDirectoryException If a non-existing directory is selected to be displayed
-	 * @throws PageException If a non-existing page is selected to be displayed
-	 * @throws PageSizeException If an invalid number of resources is selected to be displayed per page
+	 * Directories that are not cached are read on the I/O threads, so the request thread is not blocked while they are read.
+	 * The result fails with a NoSuchDirectoryException if a non-existing directory is selected to be displayed,
+	 * a PageException if a non-existing page is selected to be displayed, a PageSizeException if an invalid number of resources
+	 * is selected to be displayed per page and a ServiceBusyException if the directory could not be read in time.
+	 * @param listingQuery The URL query parameters selecting the directory, the page and the entries to list
 	 * @return An HTML representation of the directory list
+	 * @throws FilterException If the glob pattern or the regular expression is invalid
+	 * @throws SortException If the sort order is invalid
 	 */
 	@RequestMapping(value="/list", method=RequestMethod.GET, headers="Accept=text/HTML", produces="text/HTML")
-	public ResponseEntity<String> listHtml(HttpServletRequest request,
-					@RequestParam(value="dpath", defaultValue="/") String dpath, 
-					@RequestParam(value="page", defaultValue="1") int page, 
-					@RequestParam(value="psize", defaultValue="2000") int psize) throws NoSuchDirectoryException, PageException, PageSizeException {
-		String url = getFullUrl(request);
-		try {
-			DirectoryListingResponse directoryListingResponse = createResponse(url, dpath, page, psize);
-			
-			DirectoryListingHtmlResponse directoryListingHtmlResponse = new DirectoryListingHtmlResponse(directoryListingResponse);
-			String htmlBodyString = directoryListingHtmlResponse.toString();
-			ResponseEntity<String> responseEntity = createLinkHeader(htmlBodyString, url, directoryListingResponse);
-						
-			return responseEntity;
-		} catch (IOException ioe) {
-			Debug.debugStackTrace(ioe);
-			throw new NoSuchDirectoryException("Directory at " + dpath + " not found");
-		}
+	public DeferredResult<ResponseEntity<byte[]>> listHtml(HttpServletRequest request,
+					@ModelAttribute ListingQuery listingQuery) throws FilterException, SortException {
+		return renderCachedListing(request, listingQuery, HTML_CONTENT_TYPE, metrics::recordHtmlRender, listingPage -> {
+			/* The page is rendered straight into the body that is cached, without building a string first. */
+			DirectoryListingHtmlStream directoryListingHtmlStream = new DirectoryListingHtmlStream(listingPage);
+			ByteArrayOutputStream htmlBody = new ByteArrayOutputStream(directoryListingHtmlStream.getEstimatedSize());
+			directoryListingHtmlStream.writeTo(htmlBody);
+			return htmlBody.toByteArray();
+		});
+	}
+
+	/**
+	 * Returns an HTML response for requesting a directory, which is written to the client while it is generated.
+	 * Directories that are not cached are read on the I/O threads, and the result fails as for HTML responses.
+	 * @param listingQuery The URL query parameters selecting the directory, the page and the entries to list
+	 * @return A stream of the HTML representation of the directory list
+	 * @throws FilterException If the glob pattern or the regular expression is invalid
+	 * @throws SortException If the sort order is invalid
+	 */
+	@RequestMapping(value="/list", method=RequestMethod.GET, headers="Accept=text/HTML", produces="text/HTML", params="stream=true")
+	public DeferredResult<ResponseEntity<StreamingResponseBody>> listHtmlStream(HttpServletRequest request,
+					@ModelAttribute ListingQuery listingQuery) throws FilterException, SortException {
+		return streamListing(request, listingQuery, HTML_CONTENT_TYPE, DirectoryListingHtmlStream::new);
 	}
 
 	/**
 	 * Returns an JSON response for requesting a directory.
-	 * @param dpath A URL query parameter for the path of the directory to list
-	 * @param page A URL query parameter for the page number of the resource list to return
-	 * @param psize A URL query parameter for the number of resources to show on the page
-	 * @throws NoSuchDirectoryException If a non-existing directory is selected to be displayed
-	 * @throws PageException If a non-existing page is selected to be displayed
-	 * @throws PageSizeException If an invalid number of resources is selected to be displayed per page
+	 * Directories that are not cached are read on the I/O threads, and the result fails as for HTML responses.
+	 * @param listingQuery The URL query parameters selecting the directory, the page and the entries to list
 	 * @return An JSON representation of the directory list
+	 * @throws FilterException If the glob pattern or the regular expression is invalid
+	 * @throws SortException If the sort order is invalid
 	 */
 	@RequestMapping(value="/list", method=RequestMethod.GET, headers="Accept=application/json", produces="application/json")
-	public ResponseEntity<DirectoryListingResponse> listJson(HttpServletRequest request,
-					@RequestParam(value="dpath", defaultValue="/") String dpath,
-					@RequestParam(value="page", defaultValue="1") int page,
-					@RequestParam(value="psize", defaultValue="2000") int psize) throws NoSuchDirectoryException, PageException, PageSizeException {
-		String url = getFullUrl(request);	
-		try {
-			DirectoryListingResponse directoryListingResponse = createResponse(url, dpath, page, psize);
-			ResponseEntity<DirectoryListingResponse> responseEntity = new ResponseEntity<DirectoryListingResponse>(directoryListingResponse, HttpStatus.OK);
-			return responseEntity;
-		} catch (IOException ioe) {
-			Debug.debugStackTrace(ioe);
-			throw new NoSuchDirectoryException("Directory at " + dpath + " not found");
+	public DeferredResult<ResponseEntity<byte[]>> listJson(HttpServletRequest request,
+					@ModelAttribute ListingQuery listingQuery) throws FilterException, SortException {
+		return renderCachedListing(request, listingQuery, JSON_CONTENT_TYPE, metrics::recordJsonRender,
+						listingPage -> objectMapper.writeValueAsBytes(createResponse(listingPage)));
+	}
+
+	/**
+	 * Returns a CBOR response for requesting a directory, a compact binary form of the JSON response for clients that fetch many listings.
+	 * The names of the fields of an entry are sent once, each entry is an array of its values, and times are nanoseconds since the epoch.
+	 * Directories that are not cached are read on the I/O threads, and the result fails as for HTML responses.
+	 * @param listingQuery The URL query parameters selecting the directory, the page and the entries to list
+	 * @return A CBOR representation of the directory list
+	 * @throws FilterException If the glob pattern or the regular expression is invalid
+	 * @throws SortException If the sort order is invalid
+	 */
+	@RequestMapping(value="/list", method=RequestMethod.GET, headers="Accept=application/cbor", produces="application/cbor")
+	public DeferredResult<ResponseEntity<byte[]>> listCbor(HttpServletRequest request,
+					@ModelAttribute ListingQuery listingQuery) throws FilterException, SortException {
+		return renderCachedListing(request, listingQuery, CBOR_CONTENT_TYPE, metrics::recordCborRender, listingPage -> {
+			DirectoryListingCborStream directoryListingCborStream = new DirectoryListingCborStream(cborFactory, listingPage);
+			ByteArrayOutputStream cborBody = new ByteArrayOutputStream(directoryListingCborStream.getEstimatedSize());
+			directoryListingCborStream.writeTo(cborBody);
+			return cborBody.toByteArray();
+		});
+	}
+
+	/**
+	 * Returns a JSON response for requesting a directory, which is written to the client while it is generated.
+	 * Directories that are not cached are read on the I/O threads, and the result fails as for HTML responses.
+	 * @param listingQuery The URL query parameters selecting the directory, the page and the entries to list
+	 * @return A stream of the JSON representation of the directory list
+	 * @throws FilterException If the glob pattern or the regular expression is invalid
+	 * @throws SortException If the sort order is invalid
+	 */
+	@RequestMapping(value="/list", method=RequestMethod.GET, headers="Accept=application/json", produces="application/json", params="stream=true")
+	public DeferredResult<ResponseEntity<StreamingResponseBody>> listJsonStream(HttpServletRequest request,
+					@ModelAttribute ListingQuery listingQuery) throws FilterException, SortException {
+		return streamListing(request, listingQuery, null, listingPage -> new DirectoryListingJsonStream(objectMapper.getFactory(), listingPage));
+	}
+
+	/**
+	 * Returns a JSON response listing every directory of the subtree below a directory, which is written to the client while the subtree is walked.
+	 * The directories are listed in parallel and appear in the order in which they were listed.
+	 * The result fails with a NoSuchDirectoryException if the root directory does not exist, subdirectories that cannot be listed are reported in the response.
+	 * @param dpath A URL query parameter for the path of the root directory of the subtree
+	 * @param depth A URL query parameter for the depth below the root up to which subdirectories are listed, 0 lists only the root
+	 * @param maxEntries A URL query parameter for the maximum total number of entries to return, the response is marked as truncated if it is reached
+	 * @return A stream of the JSON representation of the subtree
+	 * @throws TreeLimitException If the depth or the number of entries is out of range
+	 */
+	@RequestMapping(value="/tree", method=RequestMethod.GET, headers="Accept=application/json", produces="application/json")
+	public DeferredResult<ResponseEntity<StreamingResponseBody>> treeJson(HttpServletRequest request,
+					@RequestParam(value="dpath", defaultValue="/") final String dpath,
+					@RequestParam(value="depth", required=false) Integer depth,
+					@RequestParam(value="maxentries", required=false) Integer maxEntries) throws TreeLimitException {
+		final int treeDepth = (depth == null) ? maxTreeDepth : depth;
+		final int treeEntries = (maxEntries == null) ? maxTreeEntries : maxEntries;
+		if (treeDepth < 0 || treeDepth > maxTreeDepth) {
+			throw new TreeLimitException("Depth " + treeDepth + " is not allowed. (Minimum depth: 0, Maximum depth: " + maxTreeDepth + ")");
 		}
+		if (treeEntries < 1 || treeEntries > maxTreeEntries) {
+			throw new TreeLimitException("Entry limit " + treeEntries + " is not allowed. (Minimum: 1, Maximum: " + maxTreeEntries + ")");
+		}
+
+		final String url = getFullUrl(request);
+		/* The entries link to their directory listings, like the entries of a directory listing response. */
+		UriComponentsBuilder ucb = UriComponentsBuilder.fromHttpUrl(url);
+		ucb.replacePath(request.getContextPath() + "/list");
+		ucb.replaceQueryParam("depth");
+		ucb.replaceQueryParam("maxentries");
+		final String listUrl = ucb.build().toUriString();
+
+		return renderListing(dpath, new ListingRenderer<StreamingResponseBody>() {
+			@Override
+			public ResponseEntity<StreamingResponseBody> render(DirectoryListingResult directoryListingResult) {
+				DirectoryTreeJsonStream directoryTreeJsonStream = new DirectoryTreeJsonStream(objectMapper.getFactory(),
+								directoryListingComponent,
+								url,
+								listUrl,
+								directoryListingResult,
+								treeDepth,
+								treeEntries);
+				return new ResponseEntity<StreamingResponseBody>(meterStreamingBody(directoryTreeJsonStream), HttpStatus.OK);
+			}
+		});
 	}
 
-	/* Creates a response entity with the link headers for the first, previous (if applicable), next (if applicable) and last page added  */
-	private <T> ResponseEntity<T> createLinkHeader(T body, String url, DirectoryListingResponse directoryListingResponse) {
-		String relationLinks = createRelationLinks(directoryListingResponse);
+	/**
+	 * Returns a JSON response with the listings of a batch of directories, which is written to the client as the directories are listed.
+	 * The body of the request is a JSON array with the path of each directory and the page of it to return, for example
+	 * [{"dpath":"/tmp","psize":100},{"dpath":"/var","page":2},{"dpath":"/home","cursor":""}].
+	 * The directories are read in parallel on the I/O threads and appear in the order in which they were listed, each with the index of its path in the request.
+	 * At most a limited number of the directories of a batch are read at the same time, however many directories it lists.
+	 * Directories that cannot be listed or pages that do not exist are reported for that directory, without failing the rest of the batch.
+	 * @param batchListingRequests The paths of the directories and the pages to return
+	 * @return A stream of the JSON representation of the listings
+	 * @throws BatchLimitException If no directories or too many directories are given
+	 */
+	@RequestMapping(value="/batch", method=RequestMethod.POST, headers="Accept=application/json", consumes="application/json", produces="application/json")
+	public ResponseEntity<StreamingResponseBody> batchJson(HttpServletRequest request,
+					@RequestBody List<BatchListingRequest> batchListingRequests) throws BatchLimitException {
+		int numDirectories = batchListingRequests.size();
+		if (numDirectories < 1 || numDirectories > maxBatchDirectories) {
+			throw new BatchLimitException("A batch of " + numDirectories + " directories is not allowed. (Minimum: 1, Maximum: " + maxBatchDirectories + ")");
+		}
+
+		String url = getFullUrl(request);
+		/* The entries and pages link to directory listings, like the entries and pages of a directory listing response. */
+		UriComponentsBuilder ucb = UriComponentsBuilder.fromHttpUrl(url);
+		ucb.replacePath(request.getContextPath() + "/list");
+		ucb.replaceQuery(null);
+		String listUrl = ucb.build().toUriString();
+
+		List<String> dpaths = new ArrayList<String>(numDirectories);
+		for (BatchListingRequest batchListingRequest : batchListingRequests) {
+			dpaths.add(batchListingRequest.getDpath());
+		}
+		final DirectoryBatchJsonStream directoryBatchJsonStream = new DirectoryBatchJsonStream(objectMapper.getFactory(),
+						url,
+						listUrl,
+						dpaths,
+						listingTimeout);
+
+		/* The directories are read a limited number at a time, so that a batch never fills the queue of the I/O threads by itself. */
+		new BatchReader(batchListingRequests, listUrl, directoryBatchJsonStream).start(maxBatchReads);
+
+		boolean acceptsGzip = AcceptEncoding.acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+		return createStreamingResponseEntity(directoryBatchJsonStream, new HttpHeaders(), acceptsGzip);
+	}
+
+	/**
+	 * Returns a JSON response with the total size and number of files and directories of the subtree below a directory.
+	 * The usage is memoized per directory and kept up to date as the directories change, so repeated requests do not walk the subtree.
+	 * The result fails with a NoSuchDirectoryException if a non-existing directory is selected
+	 * and a ServiceBusyException if the usage could not be computed in time.
+	 * @param dpath A URL query parameter for the path of the directory
+	 * @return A JSON representation of the usage of the directory
+	 */
+	@RequestMapping(value="/du", method=RequestMethod.GET, headers="Accept=application/json", produces="application/json")
+	public DeferredResult<ResponseEntity<DirectoryUsage>> usageJson(@RequestParam(value="dpath", defaultValue="/") final String dpath) {
+		final DeferredResult<ResponseEntity<DirectoryUsage>> deferredResult = createDeferredResult(null);
+		CompletableFuture<DirectoryUsage> usageFuture = directoryListingComponent.getUsageAsync(dpath);
+		usageFuture.whenComplete((directoryUsage, throwable) -> {
+			if (throwable != null) {
+				deferredResult.setErrorResult(translateListingError(dpath, throwable));
+			} else {
+				deferredResult.setResult(new ResponseEntity<DirectoryUsage>(directoryUsage, HttpStatus.OK));
+			}
+		});
+		return deferredResult;
+	}
+
+	/**
+	 * Renders the requested page of a listing into the body of a response that is cached.
+	 */
+	private interface PageRenderer {
+
+		byte[] render(ListingPage listingPage) throws IOException;
+
+	}
+
+	/*
+	 * Responds with the requested page of a listing from the rendered response cache, or renders and caches it, recording the time to render it.
+	 * The cache is only looked in once the listing has been obtained, since its key holds the canonical path of the directory.
+	 */
+	private DeferredResult<ResponseEntity<byte[]>> renderCachedListing(HttpServletRequest request, final ListingQuery listingQuery, final String contentType,
+					final LongConsumer renderTimeRecorder, final PageRenderer pageRenderer) throws FilterException, SortException {
+		final ListingFilter listingFilter = listingQuery.createFilter();
+		final ListingSort listingSort = listingQuery.parseSort();
+		final String url = getFullUrl(request);
+		final boolean acceptsGzip = AcceptEncoding.acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+		return renderListing(listingQuery.getDpath(), directoryListingResult -> {
+			String cacheKey = RenderedResponseCache.createKey(contentType, url, directoryListingResult.getFullPath(), listingQuery, listingSort);
+			RenderedResponse cachedRenderedResponse = renderedResponseCache.get(cacheKey);
+			if (cachedRenderedResponse != null) {
+				return createRenderedResponseEntity(cacheKey, cachedRenderedResponse, acceptsGzip);
+			}
+
+			long renderStart = System.nanoTime();
+			ListingPage listingPage = selectPage(url, directoryListingResult, listingQuery, listingFilter, listingSort);
+			RenderedResponse renderedResponse = new RenderedResponse(directoryListingResult.getFullPath(),
+							contentType,
+							createRelationLinks(listingPage),
+							pageRenderer.render(listingPage));
+			renderTimeRecorder.accept(System.nanoTime() - renderStart);
+			renderedResponseCache.put(cacheKey, directoryListingResult, renderedResponse);
+
+			return createRenderedResponseEntity(cacheKey, renderedResponse, acceptsGzip);
+		});
+	}
+
+	/* Responds with the requested page of a listing, written to the client by the stream created for the page, with the given content type unless it is NULL */
+	private DeferredResult<ResponseEntity<StreamingResponseBody>> streamListing(HttpServletRequest request, final ListingQuery listingQuery, final String contentType,
+					final Function<ListingPage, StreamingResponseBody> streamCreator) throws FilterException, SortException {
+		final ListingFilter listingFilter = listingQuery.createFilter();
+		final ListingSort listingSort = listingQuery.parseSort();
+		final String url = getFullUrl(request);
+		final boolean acceptsGzip = AcceptEncoding.acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+		return renderListing(listingQuery.getDpath(), directoryListingResult -> {
+			ListingPage listingPage = selectPage(url, directoryListingResult, listingQuery, listingFilter, listingSort);
+			HttpHeaders headers = new HttpHeaders();
+			headers.add("Link", createRelationLinks(listingPage));
+			if (contentType != null) {
+				headers.add(HttpHeaders.CONTENT_TYPE, contentType);
+			}
+			return createStreamingResponseEntity(streamCreator.apply(listingPage), headers, acceptsGzip);
+		});
+	}
+
+	/**
+	 * Renders the response for the listing of a directory.
+	 */
+	private interface ListingRenderer<T> {
+
+		ResponseEntity<T> render(DirectoryListingResult directoryListingResult) throws IOException, PageException, PageSizeException;
+
+	}
+
+	/* Obtains the listing of a directory and renders it, cached listings are rendered by the request thread and others by the I/O thread that read them */
+	private <T> DeferredResult<ResponseEntity<T>> renderListing(final String dpath, final ListingRenderer<T> listingRenderer) {
+		final DeferredResult<ResponseEntity<T>> deferredResult = createDeferredResult(null);
+		CompletableFuture<DirectoryListingResult> listingFuture = directoryListingComponent.getListingAsync(dpath);
+		listingFuture.whenComplete((directoryListingResult, throwable) -> {
+			try {
+				if (throwable != null) {
+					deferredResult.setErrorResult(translateListingError(dpath, throwable));
+				} else {
+					deferredResult.setResult(listingRenderer.render(directoryListingResult));
+				}
+			} catch (IOException ioe) {
+				Debug.debugStackTrace(ioe);
+				deferredResult.setErrorResult(new NoSuchDirectoryException("Directory at " + dpath + " not found"));
+			} catch (PageException | PageSizeException | RuntimeException e) {
+				deferredResult.setErrorResult(e);
+			}
+		});
+		return deferredResult;
+	}
+
+	/* Creates a deferred result that fails if it is not set within the listing timeout, and sets it to a response entity if one is given */
+	private <T> DeferredResult<ResponseEntity<T>> createDeferredResult(ResponseEntity<T> responseEntity) {
+		final DeferredResult<ResponseEntity<T>> deferredResult = new DeferredResult<ResponseEntity<T>>(listingTimeout);
+		deferredResult.onTimeout(() -> deferredResult.setErrorResult(new ServiceBusyException("Timed out while reading the directory.")));
+		if (responseEntity != null) {
+			deferredResult.setResult(responseEntity);
+		}
+		return deferredResult;
+	}
+
+	/* Translates an error that occurred while reading a directory into the error to respond with */
+	private Exception translateListingError(String dpath, Throwable throwable) {
+		if (throwable instanceof CompletionException && throwable.getCause() != null) {
+			throwable = throwable.getCause();
+		}
+		if (throwable instanceof Exception) {
+			Debug.debugStackTrace((Exception) throwable);
+		}
+		if (throwable instanceof RejectedExecutionException) {
+			return new ServiceBusyException("Too many directories are being read, try again later.");
+		}
+		return new NoSuchDirectoryException("Directory at " + dpath + " not found");
+	}
+
+	/*
+	 * Creates a response entity from a rendered response, with the link headers for the first, previous (if applicable), next (if applicable) and last page added.
+	 * The body is compressed with gzip if the client accepts it and the body is large enough, the compressed body is kept with the rendered response.
+	 */
+	private ResponseEntity<byte[]> createRenderedResponseEntity(String cacheKey, RenderedResponse renderedResponse, boolean acceptsGzip) {
 		HttpHeaders headers = new HttpHeaders();
-		headers.add("Link", relationLinks);
-		ResponseEntity<T> responseEntity = new ResponseEntity<T>(body, headers, HttpStatus.OK);
+		headers.add("Link", renderedResponse.getLinkHeader());
+		headers.add(HttpHeaders.CONTENT_TYPE, renderedResponse.getContentType());
+		headers.add(HttpHeaders.VARY, VARY_HEADER);
+		byte[] body = renderedResponse.getBody();
+		if (acceptsGzip && body.length >= compressionMinBytes) {
+			body = renderedResponseCache.getGzipBody(cacheKey, renderedResponse);
+			headers.add(HttpHeaders.CONTENT_ENCODING, "gzip");
+		}
+		ResponseEntity<byte[]> responseEntity = new ResponseEntity<byte[]>(body, headers, HttpStatus.OK);
 			
 		return responseEntity;
 	}
 
-	/* Creates the links to the other pages for the "Link" header */
-	private String createRelationLinks(DirectoryListingResponse directoryListingResponse) {
+	/* Creates a response entity for a streamed body, which is compressed with gzip while it is written if the client accepts it */
+	private ResponseEntity<StreamingResponseBody> createStreamingResponseEntity(StreamingResponseBody uncompressedBody, HttpHeaders headers, boolean acceptsGzip) {
+		headers.add(HttpHeaders.VARY, VARY_HEADER);
+		final StreamingResponseBody body = meterStreamingBody(uncompressedBody);
+		if (!acceptsGzip) {
+			return new ResponseEntity<StreamingResponseBody>(body, headers, HttpStatus.OK);
+		}
+		headers.add(HttpHeaders.CONTENT_ENCODING, "gzip");
+		StreamingResponseBody compressedBody = outputStream -> {
+			GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream, 8192);
+			body.writeTo(gzipOutputStream);
+			gzipOutputStream.close();
+		};
+		return new ResponseEntity<StreamingResponseBody>(compressedBody, headers, HttpStatus.OK);
+	}
+
+	/**
+	 * Lists the directories of a batch a limited number at a time, every directory that has been read starts the read of the next one.
+	 * The listings of cached directories are added right away, so only directories that are read take up room in the queue of the I/O threads.
+	 */
+	private class BatchReader {
+
+		private final List<BatchListingRequest> batchListingRequests;
+		private final String listUrl;
+		private final DirectoryBatchJsonStream directoryBatchJsonStream;
+		/* The index of the next directory of the batch to list. */
+		private final AtomicInteger nextIndex;
+
+		private BatchReader(List<BatchListingRequest> batchListingRequests, String listUrl, DirectoryBatchJsonStream directoryBatchJsonStream) {
+			this.batchListingRequests = batchListingRequests;
+			this.listUrl = listUrl;
+			this.directoryBatchJsonStream = directoryBatchJsonStream;
+			this.nextIndex = new AtomicInteger();
+		}
+
+		/* Starts listing the directories, reading at most a number of them at the same time. */
+		private void start(int maxReads) {
+			for (int i = 0; i < maxReads; i++) {
+				listNext();
+			}
+		}
+
+		/* Lists the next directories of the batch up to the first one that has to be read, which lists the next ones when it has been read. */
+		private void listNext() {
+			while (true) {
+				final int index = nextIndex.getAndIncrement();
+				if (index >= batchListingRequests.size()) {
+					return;
+				}
+				final BatchListingRequest batchListingRequest = batchListingRequests.get(index);
+				final String dpath = batchListingRequest.getDpath();
+				if (dpath == null) {
+					directoryBatchJsonStream.addError(index, "No directory path given.");
+					continue;
+				}
+				final String pageUrl = createBatchPageUrl(listUrl, batchListingRequest);
+				CompletableFuture<DirectoryListingResult> listingFuture = directoryListingComponent.getListingAsync(dpath);
+				if (listingFuture.isDone()) {
+					/* Runs right away, so the loop goes on with the next directory. */
+					listingFuture.whenComplete((directoryListingResult, throwable) -> addListing(index, batchListingRequest, pageUrl, directoryListingResult, throwable));
+					continue;
+				}
+				listingFuture.whenComplete((directoryListingResult, throwable) -> {
+					addListing(index, batchListingRequest, pageUrl, directoryListingResult, throwable);
+					listNext();
+				});
+				return;
+			}
+		}
+
+		/* Adds the selected page of a directory of the batch, or the reason it could not be listed. */
+		private void addListing(int index, BatchListingRequest batchListingRequest, String pageUrl, DirectoryListingResult directoryListingResult, Throwable throwable) {
+			if (throwable != null) {
+				directoryBatchJsonStream.addError(index, translateListingError(batchListingRequest.getDpath(), throwable).getMessage());
+				return;
+			}
+			try {
+				ListingPage listingPage = ListingPageSelector.select(pageUrl,
+								batchListingRequest.getDpath(),
+								directoryListingResult,
+								null,
+								null,
+								batchListingRequest.getPage(),
+								batchListingRequest.getPsize(),
+								batchListingRequest.getCursor());
+				directoryBatchJsonStream.addListing(index, listingPage);
+			} catch (PageException | PageSizeException | RuntimeException e) {
+				Debug.debugStackTrace(e);
+				directoryBatchJsonStream.addError(index, String.valueOf(e.getMessage()));
+			}
+		}
+
+	}
+
+	/* Wraps a streamed body so that the time to write it and its size before compression are recorded once it has been written */
+	private StreamingResponseBody meterStreamingBody(final StreamingResponseBody body) {
+		return outputStream -> {
+			long renderStart = System.nanoTime();
+			CountingOutputStream countingOutputStream = new CountingOutputStream(outputStream);
+			body.writeTo(countingOutputStream);
+			metrics.recordStreamRender(System.nanoTime() - renderStart, countingOutputStream.getCount());
+		};
+	}
+
+	/* Creates the URL of the directory listing request for a directory of a batch, which the links to its other pages are based on */
+	private String createBatchPageUrl(String listUrl, BatchListingRequest batchListingRequest) {
+		UriComponentsBuilder ucb = UriComponentsBuilder.fromHttpUrl(listUrl);
+		ucb.replaceQueryParam("psize", batchListingRequest.getPsize());
+		/* Only the path of the directory needs encoding, the rest of the URL is already encoded. */
+		return LinkTemplate.forDirectories(ucb.build().toUriString()).createLink(batchListingRequest.getDpath());
+	}
+
+	/* Creates the links to the other pages of a listing page for the "Link" header */
+	private String createRelationLinks(ListingPage listingPage) {
+		return createRelationLinks(listingPage.getFirstLink(),
+						listingPage.getLastLink(),
+						listingPage.getPrevLink(),
+						listingPage.getNextLink());
+	}
+
+	/* Creates the "Link" header value from the links to the other pages */
+	private String createRelationLinks(String firstLink, String lastLink, String prevLink, String nextLink) {
 		StringBuilder sb = new StringBuilder();
 			
-		String firstLink = directoryListingResponse.getFirstLink();
 		sb.append(String.format("<%s>; rel=\"first\"", firstLink));
 
-		String lastLink = directoryListingResponse.getLastLink();
 		sb.append(String.format(", <%s>; rel=\"last\"", lastLink));
 
-		String prevLink = directoryListingResponse.getPrevLink();
 		if (!prevLink.isEmpty()) {
 			sb.append(String.format(", <%s>; rel=\"prev\"", prevLink));
 		}
 
-		String nextLink = directoryListingResponse.getNextLink();
 		if (!nextLink.isEmpty()) {
 			sb.append(String.format(", <%s>; rel=\"next\"", nextLink));
 		}
@@ -163,131 +619,114 @@ public class DirectoryListingController {
 
 
 	/**
-	 * Handles the error of trying to access a page while giving an invalid page size 
+	 * Handles the error of a request that could not be served in time
 	 * @param e The exception for the error
 	 * @return A response entity for the error
 	 */
-	@ExceptionHandler(PageSizeException.class)
-	public ResponseEntity<String> sizeError(PageSizeException e) {
+	@ExceptionHandler(ServiceBusyException.class)
+	public ResponseEntity<String> serviceBusy(ServiceBusyException e) {
 		String errorMessage = e.getMessage();
 
 		Debug.debugStackTrace(e);
 
-		return new ResponseEntity<String>(errorMessage, HttpStatus.BAD_REQUEST);
+		return new ResponseEntity<String>(errorMessage, HttpStatus.SERVICE_UNAVAILABLE);
 	}
 
-	/* Creates the directory listing response from the request parameters */
-	private DirectoryListingResponse createResponse(String url, String dpath, int page, int pageSize) throws IOException, PageException, PageSizeException {
-		DirectoryListingResult directoryListingResult = getDirectoryListing(dpath);
-		LinkedList<DirectoryListingEntry> directoryListingEntries = directoryListingResult.getDirectoryEntries();
-		LinkedList<DirectoryListingEntry> paginatedDirectoryListingEntries = paginate(directoryListingEntries, page, pageSize);
-		int totalNumEntries = directoryListingEntries.size();
-		int numPages = getNumPages(totalNumEntries, pageSize);
-		String firstLink = createFirstLink(url);
-		String lastLink = createLastLink(url, numPages);
-		String prevLink = createPrevLink(url, page);
-		String nextLink = createNextLink(url, page, numPages);
-		DirectoryListingResponse directoryListingResponse = new DirectoryListingResponse(url,
-						dpath,
-						numPages,
-						page,
-						pageSize,
-						firstLink,
-						lastLink,
-						prevLink,
-						nextLink,
-						paginatedDirectoryListingEntries);
-		return directoryListingResponse;
-
-	}
-
-	/* Creates the URL to the first page */
-	private String createFirstLink(String url) {
-		UriComponentsBuilder ucb = UriComponentsBuilder.fromHttpUrl(url);
-		
-		ucb.replaceQueryParam("page", 1);
-		String firstLink = ucb.toUriString();
-		return ucb.toUriString();
-	}
+	/**
+	 * Handles the error of trying to walk a subtree while giving an invalid depth or entry limit
+	 * @param e The exception for the error
+	 * @return A response entity for the error
+	 */
+	@ExceptionHandler(TreeLimitException.class)
+	public ResponseEntity<String> treeLimitError(TreeLimitException e) {
+		String errorMessage = e.getMessage();
 
-	/* Creates the URL to the last page */
-	private String createLastLink(String url, int numPages) {
-		UriComponentsBuilder ucb = UriComponentsBuilder.fromHttpUrl(url);
+		Debug.debugStackTrace(e);
 
-		ucb.replaceQueryParam("page", numPages);
-		String lastLink = ucb.toUriString();
-		return lastLink;
+		return new ResponseEntity<String>(errorMessage, HttpStatus.BAD_REQUEST);
 	}
 
-	/* Creates the link to the previous page (if applicable) */
-	private String createPrevLink(String url, int pageNumber) {
-		UriComponentsBuilder ucb = UriComponentsBuilder.fromHttpUrl(url);
+	/**
+	 * Handles the error of trying to list a batch while giving no directories or too many
+	 * @param e The exception for the error
+	 * @return A response entity for the error
+	 */
+	@ExceptionHandler(BatchLimitException.class)
+	public ResponseEntity<String> batchLimitError(BatchLimitException e) {
+		String errorMessage = e.getMessage();
 
-		String prevLink = "";
-		if (pageNumber > 1) {
-			ucb.replaceQueryParam("page", (pageNumber - 1));
-			prevLink = ucb.toUriString();
-		}
-		return prevLink;
+		Debug.debugStackTrace(e);
+
+		return new ResponseEntity<String>(errorMessage, HttpStatus.BAD_REQUEST);
 	}
 
-	/* Creates the link to the next page (if applicable) */
-	private String createNextLink(String url, int pageNumber, int numPages) {
-		UriComponentsBuilder ucb = UriComponentsBuilder.fromHttpUrl(url);
+	/**
+	 * Handles the error of trying to filter a directory listing with an invalid pattern
+	 * @param e The exception for the error
+	 * @return A response entity for the error
+	 */
+	@ExceptionHandler(FilterException.class)
+	public ResponseEntity<String> filterError(FilterException e) {
+		String errorMessage = e.getMessage();
 
-		String nextLink = "";
-		if (pageNumber < numPages) {
-			ucb.replaceQueryParam("page", (pageNumber + 1));
-			nextLink = ucb.toUriString();
-		}
-		return nextLink;
-	}
+		Debug.debugStackTrace(e);
 
-	/* A wrapper function for obtaining the directory listing */
-	private DirectoryListingResult getDirectoryListing(String dpath) throws IOException {
-		return directoryListingComponent.getListing(dpath);
+		return new ResponseEntity<String>(errorMessage, HttpStatus.BAD_REQUEST);
 	}
 
-	/* Paginates the directory entries according to the page number and page size */
-	private LinkedList<DirectoryListingEntry> paginate(LinkedList<DirectoryListingEntry> directoryListingEntries, int page, int pageSize) throws PageException, PageSizeException {
-		if (page < 1) {
-			throw new PageException("Page " + page + " does not exist. (Minimum page: 1)");
-		}
-		if (pageSize <= 0) {
-			throw new PageSizeException("Page sizes must have value >= 1.");
-		}
-		int numEntries = directoryListingEntries.size();
-		int numPages = getNumPages(numEntries, pageSize);
-		int startIndex = getPaginationLowerIndex(numEntries, page, pageSize);
-		int endIndex = getPaginationUpperIndex(numEntries, page, pageSize);
-		
-		if (page > numPages) {
-			throw new PageException("Page " + page + " does not exist. (Maximum page: " + numPages + ")");
-		}
-		
-		
-		return new LinkedList<DirectoryListingEntry>(directoryListingEntries.subList(startIndex, endIndex));
+	/**
+	 * Handles the error of trying to sort a directory listing by an invalid sort order
+	 * @param e The exception for the error
+	 * @return A response entity for the error
+	 */
+	@ExceptionHandler(SortException.class)
+	public ResponseEntity<String> sortError(SortException e) {
+		String errorMessage = e.getMessage();
+
+		Debug.debugStackTrace(e);
+
+		return new ResponseEntity<String>(errorMessage, HttpStatus.BAD_REQUEST);
 	}
 
-	/* Returns the index for the resource to start pagination from */
-	private int getPaginationLowerIndex(int numEntries, int page, int pageSize) {
-		int startIndex = (page - 1) * pageSize;
-		return startIndex;
+	/**
+	 * Handles the error of trying to access a page while giving an invalid page size 
+	 * @param e The exception for the error
+	 * @return A response entity for the error
+	 */
+	@ExceptionHandler(PageSizeException.class)
+	public ResponseEntity<String> sizeError(PageSizeException e) {
+		String errorMessage = e.getMessage();
+
+		Debug.debugStackTrace(e);
+
+		return new ResponseEntity<String>(errorMessage, HttpStatus.BAD_REQUEST);
 	}
 
-	/* Returns the index for the resource to stop pagination at */
-	private int getPaginationUpperIndex(int numEntries, int page, int pageSize) {
-		int endIndex = getPaginationLowerIndex(numEntries, page, pageSize) + pageSize;
-		if (endIndex > numEntries) {
-			endIndex = numEntries;
-		}
-		return endIndex;
+	/* Creates the directory listing response for a listing page */
+	private DirectoryListingResponse createResponse(ListingPage listingPage) throws IOException {
+		return new DirectoryListingResponse(listingPage.getUrl(),
+						listingPage.getDpath(),
+						listingPage.getDirectoryPath(),
+						listingPage.getNumPages(),
+						listingPage.getPageNumber(),
+						listingPage.getPageSize(),
+						listingPage.getFirstLink(),
+						listingPage.getLastLink(),
+						listingPage.getPrevLink(),
+						listingPage.getNextLink(),
+						listingPage.getDirectoryEntries());
 	}
 
-	/* Returns the total number of pages */
-	private int getNumPages(int numEntries, int pageSize) {
-		int numPages = (int) Math.ceil((double)numEntries / (double)pageSize);
-		return numPages;
+	/* Selects the page of a listing that a directory listing request asks for */
+	private ListingPage selectPage(String url, DirectoryListingResult directoryListingResult, ListingQuery listingQuery, ListingFilter listingFilter, ListingSort listingSort) throws PageException, PageSizeException {
+		return ListingPageSelector.select(url,
+						listingQuery.getDpath(),
+						directoryListingResult,
+						listingFilter,
+						listingSort,
+						listingQuery.getPage(),
+						listingQuery.getPsize(),
+						listingQuery.getCursor());
 	}
 
 	/* Constructs and returns the full URL from a request */
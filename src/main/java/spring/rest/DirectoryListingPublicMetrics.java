@@ -0,0 +1,70 @@
+package spring.rest;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import spring.directorylisting.DirectoryListingComponent;
+import spring.directorylisting.DirectoryListingMetrics;
+import spring.directorylisting.Histogram;
+
+/**
+ * Publishes the measurements of the directory listing service on the actuator metrics endpoint.
+ * Times are in microseconds.
+ * @author N. H. Weideman
+ */
+@Component
+public class DirectoryListingPublicMetrics implements PublicMetrics {
+
+	private static final String PREFIX = "directorylisting.";
+
+	private final DirectoryListingComponent directoryListingComponent;
+
+	private final DirectoryListingMetrics metrics;
+
+	@Autowired
+	public DirectoryListingPublicMetrics(DirectoryListingComponent directoryListingComponent, DirectoryListingMetrics metrics) {
+		this.directoryListingComponent = directoryListingComponent;
+		this.metrics = metrics;
+	}
+
+	@Override
+	public Collection<Metric<?>> metrics() {
+		List<Metric<?>> result = new ArrayList<Metric<?>>();
+		result.add(new Metric<Long>(PREFIX + "cache.hits", metrics.getCacheHits()));
+		result.add(new Metric<Long>(PREFIX + "cache.misses", metrics.getCacheMisses()));
+		result.add(new Metric<Long>(PREFIX + "cache.evictions", metrics.getCacheEvictions()));
+		result.add(new Metric<Long>(PREFIX + "cache.rejections", metrics.getCacheRejections()));
+		result.add(new Metric<Integer>(PREFIX + "cache.size", directoryListingComponent.getCacheSize()));
+		result.add(new Metric<Long>(PREFIX + "cache.bytes", directoryListingComponent.getCacheBytes()));
+		result.add(new Metric<Long>(PREFIX + "reads", directoryListingComponent.getDirectoryReadCount()));
+		result.add(new Metric<Long>(PREFIX + "reads.coalesced", directoryListingComponent.getCoalescedRequestCount()));
+		result.add(new Metric<Integer>(PREFIX + "watch.keys", directoryListingComponent.getWatchKeyCount()));
+		result.add(new Metric<Long>(PREFIX + "watch.events", metrics.getWatchEvents().getCount()));
+		result.add(new Metric<Double>(PREFIX + "watch.events.rate", metrics.getWatchEvents().getRate()));
+		addHistogram(result, "read.time", metrics.getReadTime());
+		addHistogram(result, "read.scan.time", metrics.getScanTime());
+		addHistogram(result, "read.stat.time", metrics.getStatTime());
+		addHistogram(result, "read.entries", metrics.getEntriesPerListing());
+		addHistogram(result, "render.html.time", metrics.getHtmlRenderTime());
+		addHistogram(result, "render.json.time", metrics.getJsonRenderTime());
+		addHistogram(result, "render.cbor.time", metrics.getCborRenderTime());
+		addHistogram(result, "render.stream.time", metrics.getStreamRenderTime());
+		addHistogram(result, "render.stream.bytes", metrics.getStreamRenderBytes());
+		return result;
+	}
+
+	/* Adds the count, mean, median, 99th percentile and maximum of a histogram. */
+	private void addHistogram(List<Metric<?>> result, String name, Histogram histogram) {
+		result.add(new Metric<Long>(PREFIX + name + ".count", histogram.getCount()));
+		result.add(new Metric<Double>(PREFIX + name + ".mean", histogram.getMean()));
+		result.add(new Metric<Long>(PREFIX + name + ".p50", histogram.getPercentile(50)));
+		result.add(new Metric<Long>(PREFIX + name + ".p99", histogram.getPercentile(99)));
+		result.add(new Metric<Long>(PREFIX + name + ".max", histogram.getMax()));
+	}
+
+}
@@ -0,0 +1,76 @@
+package spring.rest;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import spring.errors.PageException;
+
+/**
+ * An opaque pagination token that marks a position in the name order of a directory listing.
+ * The cursor stores the version of the listing it was created for, the position of the next entry
+ * and the file name of the last entry returned before that position.
+ * If the listing is unchanged the position is used directly, otherwise the listing is resumed after the file name.
+ * @author N. H. Weideman
+ */
+public class ListingCursor {
+
+	private static final char SEPARATOR = ':';
+
+	private final long version;
+	public long getVersion() {
+		return version;
+	}
+
+	private final int position;
+	public int getPosition() {
+		return position;
+	}
+
+	private final String lastFileName;
+	public String getLastFileName() {
+		return lastFileName;
+	}
+
+	public ListingCursor(long version, int position, String lastFileName) {
+		this.version = version;
+		this.position = position;
+		this.lastFileName = lastFileName;
+	}
+
+	/**
+	 * Encodes the cursor as a URL safe token.
+	 * @return The token for the cursor
+	 */
+	public String encode() {
+		String cursorStr = version + "" + SEPARATOR + position + SEPARATOR + lastFileName;
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(cursorStr.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Decodes a cursor from a token.
+	 * @param token The token created by encoding a cursor
+	 * @return The decoded cursor
+	 * @throws PageException If the token is not a valid cursor
+	 */
+	public static ListingCursor decode(String token) throws PageException {
+		try {
+			String cursorStr = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+			int versionEnd = cursorStr.indexOf(SEPARATOR);
+			int positionEnd = cursorStr.indexOf(SEPARATOR, versionEnd + 1);
+			if (versionEnd < 0 || positionEnd < 0) {
+				throw new PageException("Invalid cursor " + token + ".");
+			}
+			long version = Long.parseLong(cursorStr.substring(0, versionEnd));
+			int position = Integer.parseInt(cursorStr.substring(versionEnd + 1, positionEnd));
+			String lastFileName = cursorStr.substring(positionEnd + 1);
+			if (position < 1) {
+				throw new PageException("Invalid cursor " + token + ".");
+			}
+			return new ListingCursor(version, position, lastFileName);
+		} catch (IllegalArgumentException iae) {
+			/* Thrown for both invalid Base64 and invalid numbers. */
+			throw new PageException("Invalid cursor " + token + ".");
+		}
+	}
+
+}
@@ -0,0 +1,100 @@
+package spring.rest;
+
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import spring.directorylisting.DirectoryListingResult;
+import spring.directorylisting.DirectoryListingSortKey;
+import spring.directorylisting.DirectoryListingView;
+import spring.errors.FilterException;
+
+/**
+ * A filter on the file names of a directory listing, combining a prefix, a glob pattern and a regular expression.
+ * A file name is selected if it matches all the given parts of the filter.
+ * The prefix, or otherwise the literal start of the glob pattern, is looked up in the name order of the listing,
+ * so only the file names starting with it are matched against the patterns.
+ * @author N. H. Weideman
+ */
+public class ListingFilter {
+
+	private static final String GLOB_SPECIAL_CHARACTERS = "*?[{\\";
+
+	private final String prefix;
+	private final Predicate<String> fileNameFilter;
+
+	private ListingFilter(String prefix, Predicate<String> fileNameFilter) {
+		this.prefix = prefix;
+		this.fileNameFilter = fileNameFilter;
+	}
+
+	/**
+	 * Creates a filter from the filter parameters of a request.
+	 * @param prefix The prefix the file names must start with, or NULL
+	 * @param glob The glob pattern the whole file names must match, or NULL
+	 * @param regex The regular expression the whole file names must match, or NULL
+	 * @return The filter, or NULL if no parameter was given
+	 * @throws FilterException If the glob pattern or the regular expression is invalid
+	 */
+	public static ListingFilter create(String prefix, String glob, String regex) throws FilterException {
+		if (prefix == null && glob == null && regex == null) {
+			return null;
+		}
+		Predicate<String> fileNameFilter = null;
+		String indexPrefix = (prefix == null) ? "" : prefix;
+
+		if (glob != null) {
+			final PathMatcher globMatcher;
+			final FileSystem fileSystem = FileSystems.getDefault();
+			try {
+				globMatcher = fileSystem.getPathMatcher("glob:" + glob);
+			} catch (IllegalArgumentException iae) {
+				throw new FilterException("Invalid glob pattern " + glob + ".");
+			}
+			fileNameFilter = fileName -> globMatcher.matches(fileSystem.getPath(fileName));
+
+			/* The literal start of the pattern is looked up in the index, unless a prefix is given explicitly. */
+			String globPrefix = getLiteralPrefix(glob);
+			if (prefix == null || globPrefix.startsWith(prefix)) {
+				indexPrefix = globPrefix;
+			}
+		}
+		if (regex != null) {
+			final Pattern pattern;
+			try {
+				pattern = Pattern.compile(regex);
+			} catch (PatternSyntaxException pse) {
+				throw new FilterException("Invalid regular expression " + regex + ".");
+			}
+			Predicate<String> regexFilter = fileName -> pattern.matcher(fileName).matches();
+			fileNameFilter = (fileNameFilter == null) ? regexFilter : fileNameFilter.and(regexFilter);
+		}
+		return new ListingFilter(indexPrefix, fileNameFilter);
+	}
+
+	/**
+	 * Selects the entries of a directory listing that pass the filter.
+	 * @param directoryListingResult The directory listing to filter
+	 * @param listingSort The order to return the selected entries in, NULL to sort them by file name
+	 * @return The selected entries in the sort order
+	 */
+	public DirectoryListingView apply(DirectoryListingResult directoryListingResult, ListingSort listingSort) {
+		if (listingSort == null) {
+			return directoryListingResult.getOrderedEntries(DirectoryListingSortKey.NAME, false, prefix, fileNameFilter);
+		}
+		return directoryListingResult.getOrderedEntries(listingSort.getSortKey(), listingSort.isDescending(), prefix, fileNameFilter);
+	}
+
+	/* Returns the start of a glob pattern up to the first character with a special meaning. */
+	private static String getLiteralPrefix(String glob) {
+		int literalEnd = 0;
+		while (literalEnd < glob.length() && GLOB_SPECIAL_CHARACTERS.indexOf(glob.charAt(literalEnd)) < 0) {
+			literalEnd++;
+		}
+		return glob.substring(0, literalEnd);
+	}
+
+}
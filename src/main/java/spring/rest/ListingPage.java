@@ -0,0 +1,95 @@
+package spring.rest;
+
+import java.util.List;
+
+import spring.directorylisting.DirectoryListingEntry;
+
+/**
+ * A class to store a page of directory entries together with the links to the other pages,
+ * and the request and directory the page was selected for, which every representation of the page is written from
+ * @author N. H. Weideman
+ */
+public class ListingPage {
+
+	private final String url;
+	public String getUrl() {
+		return url;
+	}
+
+	/* The path of the directory as it was requested. */
+	private final String dpath;
+	public String getDpath() {
+		return dpath;
+	}
+
+	/* The canonical path of the directory, which the links to the subdirectories are created from. */
+	private final String directoryPath;
+	public String getDirectoryPath() {
+		return directoryPath;
+	}
+
+	private final List<DirectoryListingEntry> directoryEntries;
+	public List<DirectoryListingEntry> getDirectoryEntries() {
+		return directoryEntries;
+	}
+
+	private final int numPages;
+	public int getNumPages() {
+		return numPages;
+	}
+
+	private final int pageNumber;
+	public int getPageNumber() {
+		return pageNumber;
+	}
+
+	private final int pageSize;
+	public int getPageSize() {
+		return pageSize;
+	}
+
+	private final String firstLink;
+	public String getFirstLink() {
+		return firstLink;
+	}
+
+	private final String lastLink;
+	public String getLastLink() {
+		return lastLink;
+	}
+
+	private final String prevLink;
+	public String getPrevLink() {
+		return prevLink;
+	}
+
+	private final String nextLink;
+	public String getNextLink() {
+		return nextLink;
+	}
+
+	public ListingPage(String url,
+					String dpath,
+					String directoryPath,
+					List<DirectoryListingEntry> directoryEntries,
+					int numPages,
+					int pageNumber,
+					int pageSize,
+					String firstLink,
+					String lastLink,
+					String prevLink,
+					String nextLink) {
+		this.url = url;
+		this.dpath = dpath;
+		this.directoryPath = directoryPath;
+		this.directoryEntries = directoryEntries;
+		this.numPages = numPages;
+		this.pageNumber = pageNumber;
+		this.pageSize = pageSize;
+		this.firstLink = firstLink;
+		this.lastLink = lastLink;
+		this.prevLink = prevLink;
+		this.nextLink = nextLink;
+	}
+
+}
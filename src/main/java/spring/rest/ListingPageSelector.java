@@ -0,0 +1,182 @@
+package spring.rest;
+
+import java.util.List;
+
+import spring.directorylisting.DirectoryListingEntry;
+import spring.directorylisting.DirectoryListingResult;
+import spring.directorylisting.DirectoryListingView;
+import spring.errors.PageException;
+import spring.errors.PageSizeException;
+import spring.rest.response.LinkTemplate;
+
+/**
+ * A class for selecting the requested page of a directory listing, together with the links to the other pages
+ * @author N. H. Weideman
+ */
+class ListingPageSelector {
+
+	private ListingPageSelector() {
+	}
+
+	/**
+	 * Selects the requested page of a directory listing, by cursor if a cursor is given and by page number otherwise.
+	 * If a filter is given only the selected entries are paginated, sorted by file name unless a sort order is given.
+	 * @param url The full URL of the request, which the links to the other pages are created from
+	 * @param dpath The path of the directory as it was requested
+	 * @param directoryListingResult The listing of the directory
+	 * @param listingFilter The filter on the file names, or NULL
+	 * @param listingSort The order of the entries, or NULL
+	 * @param page The page number, which is ignored if a cursor is given
+	 * @param pageSize The number of entries per page
+	 * @param cursor The position to continue the name order from, or NULL
+	 * @return The selected page
+	 * @throws PageException If the page does not exist, or a cursor is given for a listing not sorted by file name
+	 * @throws PageSizeException If the page size is not positive
+	 */
+	static ListingPage select(String url, String dpath, DirectoryListingResult directoryListingResult, ListingFilter listingFilter, ListingSort listingSort, int page, int pageSize, String cursor) throws PageException, PageSizeException {
+		if (cursor != null) {
+			if (listingSort != null && !listingSort.isNameOrder()) {
+				throw new PageException("Cursors can only be used with listings sorted by file name in ascending order.");
+			}
+			DirectoryListingView nameOrderedEntries;
+			if (listingFilter == null) {
+				nameOrderedEntries = directoryListingResult.getNameOrderedEntries();
+			} else {
+				nameOrderedEntries = listingFilter.apply(directoryListingResult, listingSort);
+			}
+			return selectCursorPage(url, dpath, directoryListingResult, nameOrderedEntries, pageSize, cursor);
+		}
+		List<DirectoryListingEntry> directoryEntries;
+		if (listingFilter != null) {
+			directoryEntries = listingFilter.apply(directoryListingResult, listingSort);
+		} else if (listingSort != null) {
+			directoryEntries = listingSort.apply(directoryListingResult);
+		} else {
+			directoryEntries = directoryListingResult.getDirectoryEntries();
+		}
+		List<DirectoryListingEntry> paginatedDirectoryListingEntries = paginate(directoryEntries, page, pageSize);
+		int totalNumEntries = directoryEntries.size();
+		int numPages = getNumPages(totalNumEntries, pageSize);
+		LinkTemplate pageLinkTemplate = LinkTemplate.forPages(url);
+		String firstLink = pageLinkTemplate.createLink(1);
+		String lastLink = pageLinkTemplate.createLink(numPages);
+		String prevLink = createPrevLink(pageLinkTemplate, page);
+		String nextLink = createNextLink(pageLinkTemplate, page, numPages);
+		return new ListingPage(url, dpath, directoryListingResult.getFullPath(), paginatedDirectoryListingEntries, numPages, page, pageSize, firstLink, lastLink, prevLink, nextLink);
+	}
+
+	/* Selects the page of the entries sorted by file name that starts at a cursor, an empty cursor starts at the first entry */
+	private static ListingPage selectCursorPage(String url, String dpath, DirectoryListingResult directoryListingResult, DirectoryListingView nameOrderedEntries, int pageSize, String cursor) throws PageException, PageSizeException {
+		if (pageSize <= 0) {
+			throw new PageSizeException("Page sizes must have value >= 1.");
+		}
+		int numEntries = nameOrderedEntries.size();
+		int startIndex = 0;
+		if (!cursor.isEmpty()) {
+			ListingCursor listingCursor = ListingCursor.decode(cursor);
+			startIndex = resolveCursor(directoryListingResult, nameOrderedEntries, listingCursor);
+		}
+		int endIndex = Math.min(startIndex + pageSize, numEntries);
+		int numPages = getNumPages(numEntries, pageSize);
+		int pageNumber = startIndex / pageSize + 1;
+
+		/* The request URL is already encoded and cursors are URL safe, so the links are not encoded again. */
+		LinkTemplate cursorLinkTemplate = LinkTemplate.forCursors(url);
+		String firstLink = cursorLinkTemplate.createLink("");
+		int lastStartIndex = Math.max(0, (numPages - 1) * pageSize);
+		String lastLink = cursorLinkTemplate.createLink(createCursor(directoryListingResult, nameOrderedEntries, lastStartIndex));
+		String prevLink = "";
+		if (startIndex > 0) {
+			int prevStartIndex = Math.max(0, startIndex - pageSize);
+			prevLink = cursorLinkTemplate.createLink(createCursor(directoryListingResult, nameOrderedEntries, prevStartIndex));
+		}
+		String nextLink = "";
+		if (endIndex < numEntries) {
+			nextLink = cursorLinkTemplate.createLink(createCursor(directoryListingResult, nameOrderedEntries, endIndex));
+		}
+		List<DirectoryListingEntry> paginatedDirectoryListingEntries = nameOrderedEntries.subList(startIndex, endIndex);
+		return new ListingPage(url, dpath, directoryListingResult.getFullPath(), paginatedDirectoryListingEntries, numPages, pageNumber, pageSize, firstLink, lastLink, prevLink, nextLink);
+	}
+
+	/* Returns the position in the name order a cursor points to, seeking by file name if the listing has changed */
+	private static int resolveCursor(DirectoryListingResult directoryListingResult, DirectoryListingView nameOrderedEntries, ListingCursor listingCursor) {
+		int position = listingCursor.getPosition();
+		if (listingCursor.getVersion() == directoryListingResult.getVersion()
+				&& position <= nameOrderedEntries.size()
+				&& nameOrderedEntries.get(position - 1).getFileName().equals(listingCursor.getLastFileName())) {
+			return position;
+		}
+		return nameOrderedEntries.findNameOrderPosition(listingCursor.getLastFileName());
+	}
+
+	/* Creates the cursor token for a position in the name order */
+	private static String createCursor(DirectoryListingResult directoryListingResult, DirectoryListingView nameOrderedEntries, int position) {
+		if (position == 0) {
+			return "";
+		}
+		String lastFileName = nameOrderedEntries.get(position - 1).getFileName();
+		ListingCursor listingCursor = new ListingCursor(directoryListingResult.getVersion(), position, lastFileName);
+		return listingCursor.encode();
+	}
+
+	/* Creates the link to the previous page (if applicable) */
+	private static String createPrevLink(LinkTemplate pageLinkTemplate, int pageNumber) {
+		String prevLink = "";
+		if (pageNumber > 1) {
+			prevLink = pageLinkTemplate.createLink(pageNumber - 1);
+		}
+		return prevLink;
+	}
+
+	/* Creates the link to the next page (if applicable) */
+	private static String createNextLink(LinkTemplate pageLinkTemplate, int pageNumber, int numPages) {
+		String nextLink = "";
+		if (pageNumber < numPages) {
+			nextLink = pageLinkTemplate.createLink(pageNumber + 1);
+		}
+		return nextLink;
+	}
+
+	/* Paginates the directory entries according to the page number and page size, the page is a view of the listing */
+	private static List<DirectoryListingEntry> paginate(List<DirectoryListingEntry> directoryEntries, int page, int pageSize) throws PageException, PageSizeException {
+		if (page < 1) {
+			throw new PageException("Page " + page + " does not exist. (Minimum page: 1)");
+		}
+		if (pageSize <= 0) {
+			throw new PageSizeException("Page sizes must have value >= 1.");
+		}
+		int numEntries = directoryEntries.size();
+		int numPages = getNumPages(numEntries, pageSize);
+		int startIndex = getPaginationLowerIndex(numEntries, page, pageSize);
+		int endIndex = getPaginationUpperIndex(numEntries, page, pageSize);
+		
+		if (page > numPages) {
+			throw new PageException("Page " + page + " does not exist. (Maximum page: " + numPages + ")");
+		}
+		
+		
+		return directoryEntries.subList(startIndex, endIndex);
+	}
+
+	/* Returns the index for the resource to start pagination from */
+	private static int getPaginationLowerIndex(int numEntries, int page, int pageSize) {
+		int startIndex = (page - 1) * pageSize;
+		return startIndex;
+	}
+
+	/* Returns the index for the resource to stop pagination at */
+	private static int getPaginationUpperIndex(int numEntries, int page, int pageSize) {
+		int endIndex = getPaginationLowerIndex(numEntries, page, pageSize) + pageSize;
+		if (endIndex > numEntries) {
+			endIndex = numEntries;
+		}
+		return endIndex;
+	}
+
+	/* Returns the total number of pages, a filter that selects no entries gives a single empty page */
+	private static int getNumPages(int numEntries, int pageSize) {
+		int numPages = (int) Math.ceil((double)numEntries / (double)pageSize);
+		return Math.max(numPages, 1);
+	}
+
+}
@@ -0,0 +1,102 @@
+package spring.rest;
+
+import spring.errors.FilterException;
+import spring.errors.SortException;
+
+/**
+ * A class to store the URL query parameters of a directory listing request, which select the directory, the page and the entries to list
+ * @author N. H. Weideman
+ */
+public class ListingQuery {
+
+	/* The path of the directory to list. */
+	private String dpath = "/";
+	public String getDpath() {
+		return dpath;
+	}
+	public void setDpath(String dpath) {
+		this.dpath = dpath;
+	}
+
+	/* The page number of the resource list to return. */
+	private int page = 1;
+	public int getPage() {
+		return page;
+	}
+	public void setPage(int page) {
+		this.page = page;
+	}
+
+	/* The number of resources to show on the page. */
+	private int psize = 2000;
+	public int getPsize() {
+		return psize;
+	}
+	public void setPsize(int psize) {
+		this.psize = psize;
+	}
+
+	/* The position to continue a listing sorted by file name from, which replaces the page number if it is given. */
+	private String cursor;
+	public String getCursor() {
+		return cursor;
+	}
+	public void setCursor(String cursor) {
+		this.cursor = cursor;
+	}
+
+	/* The prefix of the file names to list. */
+	private String prefix;
+	public String getPrefix() {
+		return prefix;
+	}
+	public void setPrefix(String prefix) {
+		this.prefix = prefix;
+	}
+
+	/* A glob pattern the file names to list must match. */
+	private String glob;
+	public String getGlob() {
+		return glob;
+	}
+	public void setGlob(String glob) {
+		this.glob = glob;
+	}
+
+	/* A regular expression the file names to list must match. */
+	private String regex;
+	public String getRegex() {
+		return regex;
+	}
+	public void setRegex(String regex) {
+		this.regex = regex;
+	}
+
+	/* The order of the entries, a sort key (name, size, mtime or type) optionally followed by ",asc" or ",desc". */
+	private String sort;
+	public String getSort() {
+		return sort;
+	}
+	public void setSort(String sort) {
+		this.sort = sort;
+	}
+
+	/**
+	 * Creates the filter on the file names selected by the query.
+	 * @return The filter, or NULL if the query does not filter the entries
+	 * @throws FilterException If the glob pattern or the regular expression is invalid
+	 */
+	public ListingFilter createFilter() throws FilterException {
+		return ListingFilter.create(prefix, glob, regex);
+	}
+
+	/**
+	 * Parses the sort order selected by the query.
+	 * @return The sort order, or NULL if the query does not sort the entries
+	 * @throws SortException If the sort order is invalid
+	 */
+	public ListingSort parseSort() throws SortException {
+		return ListingSort.parse(sort);
+	}
+
+}
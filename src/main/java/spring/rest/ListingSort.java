@@ -0,0 +1,82 @@
+package spring.rest;
+
+import java.util.Locale;
+
+import spring.directorylisting.DirectoryListingResult;
+import spring.directorylisting.DirectoryListingSortKey;
+import spring.directorylisting.DirectoryListingView;
+import spring.errors.SortException;
+
+/**
+ * A sort order of a directory listing, given as a sort key optionally followed by a direction, for example "size,desc".
+ * @author N. H. Weideman
+ */
+public class ListingSort {
+
+	private static final char SEPARATOR = ',';
+	private static final String ASCENDING = "asc";
+	private static final String DESCENDING = "desc";
+
+	private final DirectoryListingSortKey sortKey;
+	public DirectoryListingSortKey getSortKey() {
+		return sortKey;
+	}
+
+	private final boolean descending;
+	public boolean isDescending() {
+		return descending;
+	}
+
+	public ListingSort(DirectoryListingSortKey sortKey, boolean descending) {
+		this.sortKey = sortKey;
+		this.descending = descending;
+	}
+
+	/**
+	 * Checks if the sort order is by file name in ascending order, which is the order cursors are defined in.
+	 * @return True if the entries are sorted by ascending file name, false otherwise
+	 */
+	public boolean isNameOrder() {
+		return sortKey == DirectoryListingSortKey.NAME && !descending;
+	}
+
+	/**
+	 * Sorts the entries of a directory listing.
+	 * @param directoryListingResult The directory listing to sort
+	 * @return The sorted entries
+	 */
+	public DirectoryListingView apply(DirectoryListingResult directoryListingResult) {
+		return directoryListingResult.getOrderedEntries(sortKey, descending);
+	}
+
+	/**
+	 * Parses the sort parameter of a request.
+	 * @param sort The sort key, optionally followed by a comma and "asc" or "desc", or NULL
+	 * @return The sort order, or NULL if no sort order was given
+	 * @throws SortException If the sort key or direction is not known
+	 */
+	public static ListingSort parse(String sort) throws SortException {
+		if (sort == null) {
+			return null;
+		}
+		String sortKeyStr = sort;
+		boolean descending = false;
+		int separatorIndex = sort.indexOf(SEPARATOR);
+		if (separatorIndex >= 0) {
+			sortKeyStr = sort.substring(0, separatorIndex);
+			String directionStr = sort.substring(separatorIndex + 1).toLowerCase(Locale.ROOT);
+			if (directionStr.equals(DESCENDING)) {
+				descending = true;
+			} else if (!directionStr.equals(ASCENDING)) {
+				throw new SortException("Invalid sort direction " + directionStr + ". (Directions: asc, desc)");
+			}
+		}
+		try {
+			DirectoryListingSortKey sortKey = DirectoryListingSortKey.valueOf(sortKeyStr.toUpperCase(Locale.ROOT));
+			return new ListingSort(sortKey, descending);
+		} catch (IllegalArgumentException iae) {
+			throw new SortException("Invalid sort key " + sortKeyStr + ". (Keys: name, size, mtime, type)");
+		}
+	}
+
+}
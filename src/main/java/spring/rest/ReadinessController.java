@@ -0,0 +1,40 @@
+package spring.rest;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+import spring.directorylisting.DirectoryListingPrewarmer;
+import spring.directorylisting.PrewarmProgress;
+
+/**
+ * The controller reporting whether the service is ready to receive traffic
+ * @author N. H. Weideman
+ */
+
+@RestController
+public class ReadinessController {
+
+	private final DirectoryListingPrewarmer directoryListingPrewarmer;
+
+	@Autowired
+	public ReadinessController(DirectoryListingPrewarmer directoryListingPrewarmer) {
+		this.directoryListingPrewarmer = directoryListingPrewarmer;
+	}
+
+	/**
+	 * Returns the progress of pre-warming the cache, with status 503 until the configured directories have been cached,
+	 * so that a load balancer only routes traffic to the service once it is warm.
+	 * @return A JSON representation of the progress of pre-warming the cache
+	 */
+	@RequestMapping(value="/ready", method=RequestMethod.GET, produces="application/json")
+	public ResponseEntity<PrewarmProgress> ready() {
+		PrewarmProgress prewarmProgress = directoryListingPrewarmer.getProgress();
+		HttpStatus status = prewarmProgress.isReady() ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE;
+		return new ResponseEntity<PrewarmProgress>(prewarmProgress, status);
+	}
+
+}
@@ -0,0 +1,39 @@
+package spring.rest.response;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * An output stream that passes every write on to another stream and counts the bytes written.
+ * @author N. H. Weideman
+ */
+public class CountingOutputStream extends FilterOutputStream {
+
+	private long count;
+	/**
+	 * Returns the number of bytes written so far.
+	 * @return The number of bytes
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	public CountingOutputStream(OutputStream outputStream) {
+		super(outputStream);
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		out.write(b);
+		count++;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		/* Passed on as a whole, where FilterOutputStream would write the bytes one at a time. */
+		out.write(b, off, len);
+		count += len;
+	}
+
+}
@@ -1,13 +1,9 @@
 package spring.rest.response;
 
-import java.util.LinkedList;
-import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.io.File;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.attribute.BasicFileAttributes;
-import java.nio.file.attribute.FileTime;
-import org.springframework.web.util.UriComponentsBuilder;
 
 import spring.directorylisting.DirectoryListingResult;
 import spring.directorylisting.DirectoryListingEntry;
@@ -29,9 +25,9 @@ public class DirectoryListingResponse {
 		return fullPath;
 	}
 
-	private final LinkedList<DirectoryListingResponseEntry> directoryResponseEntries;
-	public LinkedList<DirectoryListingResponseEntry> getDirectoryEntries() {
-		return new LinkedList<DirectoryListingResponseEntry>(directoryResponseEntries);
+	private final List<DirectoryListingResponseEntry> directoryResponseEntries;
+	public List<DirectoryListingResponseEntry> getDirectoryEntries() {
+		return Collections.unmodifiableList(directoryResponseEntries);
 	}
 
 	private final int numEntries;
@@ -77,6 +73,7 @@ public class DirectoryListingResponse {
 
 	public DirectoryListingResponse(String url,
 					String fullPath,
+					String directoryPath,
 					int numPages,
 					int pageNumber,
 					int pageSize,
@@ -84,7 +81,7 @@ public class DirectoryListingResponse {
 					String lastLink,
 					String prevLink,
 					String nextLink,
-					LinkedList<DirectoryListingEntry> directoryEntries) throws IOException {
+					List<DirectoryListingEntry> directoryEntries) {
 		this.url = url;
 		this.fullPath = fullPath;
 		this.numEntries = directoryEntries.size();
@@ -97,25 +94,47 @@ public class DirectoryListingResponse {
 		this.nextLink = nextLink;
 
 		/* Creating the links to the entries */
-		this.directoryResponseEntries = new LinkedList<DirectoryListingResponseEntry>();
+		LinkTemplate directoryLinkTemplate = LinkTemplate.forDirectories(url);
+		this.directoryResponseEntries = new ArrayList<DirectoryListingResponseEntry>(directoryEntries.size());
 		for (DirectoryListingEntry directoryListingEntry : directoryEntries) {
-			String fileName = directoryListingEntry.getFileName();
-			UriComponentsBuilder ucb = UriComponentsBuilder.fromHttpUrl(url);
-
-			String link = "";
-			if (directoryListingEntry.isDirectory()) {
-				Path dpath =  Paths.get(fullPath, fileName);
-				File dpathFile = dpath.toFile();
-				String dpathStr = dpathFile.getCanonicalPath();
-				ucb.replaceQueryParam("dpath", dpathStr);
-				ucb.replaceQueryParam("page", 1);
-
-				link = ucb.toUriString();
-			}
+			String link = createEntryLink(directoryLinkTemplate, directoryPath, directoryListingEntry);
 			DirectoryListingResponseEntry dlre = new DirectoryListingResponseEntry(link, directoryListingEntry);
 			directoryResponseEntries.add(dlre);
 		}
 		
 	}
 
+	/**
+	 * Creates the link to the listing of a directory entry.
+	 * @param directoryLinkTemplate The template of the links to directory listings, created from the URL of the request
+	 * @param directoryPath The canonical path of the listed directory
+	 * @param directoryListingEntry The directory entry to link to
+	 * @return The link to the listing of the entry if it is a directory, the empty string otherwise
+	 */
+	public static String createEntryLink(LinkTemplate directoryLinkTemplate, String directoryPath, DirectoryListingEntry directoryListingEntry) {
+		String link = "";
+		if (directoryListingEntry.isDirectory()) {
+			link = directoryLinkTemplate.createLink(getEntryPath(directoryPath, directoryListingEntry.getFileName()));
+		}
+		return link;
+	}
+
+	/*
+	 * Returns the canonical path of an entry of a directory from the canonical path of the directory.
+	 * Listings do not include symbolic links, so the path of an entry is already canonical and the file system is not accessed.
+	 */
+	private static String getEntryPath(String directoryPath, String fileName) {
+		if (fileName.equals(".")) {
+			return directoryPath;
+		}
+		if (fileName.equals("..")) {
+			String parentPath = new File(directoryPath).getParent();
+			return (parentPath == null) ? directoryPath : parentPath;
+		}
+		if (directoryPath.endsWith(File.separator)) {
+			return directoryPath + fileName;
+		}
+		return directoryPath + File.separatorChar + fileName;
+	}
+
 }
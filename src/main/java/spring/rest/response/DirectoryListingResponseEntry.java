@@ -25,69 +25,46 @@ public class DirectoryListingResponseEntry {
 	}
 
 
-	private final String creationTimeAttributeName = "Creation Time";
-	private final String creationTime;
+	public static final String CREATION_TIME_ATTRIBUTE_NAME = "Creation Time";
+	public static final String FILE_KEY_ATTRIBUTE_NAME = "File Key";
+	public static final String IS_DIRECTORY_ATTRIBUTE_NAME = "Is Directory";
+	public static final String IS_OTHER_ATTRIBUTE_NAME = "Is Other";
+	public static final String IS_REGULAR_FILE_ATTRIBUTE_NAME = "Is Regular File";
+	public static final String IS_SYMBOLIC_LINK_ATTRIBUTE_NAME = "Is Symbolic Link";
+	public static final String LAST_ACCESS_TIME_ATTRIBUTE_NAME = "Last Access Time";
+	public static final String LAST_MODIFIED_TIME_ATTRIBUTE_NAME = "Last Modified Time";
+	public static final String SIZE_ATTRIBUTE_NAME = "Size";
+
+	/* The attributes are read from the entry when they are serialized, instead of being formatted up front. */
+	private final BasicFileAttributes basicFileAttributes;
 
-	private final String fileKeyAttributeName = "File Key";
-	private final String fileKey;
-
-	private final String isDirectoryAttributeName = "Is Directory";
-	private final boolean isDirectory;
 	public boolean getIsDirectory() {
-		return isDirectory;
+		return basicFileAttributes.isDirectory();
 	}
 
-	private final String isOtherAttributeName = "Is Other";
-	private final boolean isOther;
-
-	private final String isRegularFileAttributeName = "Is Regular File";
-	private final boolean isRegularFile;
-
-	private final String isSymbolicLinkAttributeName = "Is Symbolic Link";
-	private final boolean isSymbolicLink;
-
-	private final String lastAccessTimeAttributeName = "Last Access Time";
-	private final String lastAccessTime;
-
-
-	private final String lastModifiedTimeAttributeName = "Last Modified Time";
-	private final String lastModifiedTime;
-
-	private final String sizeAttributeName = "Size";
-	private final long size;
-
-	private final Map<String,String> attributes;
-		public Set<Map.Entry<String, String>> getAttributes() {
+	/**
+	 * Formats the attributes of the entry.
+	 * @return The attribute names and their values as strings
+	 */
+	public Set<Map.Entry<String, String>> getAttributes() {
+		Map<String, String> attributes = new HashMap<String, String>();
+		attributes.put(CREATION_TIME_ATTRIBUTE_NAME, basicFileAttributes.creationTime().toString());
+		attributes.put(FILE_KEY_ATTRIBUTE_NAME, basicFileAttributes.fileKey().toString());
+		attributes.put(IS_DIRECTORY_ATTRIBUTE_NAME, String.valueOf(basicFileAttributes.isDirectory()));
+		attributes.put(IS_OTHER_ATTRIBUTE_NAME, String.valueOf(basicFileAttributes.isOther()));
+		attributes.put(IS_REGULAR_FILE_ATTRIBUTE_NAME, String.valueOf(basicFileAttributes.isRegularFile()));
+		attributes.put(IS_SYMBOLIC_LINK_ATTRIBUTE_NAME, String.valueOf(basicFileAttributes.isSymbolicLink()));
+		attributes.put(LAST_ACCESS_TIME_ATTRIBUTE_NAME, basicFileAttributes.lastAccessTime().toString());
+		attributes.put(LAST_MODIFIED_TIME_ATTRIBUTE_NAME, basicFileAttributes.lastModifiedTime().toString());
+		attributes.put(SIZE_ATTRIBUTE_NAME, String.valueOf(basicFileAttributes.size()));
 		return attributes.entrySet();
 	}
 
 
 	public DirectoryListingResponseEntry(String link, DirectoryListingEntry directoryListingEntry) {
-		String fileName = directoryListingEntry.getFileName();
-		BasicFileAttributes basicFileAttributes = directoryListingEntry.getFileAttributes();
-		this.fileName = fileName;
-		this.creationTime = basicFileAttributes.creationTime().toString();
-		this.fileKey = basicFileAttributes.fileKey().toString();
-		this.isDirectory = basicFileAttributes.isDirectory();
-		this.isOther = basicFileAttributes.isOther();
-		this.isRegularFile = basicFileAttributes.isRegularFile();
-		this.isSymbolicLink = basicFileAttributes.isSymbolicLink();
-		this.lastAccessTime = basicFileAttributes.lastAccessTime().toString();
-		this.lastModifiedTime = basicFileAttributes.lastModifiedTime().toString();
-		this.size = basicFileAttributes.size();
+		this.fileName = directoryListingEntry.getFileName();
+		this.basicFileAttributes = directoryListingEntry.getFileAttributes();
 		this.link = link;
-
-		attributes = new HashMap<String, String>();
-		attributes.put(creationTimeAttributeName, creationTime);
-		attributes.put(fileKeyAttributeName, fileKey);
-		attributes.put(isDirectoryAttributeName, "" + isDirectory);
-		attributes.put(isOtherAttributeName, "" + isOther);
-		attributes.put(isRegularFileAttributeName, "" + isRegularFile);
-		attributes.put(isSymbolicLinkAttributeName, "" + isSymbolicLink);
-		attributes.put(lastAccessTimeAttributeName, lastAccessTime);
-		attributes.put(lastModifiedTimeAttributeName, lastModifiedTime);
-		attributes.put(sizeAttributeName, "" + size);
-
 	}
 
 
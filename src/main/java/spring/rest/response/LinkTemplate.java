@@ -0,0 +1,136 @@
+package spring.rest.response;
+
+import java.nio.charset.StandardCharsets;
+import org.springframework.web.util.UriComponentsBuilder;
+
+/**
+ * A class for creating links that differ from a request URL in the value of a single query parameter.
+ * The URL is parsed once when the template is created, after which a link is created by inserting a value between a fixed prefix and suffix.
+ * @author N. H. Weideman
+ */
+public final class LinkTemplate {
+
+	/* A query parameter value that is left unchanged by encoding, it marks the position of the value in the links. */
+	private static final String VALUE_MARKER = "linkTemplateValue";
+
+	private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+	private final String prefix;
+	private final String suffix;
+	private final boolean encodeValues;
+
+	/* Creates a template from a link holding the marker, the marker must be the last query parameter value that holds it. */
+	private LinkTemplate(String link, boolean encodeValues) {
+		int markerIndex = link.lastIndexOf(VALUE_MARKER);
+		this.prefix = link.substring(0, markerIndex);
+		this.suffix = link.substring(markerIndex + VALUE_MARKER.length());
+		this.encodeValues = encodeValues;
+	}
+
+	/**
+	 * Creates the template of the links to the listings of directories, which start at the first page.
+	 * The cursor and the filters of the request are left out, since they select entries of the requested directory,
+	 * while the other parameters, such as the page size and the sort order, are kept.
+	 * @param url The URL of the request, which is already encoded
+	 * @return The template, whose values are the paths of the directories, which are encoded when the links are created
+	 */
+	public static LinkTemplate forDirectories(String url) {
+		UriComponentsBuilder ucb = UriComponentsBuilder.fromHttpUrl(url);
+		ucb.replaceQueryParam("cursor");
+		ucb.replaceQueryParam("prefix");
+		ucb.replaceQueryParam("glob");
+		ucb.replaceQueryParam("regex");
+		ucb.replaceQueryParam("dpath", VALUE_MARKER);
+		ucb.replaceQueryParam("page", 1);
+		return new LinkTemplate(ucb.build().toUriString(), true);
+	}
+
+	/**
+	 * Creates the template of the links to the pages of a listing.
+	 * @param url The URL of the request, which is already encoded
+	 * @return The template, whose values are page numbers
+	 */
+	public static LinkTemplate forPages(String url) {
+		UriComponentsBuilder ucb = UriComponentsBuilder.fromHttpUrl(url);
+		ucb.replaceQueryParam("page", VALUE_MARKER);
+		return new LinkTemplate(ucb.build().toUriString(), false);
+	}
+
+	/**
+	 * Creates the template of the links to the pages of a listing that start at a cursor.
+	 * @param url The URL of the request, which is already encoded
+	 * @return The template, whose values are cursors, which are URL safe
+	 */
+	public static LinkTemplate forCursors(String url) {
+		UriComponentsBuilder ucb = UriComponentsBuilder.fromHttpUrl(url);
+		ucb.replaceQueryParam("page");
+		ucb.replaceQueryParam("cursor", VALUE_MARKER);
+		return new LinkTemplate(ucb.build().toUriString(), false);
+	}
+
+	/**
+	 * Creates a link.
+	 * @param value The value of the query parameter
+	 * @return The link
+	 */
+	public String createLink(String value) {
+		if (encodeValues) {
+			value = encodeQueryParam(value);
+		}
+		StringBuilder sb = new StringBuilder(prefix.length() + value.length() + suffix.length());
+		return sb.append(prefix).append(value).append(suffix).toString();
+	}
+
+	/**
+	 * Creates a link.
+	 * @param value The value of the query parameter
+	 * @return The link
+	 */
+	public String createLink(int value) {
+		return createLink(Integer.toString(value));
+	}
+
+	/*
+	 * Percent-encodes the UTF-8 bytes of a query parameter value, except for the characters that may appear in a query other than
+	 * the separators '=', '&' and '+'. Values that need no encoding are returned as they are.
+	 */
+	private static String encodeQueryParam(String value) {
+		int length = value.length();
+		int i = 0;
+		while (i < length && isAllowedInQueryParam(value.charAt(i))) {
+			i++;
+		}
+		if (i == length) {
+			return value;
+		}
+
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		StringBuilder sb = new StringBuilder(bytes.length + 16);
+		for (byte b : bytes) {
+			if (b >= 0 && isAllowedInQueryParam((char) b)) {
+				sb.append((char) b);
+			} else {
+				sb.append('%');
+				sb.append(HEX_DIGITS[(b >> 4) & 0xf]);
+				sb.append(HEX_DIGITS[b & 0xf]);
+			}
+		}
+		return sb.toString();
+	}
+
+	/* Returns whether a character is left unencoded in a query parameter, which excludes the separators '=', '&' and '+'. */
+	private static boolean isAllowedInQueryParam(char c) {
+		if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')) {
+			return true;
+		}
+		switch (c) {
+		case '-': case '.': case '_': case '~':
+		case '!': case '$': case '\'': case '(': case ')': case '*': case ',': case ';':
+		case ':': case '@': case '/': case '?':
+			return true;
+		default:
+			return false;
+		}
+	}
+
+}
@@ -0,0 +1,55 @@
+package spring.rest.response;
+
+/**
+ * A class to store the encoded body and headers of a rendered directory listing response
+ * @author N. H. Weideman
+ */
+public class RenderedResponse {
+
+	private final String fullPath;
+	public String getFullPath() {
+		return fullPath;
+	}
+
+	private final String contentType;
+	public String getContentType() {
+		return contentType;
+	}
+
+	private final String linkHeader;
+	public String getLinkHeader() {
+		return linkHeader;
+	}
+
+	private final byte[] body;
+	public byte[] getBody() {
+		return body;
+	}
+
+	/* The gzip compressed body, set by the rendered response cache when it is first asked for. */
+	private volatile byte[] gzipBody;
+	byte[] getGzipBody() {
+		return gzipBody;
+	}
+
+	void setGzipBody(byte[] gzipBody) {
+		this.gzipBody = gzipBody;
+	}
+
+	/**
+	 * Returns the size of the body and, once it has been compressed, of the compressed body.
+	 * @return The size in bytes
+	 */
+	int getSize() {
+		byte[] compressedBody = gzipBody;
+		return body.length + ((compressedBody == null) ? 0 : compressedBody.length);
+	}
+
+	public RenderedResponse(String fullPath, String contentType, String linkHeader, byte[] body) {
+		this.fullPath = fullPath;
+		this.contentType = contentType;
+		this.linkHeader = linkHeader;
+		this.body = body;
+	}
+
+}
@@ -0,0 +1,236 @@
+package spring.rest.response;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPOutputStream;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import spring.directorylisting.DirectoryListingComponent;
+import spring.directorylisting.DirectoryListingInvalidationListener;
+import spring.directorylisting.DirectoryListingResult;
+import spring.rest.ListingQuery;
+import spring.rest.ListingSort;
+import debugging.Debug;
+
+/**
+ * A class for caching rendered directory listing responses by the canonical path of the directory, the page and entries asked for and the content type.
+ * Since the key holds the canonical path, a path through a symbolic link that now points elsewhere does not find the responses of the old target,
+ * and requests that differ only in the order of their parameters share a response.
+ * A rendered response is only cached while the directory listing result it was rendered from is cached,
+ * and it is removed as soon as that result is changed or removed.
+ * The gzip compressed body of a response is created the first time it is asked for and is kept with the response.
+ * @author N. H. Weideman
+ */
+@Component
+public class RenderedResponseCache implements DirectoryListingInvalidationListener {
+
+	private final ConcurrentHashMap<String, RenderedResponse> responseMap;
+
+	/* The cached responses in insertion order, guarded by this. */
+	private final LinkedHashMap<String, RenderedResponse> insertionOrder;
+	/* The keys of the cached responses of each directory, guarded by this. */
+	private final HashMap<String, Set<String>> keysByPath;
+	/* The total size of the cached response bodies, including the compressed bodies, guarded by this. */
+	private long totalBytes;
+
+	private final long maxBytes;
+
+	private final DirectoryListingComponent directoryListingComponent;
+
+	/**
+	 * Creates a new rendered response cache.
+	 * @param directoryListingComponent The component whose cached directory listings are rendered
+	 * @param maxBytes The maximum total size, in bytes, of the cached response bodies
+	 */
+	@Autowired
+	public RenderedResponseCache(DirectoryListingComponent directoryListingComponent,
+					@Value("${directorylisting.rendered-cache.max-bytes:67108864}") long maxBytes) {
+		this.responseMap = new ConcurrentHashMap<String, RenderedResponse>();
+		this.insertionOrder = new LinkedHashMap<String, RenderedResponse>();
+		this.keysByPath = new HashMap<String, Set<String>>();
+		this.totalBytes = 0;
+		this.maxBytes = maxBytes;
+		this.directoryListingComponent = directoryListingComponent;
+		directoryListingComponent.addInvalidationListener(this);
+	}
+
+	/**
+	 * Creates the key of a rendered response.
+	 * The path as requested and the URL without its query are part of the key as well, since the response repeats them,
+	 * but the other parameters of the request only through the page and entries they select.
+	 * The URL and the links of a cached response keep the parameters of the request that was rendered.
+	 * @param contentType The content type of the response
+	 * @param url The full URL of the request
+	 * @param fullPath The canonical path of the directory
+	 * @param listingQuery The query parameters of the request
+	 * @param listingSort The parsed sort order of the request, or NULL
+	 * @return The key
+	 */
+	public static String createKey(String contentType, String url, String fullPath, ListingQuery listingQuery, ListingSort listingSort) {
+		int queryIndex = url.indexOf('?');
+		StringBuilder keyBuilder = new StringBuilder(128 + fullPath.length());
+		appendKeyPart(keyBuilder, contentType);
+		appendKeyPart(keyBuilder, (queryIndex < 0) ? url : url.substring(0, queryIndex));
+		appendKeyPart(keyBuilder, fullPath);
+		appendKeyPart(keyBuilder, listingQuery.getDpath());
+		/* The page number is ignored once a cursor is given. */
+		if (listingQuery.getCursor() == null) {
+			keyBuilder.append('p').append(listingQuery.getPage()).append(';');
+		} else {
+			keyBuilder.append('c');
+			appendKeyPart(keyBuilder, listingQuery.getCursor());
+		}
+		keyBuilder.append('s').append(listingQuery.getPsize()).append(';');
+		if (listingSort != null) {
+			keyBuilder.append(listingSort.getSortKey()).append(listingSort.isDescending() ? '-' : '+').append(';');
+		}
+		appendKeyPart(keyBuilder, listingQuery.getPrefix());
+		appendKeyPart(keyBuilder, listingQuery.getGlob());
+		appendKeyPart(keyBuilder, listingQuery.getRegex());
+		return keyBuilder.toString();
+	}
+
+	/* Appends a part of a key preceded by its length, so that no two different sets of parts give the same key. */
+	private static void appendKeyPart(StringBuilder keyBuilder, String part) {
+		if (part == null) {
+			keyBuilder.append('/');
+			return;
+		}
+		keyBuilder.append(part.length()).append(':').append(part);
+	}
+
+	/**
+	 * Obtains a cached rendered response.
+	 * @param key The key of the response
+	 * @return The rendered response if it has been cached, NULL otherwise
+	 */
+	public RenderedResponse get(String key) {
+		return responseMap.get(key);
+	}
+
+	/**
+	 * Adds a rendered response to the cache, if the directory listing result it was rendered from is still cached.
+	 * @param key The key of the response
+	 * @param directoryListingResult The directory listing result the response was rendered from
+	 * @param renderedResponse The rendered response
+	 */
+	public void put(String key, DirectoryListingResult directoryListingResult, RenderedResponse renderedResponse) {
+		String fullPath = directoryListingResult.getFullPath();
+		synchronized (this) {
+			/* The size is read while holding the lock, since the compressed body is only added while holding it. */
+			int responseSize = renderedResponse.getSize();
+			if (responseSize > maxBytes) {
+				return;
+			}
+			Set<String> keys = keysByPath.get(fullPath);
+			if (keys == null) {
+				keys = new HashSet<String>();
+				keysByPath.put(fullPath, keys);
+			}
+			keys.add(key);
+			removeResponse(key);
+			responseMap.put(key, renderedResponse);
+			insertionOrder.put(key, renderedResponse);
+			totalBytes += responseSize;
+			removeOldestResponses();
+		}
+
+		/* The result may have changed while the response was rendered, in which case no notification will follow. */
+		if (!directoryListingComponent.isCached(directoryListingResult)) {
+			directoryInvalidated(fullPath);
+		}
+	}
+
+	/**
+	 * Obtains the gzip compressed body of a rendered response, compressing the body only the first time.
+	 * If the response is cached, the compressed body is counted towards the size of the cache.
+	 * @param key The key of the response
+	 * @param renderedResponse The rendered response
+	 * @return The compressed body
+	 */
+	public byte[] getGzipBody(String key, RenderedResponse renderedResponse) {
+		byte[] gzipBody = renderedResponse.getGzipBody();
+		if (gzipBody != null) {
+			return gzipBody;
+		}
+		gzipBody = compress(renderedResponse.getBody());
+		synchronized (this) {
+			/* Another request may have compressed the body at the same time. */
+			if (renderedResponse.getGzipBody() != null) {
+				return renderedResponse.getGzipBody();
+			}
+			renderedResponse.setGzipBody(gzipBody);
+			if (insertionOrder.get(key) == renderedResponse) {
+				totalBytes += gzipBody.length;
+				removeOldestResponses();
+			}
+		}
+		return gzipBody;
+	}
+
+	/**
+	 * Removes the cached responses of a directory.
+	 * @param fullPath The canonical path of the directory
+	 */
+	@Override
+	public synchronized void directoryInvalidated(String fullPath) {
+		Set<String> keys = keysByPath.remove(fullPath);
+		if (keys != null) {
+			Debug.debugln("Removing " + keys.size() + " rendered responses of " + fullPath + " from cache.");
+			for (String key : keys) {
+				removeResponse(key);
+			}
+		}
+	}
+
+	/* Removes a single cached response, the caller must hold the lock on this. */
+	private void removeResponse(String key) {
+		RenderedResponse renderedResponse = insertionOrder.remove(key);
+		if (renderedResponse != null) {
+			responseMap.remove(key);
+			totalBytes -= renderedResponse.getSize();
+		}
+	}
+
+	/* Makes room by removing the oldest responses, the caller must hold the lock on this. */
+	private void removeOldestResponses() {
+		Iterator<Map.Entry<String, RenderedResponse>> oldestIterator = insertionOrder.entrySet().iterator();
+		while (totalBytes > maxBytes && oldestIterator.hasNext()) {
+			Map.Entry<String, RenderedResponse> oldest = oldestIterator.next();
+			oldestIterator.remove();
+			responseMap.remove(oldest.getKey());
+			totalBytes -= oldest.getValue().getSize();
+			String oldestPath = oldest.getValue().getFullPath();
+			Set<String> oldestKeys = keysByPath.get(oldestPath);
+			if (oldestKeys != null) {
+				oldestKeys.remove(oldest.getKey());
+				if (oldestKeys.isEmpty()) {
+					keysByPath.remove(oldestPath);
+				}
+			}
+		}
+	}
+
+	/* Compresses a body with gzip. */
+	private static byte[] compress(byte[] body) {
+		ByteArrayOutputStream compressedBody = new ByteArrayOutputStream(body.length / 4 + 64);
+		try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(compressedBody, 8192)) {
+			gzipOutputStream.write(body);
+		} catch (IOException ioe) {
+			/* Writing to memory does not fail. */
+			throw new UncheckedIOException(ioe);
+		}
+		return compressedBody.toByteArray();
+	}
+
+}
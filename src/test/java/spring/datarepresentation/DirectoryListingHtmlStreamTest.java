@@ -0,0 +1,184 @@
+package spring.datarepresentation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+import spring.directorylisting.DirectoryListingEntry;
+import spring.rest.ListingPage;
+
+/**
+ * Tests of the HTML written for a page of a directory listing, against the HTML of the earlier renderer
+ * @author N. H. Weideman
+ */
+public class DirectoryListingHtmlStreamTest {
+
+	private static final String URL = "http://localhost:8080/list?dpath=/srv/data&page=2&psize=2";
+
+	/*
+	 * The page below as it was rendered by DirectoryListingHtmlResponse and HtmlList, before the HTML was streamed.
+	 * The attributes of an entry are in the order of the attribute map of a response entry.
+	 */
+	private static final String GOLDEN_HTML = "<h>Directory listing for: \"<a href=\"http://localhost:8080/list?dpath=/srv/data&page=2&psize=2\">/srv/data</a>\"</h><br>\n"
+					+ "<br>\n"
+					+ "Page: 2/3<br>\n"
+					+ "<a href=\"http://localhost:8080/list?dpath=/srv/data&page=1&psize=2\">first</a> <a href=\"http://localhost:8080/list?dpath=/srv/data&page=1&psize=2\">prev</a> <a href=\"http://localhost:8080/list?dpath=/srv/data&page=3&psize=2\">next</a> <a href=\"http://localhost:8080/list?dpath=/srv/data&page=3&psize=2\">last</a><br>\n"
+					+ "<ul><br>\n"
+					+ "<li><a href=\"http://localhost:8080/list?psize=2&dpath=/srv/data/reports&page=1\">reports</a><br>\n"
+					+ "<ul><br>\n"
+					+ "<li>Is Symbolic Link: false</li>\n"
+					+ "<li>File Key: (dev=803,ino=1201)</li>\n"
+					+ "<li>Is Directory: true</li>\n"
+					+ "<li>Is Regular File: false</li>\n"
+					+ "<li>Size: 4096</li>\n"
+					+ "<li>Is Other: false</li>\n"
+					+ "<li>Creation Time: 2017-08-21T10:15:30Z</li>\n"
+					+ "<li>Last Modified Time: 2017-08-22T08:00:00.123456789Z</li>\n"
+					+ "<li>Last Access Time: 2017-09-01T00:00:00.5Z</li>\n"
+					+ "</ul><br>\n"
+					+ "</li>\n"
+					+ "<li>notes.txt<br>\n"
+					+ "<ul><br>\n"
+					+ "<li>Is Symbolic Link: false</li>\n"
+					+ "<li>File Key: (dev=803,ino=1202)</li>\n"
+					+ "<li>Is Directory: false</li>\n"
+					+ "<li>Is Regular File: true</li>\n"
+					+ "<li>Size: 1234</li>\n"
+					+ "<li>Is Other: false</li>\n"
+					+ "<li>Creation Time: 1969-12-31T23:59:59.25Z</li>\n"
+					+ "<li>Last Modified Time: 2000-02-29T12:00:00.01Z</li>\n"
+					+ "<li>Last Access Time: 2261-01-01T00:00:00Z</li>\n"
+					+ "</ul><br>\n"
+					+ "</li>\n"
+					+ "</ul><br>\n"
+					+ "Page: 2/3<br>\n"
+					+ "<a href=\"http://localhost:8080/list?dpath=/srv/data&page=1&psize=2\">first</a> <a href=\"http://localhost:8080/list?dpath=/srv/data&page=1&psize=2\">prev</a> <a href=\"http://localhost:8080/list?dpath=/srv/data&page=3&psize=2\">next</a> <a href=\"http://localhost:8080/list?dpath=/srv/data&page=3&psize=2\">last</a><br>\n";
+
+	@Test
+	public void pageMatchesEarlierRenderer() throws IOException {
+		List<DirectoryListingEntry> directoryEntries = Arrays.asList(
+						new DirectoryListingEntry("reports", new FixedFileAttributes(true, 4096, 1201,
+										secondsTime(1503310530L, 0), secondsTime(1503388800L, 123456789), secondsTime(1504224000L, 500000000))),
+						new DirectoryListingEntry("notes.txt", new FixedFileAttributes(false, 1234, 1202,
+										secondsTime(-1L, 250000000), secondsTime(951825600L, 10000000), secondsTime(9183110400L, 0))));
+
+		assertEquals(GOLDEN_HTML, render("/srv/data", "/srv/data", directoryEntries));
+	}
+
+	@Test
+	public void fileNamesAndPathAreEscaped() throws IOException {
+		List<DirectoryListingEntry> directoryEntries = Arrays.asList(
+						new DirectoryListingEntry("<b>&\"dir\"", new FixedFileAttributes(true, 4096, 1, secondsTime(0, 0), secondsTime(0, 0), secondsTime(0, 0))),
+						new DirectoryListingEntry("a<b & c\".txt", new FixedFileAttributes(false, 1, 2, secondsTime(0, 0), secondsTime(0, 0), secondsTime(0, 0))));
+
+		String html = render("/srv/<i>&\"x\"", "/srv/data", directoryEntries);
+		assertTrue(html.contains(">/srv/&lt;i&gt;&amp;&quot;x&quot;</a>"));
+		assertTrue(html.contains("\">&lt;b&gt;&amp;&quot;dir&quot;</a><br>\n"));
+		assertTrue(html.contains("<li>a&lt;b &amp; c&quot;.txt<br>\n"));
+		assertFalse(html.contains("<b>"));
+		assertFalse(html.contains("<i>"));
+		/* The link to the directory is percent-encoded, so none of its characters need a character reference. */
+		assertTrue(html.contains("<a href=\"http://localhost:8080/list?psize=2&dpath=/srv/data/%3Cb%3E%26%22dir%22&page=1\">"));
+	}
+
+	/* Renders the second of three pages of a directory with the given entries. */
+	private static String render(String dpath, String directoryPath, List<DirectoryListingEntry> directoryEntries) throws IOException {
+		ListingPage listingPage = new ListingPage(URL,
+						dpath,
+						directoryPath,
+						directoryEntries,
+						3,
+						2,
+						2,
+						URL.replace("page=2", "page=1"),
+						URL.replace("page=2", "page=3"),
+						URL.replace("page=2", "page=1"),
+						URL.replace("page=2", "page=3"));
+		ByteArrayOutputStream htmlBody = new ByteArrayOutputStream();
+		new DirectoryListingHtmlStream(listingPage).writeTo(htmlBody);
+		return new String(htmlBody.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	private static FileTime secondsTime(long seconds, long nanos) {
+		return FileTime.from(TimeUnit.SECONDS.toNanos(seconds) + nanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * The attributes of a file that does not exist, with a fixed file key like the ones of the default file system.
+	 */
+	private static class FixedFileAttributes implements BasicFileAttributes {
+
+		private final boolean directory;
+		private final long size;
+		private final long inode;
+		private final FileTime creationTime;
+		private final FileTime lastModifiedTime;
+		private final FileTime lastAccessTime;
+
+		private FixedFileAttributes(boolean directory, long size, long inode, FileTime creationTime, FileTime lastModifiedTime, FileTime lastAccessTime) {
+			this.directory = directory;
+			this.size = size;
+			this.inode = inode;
+			this.creationTime = creationTime;
+			this.lastModifiedTime = lastModifiedTime;
+			this.lastAccessTime = lastAccessTime;
+		}
+
+		@Override
+		public FileTime lastModifiedTime() {
+			return lastModifiedTime;
+		}
+
+		@Override
+		public FileTime lastAccessTime() {
+			return lastAccessTime;
+		}
+
+		@Override
+		public FileTime creationTime() {
+			return creationTime;
+		}
+
+		@Override
+		public boolean isRegularFile() {
+			return !directory;
+		}
+
+		@Override
+		public boolean isDirectory() {
+			return directory;
+		}
+
+		@Override
+		public boolean isSymbolicLink() {
+			return false;
+		}
+
+		@Override
+		public boolean isOther() {
+			return false;
+		}
+
+		@Override
+		public long size() {
+			return size;
+		}
+
+		@Override
+		public Object fileKey() {
+			return "(dev=803,ino=" + inode + ")";
+		}
+
+	}
+
+}
@@ -0,0 +1,505 @@
+package spring.directorylisting;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.AccessMode;
+import java.nio.file.CopyOption;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileStore;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.FileAttributeView;
+import java.nio.file.attribute.UserPrincipalLookupService;
+import java.nio.file.spi.FileSystemProvider;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A file system for tests that passes every call on to the default file system and counts the calls that read attributes or directories.
+ * A file can be made to vanish just before its attributes are read, as if it had been deleted after its directory was read,
+ * and a directory can be made slow to read, by holding its reads until they are released.
+ * An action can be run once a directory has been read, to change the directory before its listing is cached.
+ * @author N. H. Weideman
+ */
+class CountingFileSystem extends FileSystem {
+
+	private final FileSystem delegate;
+	private final CountingFileSystemProvider provider;
+
+	/* The number of attribute reads of each path, by the path in the default file system. */
+	private final ConcurrentHashMap<String, AtomicInteger> attributeReads;
+	private final AtomicInteger directoryReads;
+
+	/* The name of a file that is deleted when its attributes are first read, NULL if none. */
+	private volatile String vanishingFileName;
+
+	/* The name of a directory whose reads wait until the latch is released, NULL if none. */
+	private volatile String slowDirectoryName;
+	private volatile CountDownLatch slowDirectoryRelease;
+
+	/* The action to run when the next directory stream is closed, NULL if none. */
+	private final AtomicReference<Runnable> directoryReadAction;
+
+	CountingFileSystem() {
+		this.delegate = FileSystems.getDefault();
+		this.provider = new CountingFileSystemProvider();
+		this.attributeReads = new ConcurrentHashMap<String, AtomicInteger>();
+		this.directoryReads = new AtomicInteger();
+		this.directoryReadAction = new AtomicReference<Runnable>();
+	}
+
+	/**
+	 * Returns the number of times the attributes of each path were read.
+	 * @return The number of attribute reads by path
+	 */
+	Map<String, AtomicInteger> getAttributeReads() {
+		return attributeReads;
+	}
+
+	/**
+	 * Returns the total number of times attributes were read.
+	 * @return The number of attribute reads
+	 */
+	int getAttributeReadCount() {
+		int attributeReadCount = 0;
+		for (AtomicInteger pathReads : attributeReads.values()) {
+			attributeReadCount += pathReads.get();
+		}
+		return attributeReadCount;
+	}
+
+	/**
+	 * Returns the number of directory streams that were opened.
+	 * @return The number of directory reads
+	 */
+	int getDirectoryReadCount() {
+		return directoryReads.get();
+	}
+
+	/**
+	 * Sets the name of a file that is deleted just before its attributes are read.
+	 * @param vanishingFileName The file name
+	 */
+	void setVanishingFileName(String vanishingFileName) {
+		this.vanishingFileName = vanishingFileName;
+	}
+
+	/**
+	 * Sets the name of a directory whose reads wait until a latch is released.
+	 * @param slowDirectoryName The directory name
+	 * @param slowDirectoryRelease The latch releasing the reads
+	 */
+	void setSlowDirectory(String slowDirectoryName, CountDownLatch slowDirectoryRelease) {
+		this.slowDirectoryRelease = slowDirectoryRelease;
+		this.slowDirectoryName = slowDirectoryName;
+	}
+
+	/**
+	 * Sets an action to run once, when the next directory stream is closed after all its entries have been read.
+	 * @param directoryReadAction The action
+	 */
+	void setDirectoryReadAction(Runnable directoryReadAction) {
+		this.directoryReadAction.set(directoryReadAction);
+	}
+
+	/* Returns the path of the default file system that a path of this file system stands for. */
+	private static Path unwrap(Path path) {
+		return (path instanceof CountingPath) ? ((CountingPath) path).delegate : path;
+	}
+
+	/* Returns the path of this file system for a path of the default file system. */
+	private Path wrap(Path path) {
+		return (path == null) ? null : new CountingPath(path);
+	}
+
+	@Override
+	public FileSystemProvider provider() {
+		return provider;
+	}
+
+	@Override
+	public void close() throws IOException {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public boolean isOpen() {
+		return true;
+	}
+
+	@Override
+	public boolean isReadOnly() {
+		return false;
+	}
+
+	@Override
+	public String getSeparator() {
+		return delegate.getSeparator();
+	}
+
+	@Override
+	public Iterable<Path> getRootDirectories() {
+		List<Path> rootDirectories = new ArrayList<Path>();
+		for (Path rootDirectory : delegate.getRootDirectories()) {
+			rootDirectories.add(wrap(rootDirectory));
+		}
+		return rootDirectories;
+	}
+
+	@Override
+	public Iterable<FileStore> getFileStores() {
+		return delegate.getFileStores();
+	}
+
+	@Override
+	public Set<String> supportedFileAttributeViews() {
+		return delegate.supportedFileAttributeViews();
+	}
+
+	@Override
+	public Path getPath(String first, String... more) {
+		return wrap(delegate.getPath(first, more));
+	}
+
+	@Override
+	public PathMatcher getPathMatcher(String syntaxAndPattern) {
+		final PathMatcher pathMatcher = delegate.getPathMatcher(syntaxAndPattern);
+		return path -> pathMatcher.matches(unwrap(path));
+	}
+
+	@Override
+	public UserPrincipalLookupService getUserPrincipalLookupService() {
+		return delegate.getUserPrincipalLookupService();
+	}
+
+	@Override
+	public WatchService newWatchService() throws IOException {
+		return delegate.newWatchService();
+	}
+
+	/**
+	 * The provider of the counting file system, which counts the calls and passes them on to the provider of the default file system.
+	 */
+	private class CountingFileSystemProvider extends FileSystemProvider {
+
+		private final FileSystemProvider delegateProvider = delegate.provider();
+
+		@Override
+		public String getScheme() {
+			return "counting";
+		}
+
+		@Override
+		public FileSystem newFileSystem(URI uri, Map<String, ?> env) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public FileSystem getFileSystem(URI uri) {
+			return CountingFileSystem.this;
+		}
+
+		@Override
+		public Path getPath(URI uri) {
+			return wrap(delegateProvider.getPath(uri));
+		}
+
+		@Override
+		public SeekableByteChannel newByteChannel(Path path, Set<? extends OpenOption> options, FileAttribute<?>... attrs) throws IOException {
+			return delegateProvider.newByteChannel(unwrap(path), options, attrs);
+		}
+
+		@Override
+		public DirectoryStream<Path> newDirectoryStream(Path dir, final DirectoryStream.Filter<? super Path> filter) throws IOException {
+			directoryReads.incrementAndGet();
+			Path directoryName = unwrap(dir).getFileName();
+			if (directoryName != null && directoryName.toString().equals(slowDirectoryName)) {
+				try {
+					slowDirectoryRelease.await();
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted while reading a slow directory");
+				}
+			}
+			final DirectoryStream<Path> directoryStream = delegateProvider.newDirectoryStream(unwrap(dir), path -> filter.accept(wrap(path)));
+			return new DirectoryStream<Path>() {
+				@Override
+				public Iterator<Path> iterator() {
+					final Iterator<Path> iterator = directoryStream.iterator();
+					return new Iterator<Path>() {
+						@Override
+						public boolean hasNext() {
+							return iterator.hasNext();
+						}
+
+						@Override
+						public Path next() {
+							return wrap(iterator.next());
+						}
+					};
+				}
+
+				@Override
+				public void close() throws IOException {
+					directoryStream.close();
+					Runnable action = directoryReadAction.getAndSet(null);
+					if (action != null) {
+						action.run();
+					}
+				}
+			};
+		}
+
+		@Override
+		public void createDirectory(Path dir, FileAttribute<?>... attrs) throws IOException {
+			delegateProvider.createDirectory(unwrap(dir), attrs);
+		}
+
+		@Override
+		public void delete(Path path) throws IOException {
+			delegateProvider.delete(unwrap(path));
+		}
+
+		@Override
+		public void copy(Path source, Path target, CopyOption... options) throws IOException {
+			delegateProvider.copy(unwrap(source), unwrap(target), options);
+		}
+
+		@Override
+		public void move(Path source, Path target, CopyOption... options) throws IOException {
+			delegateProvider.move(unwrap(source), unwrap(target), options);
+		}
+
+		@Override
+		public boolean isSameFile(Path path, Path path2) throws IOException {
+			return delegateProvider.isSameFile(unwrap(path), unwrap(path2));
+		}
+
+		@Override
+		public boolean isHidden(Path path) throws IOException {
+			return delegateProvider.isHidden(unwrap(path));
+		}
+
+		@Override
+		public FileStore getFileStore(Path path) throws IOException {
+			return delegateProvider.getFileStore(unwrap(path));
+		}
+
+		@Override
+		public void checkAccess(Path path, AccessMode... modes) throws IOException {
+			delegateProvider.checkAccess(unwrap(path), modes);
+		}
+
+		@Override
+		public <V extends FileAttributeView> V getFileAttributeView(Path path, Class<V> type, LinkOption... options) {
+			return delegateProvider.getFileAttributeView(unwrap(path), type, options);
+		}
+
+		@Override
+		public <A extends BasicFileAttributes> A readAttributes(Path path, Class<A> type, LinkOption... options) throws IOException {
+			Path delegatePath = unwrap(path);
+			AtomicInteger pathReads = attributeReads.computeIfAbsent(delegatePath.toString(), key -> new AtomicInteger());
+			pathReads.incrementAndGet();
+			Path fileName = delegatePath.getFileName();
+			if (fileName != null && fileName.toString().equals(vanishingFileName)) {
+				Files.deleteIfExists(delegatePath);
+			}
+			return delegateProvider.readAttributes(delegatePath, type, options);
+		}
+
+		@Override
+		public Map<String, Object> readAttributes(Path path, String attributes, LinkOption... options) throws IOException {
+			attributeReads.computeIfAbsent(unwrap(path).toString(), key -> new AtomicInteger()).incrementAndGet();
+			return delegateProvider.readAttributes(unwrap(path), attributes, options);
+		}
+
+		@Override
+		public void setAttribute(Path path, String attribute, Object value, LinkOption... options) throws IOException {
+			delegateProvider.setAttribute(unwrap(path), attribute, value, options);
+		}
+
+	}
+
+	/**
+	 * A path of the counting file system, which stands for a path of the default file system.
+	 */
+	private class CountingPath implements Path {
+
+		private final Path delegate;
+
+		private CountingPath(Path delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public FileSystem getFileSystem() {
+			return CountingFileSystem.this;
+		}
+
+		@Override
+		public boolean isAbsolute() {
+			return delegate.isAbsolute();
+		}
+
+		@Override
+		public Path getRoot() {
+			return wrap(delegate.getRoot());
+		}
+
+		@Override
+		public Path getFileName() {
+			return wrap(delegate.getFileName());
+		}
+
+		@Override
+		public Path getParent() {
+			return wrap(delegate.getParent());
+		}
+
+		@Override
+		public int getNameCount() {
+			return delegate.getNameCount();
+		}
+
+		@Override
+		public Path getName(int index) {
+			return wrap(delegate.getName(index));
+		}
+
+		@Override
+		public Path subpath(int beginIndex, int endIndex) {
+			return wrap(delegate.subpath(beginIndex, endIndex));
+		}
+
+		@Override
+		public boolean startsWith(Path other) {
+			return delegate.startsWith(unwrap(other));
+		}
+
+		@Override
+		public boolean startsWith(String other) {
+			return delegate.startsWith(other);
+		}
+
+		@Override
+		public boolean endsWith(Path other) {
+			return delegate.endsWith(unwrap(other));
+		}
+
+		@Override
+		public boolean endsWith(String other) {
+			return delegate.endsWith(other);
+		}
+
+		@Override
+		public Path normalize() {
+			return wrap(delegate.normalize());
+		}
+
+		@Override
+		public Path resolve(Path other) {
+			return wrap(delegate.resolve(unwrap(other)));
+		}
+
+		@Override
+		public Path resolve(String other) {
+			return wrap(delegate.resolve(other));
+		}
+
+		@Override
+		public Path resolveSibling(Path other) {
+			return wrap(delegate.resolveSibling(unwrap(other)));
+		}
+
+		@Override
+		public Path resolveSibling(String other) {
+			return wrap(delegate.resolveSibling(other));
+		}
+
+		@Override
+		public Path relativize(Path other) {
+			return wrap(delegate.relativize(unwrap(other)));
+		}
+
+		@Override
+		public URI toUri() {
+			return delegate.toUri();
+		}
+
+		@Override
+		public Path toAbsolutePath() {
+			return wrap(delegate.toAbsolutePath());
+		}
+
+		@Override
+		public Path toRealPath(LinkOption... options) throws IOException {
+			return wrap(delegate.toRealPath(options));
+		}
+
+		@Override
+		public File toFile() {
+			return delegate.toFile();
+		}
+
+		@Override
+		public WatchKey register(WatchService watcher, WatchEvent.Kind<?>[] events, WatchEvent.Modifier... modifiers) throws IOException {
+			return delegate.register(watcher, events, modifiers);
+		}
+
+		@Override
+		public WatchKey register(WatchService watcher, WatchEvent.Kind<?>... events) throws IOException {
+			return delegate.register(watcher, events);
+		}
+
+		@Override
+		public Iterator<Path> iterator() {
+			List<Path> names = new ArrayList<Path>();
+			for (Path name : delegate) {
+				names.add(wrap(name));
+			}
+			return names.iterator();
+		}
+
+		@Override
+		public int compareTo(Path other) {
+			return delegate.compareTo(unwrap(other));
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return (other instanceof CountingPath) && delegate.equals(((CountingPath) other).delegate);
+		}
+
+		@Override
+		public int hashCode() {
+			return delegate.hashCode();
+		}
+
+		@Override
+		public String toString() {
+			return delegate.toString();
+		}
+
+	}
+
+}
@@ -0,0 +1,222 @@
+package spring.directorylisting;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests of the calls the directory listing component makes to the file system to list a directory
+ * @author N. H. Weideman
+ */
+public class DirectoryListingComponentTest {
+
+	private static final int NUM_FILES = 10;
+
+	/* The time in milliseconds to wait for watch events to be applied to the cache. */
+	private static final long WATCH_TIMEOUT = 10000;
+
+	@Rule
+	public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private final CountingFileSystem countingFileSystem = new CountingFileSystem();
+
+	private DirectoryListingComponent directoryListingComponent;
+
+	/* A directory holding the files f0 to f9, the directory "sub", a symbolic link "link" to f0 and a file "vanishing" that is deleted when it is read. */
+	private String directoryPath;
+
+	@Before
+	public void createDirectory() throws IOException {
+		File directory = temporaryFolder.newFolder("listed");
+		for (int i = 0; i < NUM_FILES; i++) {
+			new File(directory, "f" + i).createNewFile();
+		}
+		new File(directory, "sub").mkdir();
+		Files.createSymbolicLink(new File(directory, "link").toPath(), new File(directory, "f0").toPath());
+		new File(directory, "vanishing").createNewFile();
+		countingFileSystem.setVanishingFileName("vanishing");
+		directoryPath = directory.getCanonicalPath();
+	}
+
+	@After
+	public void shutdownComponent() {
+		if (directoryListingComponent != null) {
+			directoryListingComponent.shutdown();
+		}
+	}
+
+	@Test
+	public void serialListingReadsEachEntryOnce() throws IOException {
+		checkListingReadsEachEntryOnce(1);
+	}
+
+	@Test
+	public void parallelListingReadsEachEntryOnce() throws IOException {
+		checkListingReadsEachEntryOnce(3);
+	}
+
+	@Test
+	public void watchEventsPatchCachedListing() throws IOException, InterruptedException {
+		/* Without the vanished file the directory does not change while it is read, so its listing is cached and watched. */
+		countingFileSystem.setVanishingFileName(null);
+		directoryListingComponent = createComponent(100, 1);
+		directoryListingComponent.getListing(directoryPath);
+
+		new File(directoryPath, "created").createNewFile();
+		new File(directoryPath, "f1").delete();
+		Files.write(new File(directoryPath, "f2").toPath(), new byte[] {1, 2, 3});
+
+		long deadline = System.currentTimeMillis() + WATCH_TIMEOUT;
+		Map<String, DirectoryListingEntry> directoryEntries = getDirectoryEntries(directoryListingComponent.getListing(directoryPath));
+		while (!isPatched(directoryEntries) && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+			directoryEntries = getDirectoryEntries(directoryListingComponent.getListing(directoryPath));
+		}
+		assertTrue(directoryEntries.keySet().toString(), isPatched(directoryEntries));
+		/* The changed entries were read, instead of the whole directory. */
+		assertEquals(1, countingFileSystem.getDirectoryReadCount());
+	}
+
+	@Test
+	public void requestsForDirectoryBeingReadShareTheRead() throws Exception {
+		countingFileSystem.setVanishingFileName(null);
+		CountDownLatch slowDirectoryRelease = new CountDownLatch(1);
+		countingFileSystem.setSlowDirectory("sub", slowDirectoryRelease);
+		/* Two I/O threads with room for 16 waiting reads, far fewer than the requests for the slow directory. */
+		directoryListingComponent = createComponent(100, 1);
+		String slowDirectoryPath = new File(directoryPath, "sub").getPath();
+		List<CompletableFuture<DirectoryListingResult>> slowListingFutures = new ArrayList<CompletableFuture<DirectoryListingResult>>();
+		for (int i = 0; i < 40; i++) {
+			slowListingFutures.add(directoryListingComponent.getListingAsync(slowDirectoryPath));
+		}
+
+		/* Another directory is read while the slow directory is being read. */
+		DirectoryListingResult directoryListingResult = directoryListingComponent.getListingAsync(directoryPath).get(WATCH_TIMEOUT, TimeUnit.MILLISECONDS);
+		assertEquals(directoryPath, directoryListingResult.getFullPath());
+
+		slowDirectoryRelease.countDown();
+		for (CompletableFuture<DirectoryListingResult> slowListingFuture : slowListingFutures) {
+			assertEquals(slowDirectoryPath, slowListingFuture.get(WATCH_TIMEOUT, TimeUnit.MILLISECONDS).getFullPath());
+		}
+		assertEquals(2, countingFileSystem.getDirectoryReadCount());
+		assertEquals(39, directoryListingComponent.getCoalescedRequestCount());
+	}
+
+	@Test
+	public void usageFollowsChangesBelowUncachedSubdirectory() throws IOException {
+		countingFileSystem.setVanishingFileName(null);
+		/* Only one listing fits in the cache, so the listing of "sub" is not admitted while the listing of the directory is cached. */
+		directoryListingComponent = createComponent(1, 1);
+		assertEquals(0, directoryListingComponent.getUsage(directoryPath).getTotalSize());
+
+		Files.write(new File(directoryPath, "sub/written").toPath(), new byte[] {1, 2, 3});
+		DirectoryUsage directoryUsage = directoryListingComponent.getUsage(directoryPath);
+		assertEquals(3, directoryUsage.getTotalSize());
+		assertEquals(NUM_FILES + 2, directoryUsage.getFileCount());
+	}
+
+	@Test
+	public void writeWhileListingIsAppliedToCachedListing() throws IOException, InterruptedException {
+		countingFileSystem.setVanishingFileName(null);
+		/* Writing a file in place does not change the modification time of its directory. */
+		final File writtenFile = new File(directoryPath, "f2");
+		countingFileSystem.setDirectoryReadAction(() -> {
+			try {
+				Files.write(writtenFile.toPath(), new byte[] {1, 2, 3});
+			} catch (IOException ioe) {
+				throw new UncheckedIOException(ioe);
+			}
+		});
+		directoryListingComponent = createComponent(100, 1);
+		directoryListingComponent.getListing(directoryPath);
+
+		long deadline = System.currentTimeMillis() + WATCH_TIMEOUT;
+		DirectoryListingEntry writtenEntry = getDirectoryEntries(directoryListingComponent.getListing(directoryPath)).get("f2");
+		while (writtenEntry.getFileAttributes().size() != 3 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+			writtenEntry = getDirectoryEntries(directoryListingComponent.getListing(directoryPath)).get("f2");
+		}
+		assertEquals(3, writtenEntry.getFileAttributes().size());
+		assertEquals(1, countingFileSystem.getDirectoryReadCount());
+	}
+
+	/* Returns whether the changes made to the directory have been applied to its listing. */
+	private static boolean isPatched(Map<String, DirectoryListingEntry> directoryEntries) {
+		DirectoryListingEntry writtenEntry = directoryEntries.get("f2");
+		return directoryEntries.containsKey("created")
+						&& !directoryEntries.containsKey("f1")
+						&& writtenEntry != null
+						&& writtenEntry.getFileAttributes().size() == 3;
+	}
+
+	/* Returns the entries of a listing by file name. */
+	private static Map<String, DirectoryListingEntry> getDirectoryEntries(DirectoryListingResult directoryListingResult) {
+		Map<String, DirectoryListingEntry> directoryEntries = new HashMap<String, DirectoryListingEntry>();
+		for (DirectoryListingEntry directoryEntry : directoryListingResult.getDirectoryEntries()) {
+			directoryEntries.put(directoryEntry.getFileName(), directoryEntry);
+		}
+		return directoryEntries;
+	}
+
+	/* Creates a component that reads through the counting file system. */
+	private DirectoryListingComponent createComponent(int maxCacheEntries, int statParallelism) throws IOException {
+		return new DirectoryListingComponent(countingFileSystem,
+						new DirectoryListingMetrics(),
+						maxCacheEntries,
+						1 << 24,
+						statParallelism,
+						4,
+						2,
+						16,
+						1,
+						"",
+						300000);
+	}
+
+	/* Lists the directory and checks that the attributes of every path were read once, and that the symbolic link and the vanished file were left out. */
+	private void checkListingReadsEachEntryOnce(int statParallelism) throws IOException {
+		directoryListingComponent = createComponent(100, statParallelism);
+		DirectoryListingResult directoryListingResult = directoryListingComponent.getListing(directoryPath);
+
+		assertEquals(1, countingFileSystem.getDirectoryReadCount());
+		/* Every entry of the directory, including the symbolic link and the vanished file, and the directory and its parent. */
+		int numDirectoryEntries = NUM_FILES + 3;
+		assertEquals(numDirectoryEntries + 2, countingFileSystem.getAttributeReadCount());
+		for (Map.Entry<String, AtomicInteger> pathReads : countingFileSystem.getAttributeReads().entrySet()) {
+			assertEquals(pathReads.getKey(), 1, pathReads.getValue().get());
+		}
+
+		Set<String> expectedFileNames = new HashSet<String>();
+		expectedFileNames.add(".");
+		expectedFileNames.add("..");
+		expectedFileNames.add("sub");
+		for (int i = 0; i < NUM_FILES; i++) {
+			expectedFileNames.add("f" + i);
+		}
+		Set<String> fileNames = new HashSet<String>();
+		for (DirectoryListingEntry directoryEntry : directoryListingResult.getDirectoryEntries()) {
+			fileNames.add(directoryEntry.getFileName());
+		}
+		assertEquals(expectedFileNames, fileNames);
+	}
+
+}
@@ -0,0 +1,74 @@
+package spring.directorylisting;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests of which directories the pre-warmer crawls
+ * @author N. H. Weideman
+ */
+public class DirectoryListingPrewarmerTest {
+
+	/* The time in milliseconds to wait for the crawl to finish. */
+	private static final long CRAWL_TIMEOUT = 10000;
+
+	@Rule
+	public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private final CountingFileSystem countingFileSystem = new CountingFileSystem();
+
+	private DirectoryListingComponent directoryListingComponent;
+
+	@Before
+	public void createComponent() throws IOException {
+		directoryListingComponent = new DirectoryListingComponent(countingFileSystem,
+						new DirectoryListingMetrics(),
+						100,
+						1 << 24,
+						1,
+						4,
+						2,
+						16,
+						1,
+						"",
+						300000);
+	}
+
+	@After
+	public void shutdownComponent() {
+		directoryListingComponent.shutdown();
+	}
+
+	@Test
+	public void blankRootsAreSkipped() throws IOException, InterruptedException {
+		File root = temporaryFolder.newFolder("root");
+		new File(root, "sub").mkdir();
+
+		/* The roots as they are split from "  root  , ," with a trailing comma. */
+		DirectoryListingPrewarmer directoryListingPrewarmer = new DirectoryListingPrewarmer(directoryListingComponent,
+						new String[] {"  " + root.getCanonicalPath() + "  ", " ", ""},
+						0,
+						2);
+		directoryListingPrewarmer.start();
+		long deadline = System.currentTimeMillis() + CRAWL_TIMEOUT;
+		while (!directoryListingPrewarmer.getProgress().isReady() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		directoryListingPrewarmer.stop();
+
+		PrewarmProgress prewarmProgress = directoryListingPrewarmer.getProgress();
+		assertTrue(prewarmProgress.isReady());
+		assertEquals(1, prewarmProgress.getDirectoryCount());
+		assertEquals(0, prewarmProgress.getErrorCount());
+		assertEquals(1, countingFileSystem.getDirectoryReadCount());
+	}
+
+}
@@ -0,0 +1,113 @@
+package spring.directorylisting;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests of the sort orders of the entries of a directory listing result
+ * @author N. H. Weideman
+ */
+public class DirectoryListingResultTest {
+
+	private static final int NUM_FILES = 300;
+
+	private static final String[] EXTENSIONS = {"", ".log", ".txt", ".tar.gz"};
+
+	@Rule
+	public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	/* Entries in no particular order, with many equal sizes, modification times and types, so that ties must be broken by file name. */
+	private List<DirectoryListingEntry> directoryEntries;
+	private DirectoryListingResult directoryListingResult;
+
+	@Before
+	public void createResult() throws IOException {
+		File directory = temporaryFolder.newFolder("sorted");
+		directoryEntries = new ArrayList<DirectoryListingEntry>();
+		Random random = new Random(17);
+		for (int i = 0; i < NUM_FILES; i++) {
+			File file = new File(directory, "f" + random.nextInt(100000) + "_" + i + EXTENSIONS[i % EXTENSIONS.length]);
+			if (i % 10 == 0) {
+				file.mkdir();
+			} else {
+				try (FileOutputStream outputStream = new FileOutputStream(file)) {
+					outputStream.write(new byte[random.nextInt(8)]);
+				}
+			}
+			file.setLastModified(1000000000000L + 1000L * random.nextInt(5));
+			directoryEntries.add(new DirectoryListingEntry(file.getName(), Files.readAttributes(file.toPath(), BasicFileAttributes.class)));
+		}
+		directoryListingResult = new DirectoryListingResult(directory.getPath(), directoryEntries);
+	}
+
+	@Test
+	public void entriesAreSortedByName() {
+		checkOrder(DirectoryListingSortKey.NAME, (e1, e2) -> 0);
+	}
+
+	@Test
+	public void entriesAreSortedBySize() {
+		checkOrder(DirectoryListingSortKey.SIZE, (e1, e2) -> Long.compare(e1.getFileAttributes().size(), e2.getFileAttributes().size()));
+	}
+
+	@Test
+	public void entriesAreSortedByModificationTime() {
+		checkOrder(DirectoryListingSortKey.MTIME, (e1, e2) -> e1.getFileAttributes().lastModifiedTime().compareTo(e2.getFileAttributes().lastModifiedTime()));
+	}
+
+	@Test
+	public void entriesAreSortedByType() {
+		checkOrder(DirectoryListingSortKey.TYPE, (e1, e2) -> {
+			int result = Integer.compare(getKind(e1), getKind(e2));
+			return (result != 0) ? result : getExtension(e1).compareTo(getExtension(e2));
+		});
+	}
+
+	/* Checks the ascending and descending orders of a sort key against the entries sorted by a comparator of the key, ties broken by file name. */
+	private void checkOrder(DirectoryListingSortKey sortKey, Comparator<DirectoryListingEntry> keyComparator) {
+		List<String> expectedFileNames = new ArrayList<String>();
+		List<DirectoryListingEntry> sortedEntries = new ArrayList<DirectoryListingEntry>(directoryEntries);
+		sortedEntries.sort(keyComparator.thenComparing(DirectoryListingEntry::getFileName));
+		for (DirectoryListingEntry directoryEntry : sortedEntries) {
+			expectedFileNames.add(directoryEntry.getFileName());
+		}
+		assertEquals(expectedFileNames, getFileNames(directoryListingResult.getOrderedEntries(sortKey, false)));
+
+		Collections.reverse(expectedFileNames);
+		assertEquals(expectedFileNames, getFileNames(directoryListingResult.getOrderedEntries(sortKey, true)));
+	}
+
+	private static List<String> getFileNames(List<DirectoryListingEntry> directoryEntries) {
+		List<String> fileNames = new ArrayList<String>();
+		for (DirectoryListingEntry directoryEntry : directoryEntries) {
+			fileNames.add(directoryEntry.getFileName());
+		}
+		return fileNames;
+	}
+
+	private static int getKind(DirectoryListingEntry directoryEntry) {
+		BasicFileAttributes fileAttributes = directoryEntry.getFileAttributes();
+		return fileAttributes.isDirectory() ? 0 : (fileAttributes.isRegularFile() ? 1 : 2);
+	}
+
+	private static String getExtension(DirectoryListingEntry directoryEntry) {
+		String fileName = directoryEntry.getFileName();
+		int extensionStart = fileName.lastIndexOf('.');
+		return (extensionStart > 0) ? fileName.substring(extensionStart + 1) : "";
+	}
+
+}
@@ -0,0 +1,67 @@
+package spring.directorylisting;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests that listings are written to a snapshot and taken from it unchanged
+ * @author N. H. Weideman
+ */
+public class DirectoryListingSnapshotTest {
+
+	@Rule
+	public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void listingsAreTakenAsTheyWereWritten() throws IOException {
+		File directory = temporaryFolder.newFolder("listed");
+		new File(directory, "file").createNewFile();
+		new File(directory, "sub").mkdir();
+		String directoryPath = directory.getCanonicalPath();
+
+		/* Real entries, which have Unix file keys on Unix, and entries with a file key of another form and without a file key. */
+		DirectoryListingColumns.Builder columnsBuilder = new DirectoryListingColumns.Builder(5);
+		for (String fileName : new String[] {".", "file", "sub"}) {
+			BasicFileAttributes fileAttributes = Files.readAttributes(new File(directory, fileName).toPath(), BasicFileAttributes.class);
+			columnsBuilder.add(new DirectoryListingEntry(fileName, fileAttributes));
+		}
+		columnsBuilder.add("other device", DirectoryListingColumns.REGULAR_FILE_FLAG, 5, 1000, 2000, 3000, 0x803L, 42);
+		columnsBuilder.add("string key", DirectoryListingColumns.REGULAR_FILE_FLAG, 6, 1000, 2000, 3000, "{volume=1,index=2}");
+		columnsBuilder.add("no key", DirectoryListingColumns.OTHER_FLAG, 7, 1000, 2000, 3000, null);
+		DirectoryListingResult directoryListingResult = new DirectoryListingResult(directoryPath, columnsBuilder.build());
+
+		Path snapshotPath = temporaryFolder.getRoot().toPath().resolve("snapshot");
+		DirectoryListingSnapshot.write(snapshotPath, Arrays.asList(directoryListingResult));
+		DirectoryListingSnapshot directoryListingSnapshot = DirectoryListingSnapshot.load(snapshotPath);
+		assertEquals(1, directoryListingSnapshot.size());
+
+		DirectoryListingResult snapshotListingResult = directoryListingSnapshot.take(directoryPath);
+		assertEquals(describeEntries(directoryListingResult), describeEntries(snapshotListingResult));
+		assertNull(directoryListingSnapshot.take(directoryPath));
+	}
+
+	/* Describes every stored attribute of the entries of a listing. */
+	private static List<String> describeEntries(DirectoryListingResult directoryListingResult) {
+		DirectoryListingColumns columns = directoryListingResult.getColumns();
+		List<String> entryDescriptions = new ArrayList<String>();
+		for (int i = 0; i < columns.size(); i++) {
+			entryDescriptions.add(columns.getFileName(i) + " " + columns.getFlags(i) + " " + columns.getSize(i)
+							+ " " + columns.getCreationTime(i) + " " + columns.getLastModifiedTime(i) + " " + columns.getLastAccessTime(i)
+							+ " " + columns.getFileKey(i));
+		}
+		return entryDescriptions;
+	}
+
+}
@@ -0,0 +1,107 @@
+package spring.directorylisting;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests of which thread receives the listings of a subtree and of stopping a walk whose listings are not taken
+ * @author N. H. Weideman
+ */
+public class DirectoryTreeWalkerTest {
+
+	/* More subdirectories than the listings that may wait for the visitor. */
+	private static final int NUM_SUBDIRECTORIES = 300;
+
+	@Rule
+	public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private DirectoryListingComponent directoryListingComponent;
+
+	/* A directory holding the directories d0 to d299, each holding the directory "sub". */
+	private String directoryPath;
+
+	@Before
+	public void createComponent() throws IOException {
+		File directory = temporaryFolder.newFolder("walked");
+		for (int i = 0; i < NUM_SUBDIRECTORIES; i++) {
+			new File(directory, "d" + i + "/sub").mkdirs();
+		}
+		directoryPath = directory.getCanonicalPath();
+		directoryListingComponent = new DirectoryListingComponent(new DirectoryListingMetrics(),
+						1000,
+						1 << 26,
+						1,
+						512,
+						2,
+						16,
+						2,
+						"",
+						300000);
+	}
+
+	@After
+	public void shutdownComponent() {
+		directoryListingComponent.shutdown();
+	}
+
+	@Test
+	public void listingsAreVisitedOnTheCallingThread() throws IOException {
+		final Set<Thread> visitingThreads = new HashSet<Thread>();
+		final Set<String> visitedPaths = new HashSet<String>();
+		boolean complete = directoryListingComponent.walkTree(directoryListingComponent.getListing(directoryPath), 2, 1000000, new DirectoryTreeVisitor() {
+			@Override
+			public void visitDirectory(int depth, DirectoryListingResult directoryListingResult) {
+				visitingThreads.add(Thread.currentThread());
+				visitedPaths.add(directoryListingResult.getFullPath());
+			}
+
+			@Override
+			public void visitError(int depth, String fullPath, IOException e) {
+				visitingThreads.add(Thread.currentThread());
+			}
+		});
+
+		assertTrue(complete);
+		assertEquals(1 + 2 * NUM_SUBDIRECTORIES, visitedPaths.size());
+		assertEquals(1, visitingThreads.size());
+		assertTrue(visitingThreads.contains(Thread.currentThread()));
+	}
+
+	@Test
+	public void stalledVisitorStopsTheWalk() throws IOException {
+		final Set<String> visitedPaths = new HashSet<String>();
+		boolean complete = directoryListingComponent.walkTree(directoryListingComponent.getListing(directoryPath), 2, 1000000, new DirectoryTreeVisitor() {
+			@Override
+			public void visitDirectory(int depth, DirectoryListingResult directoryListingResult) throws IOException {
+				/* A client that stops reading for longer than the walk waits for the queue to have room. */
+				if (visitedPaths.isEmpty()) {
+					try {
+						Thread.sleep(3000);
+					} catch (InterruptedException ie) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				visitedPaths.add(directoryListingResult.getFullPath());
+			}
+
+			@Override
+			public void visitError(int depth, String fullPath, IOException e) {
+			}
+		});
+
+		assertFalse(complete);
+		assertTrue(String.valueOf(visitedPaths.size()), visitedPaths.size() < 1 + 2 * NUM_SUBDIRECTORIES);
+	}
+
+}
@@ -0,0 +1,81 @@
+package spring.directorylisting;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests of which computed usage the usage cache memoizes when directories change while the usage is computed
+ * @author N. H. Weideman
+ */
+public class DirectoryUsageCacheTest {
+
+	@Rule
+	public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private DirectoryListingResultCache listingCache;
+	private DirectoryUsageCache usageCache;
+
+	/* The directory whose usage is computed, and a directory next to it. */
+	private String directoryPath;
+	private String siblingPath;
+	private DirectoryListingResult directoryListingResult;
+
+	@Before
+	public void createCaches() throws IOException {
+		listingCache = new DirectoryListingResultCache(100, 1 << 24, new DirectoryListingMetrics());
+		usageCache = new DirectoryUsageCache(listingCache);
+		listingCache.addInvalidationListener(usageCache);
+
+		File directory = temporaryFolder.newFolder("measured");
+		directoryPath = directory.getCanonicalPath();
+		siblingPath = temporaryFolder.newFolder("sibling").getCanonicalPath();
+
+		/* A listing holding only the "." entry is enough for the listing cache to accept it. */
+		List<DirectoryListingEntry> directoryEntries = new ArrayList<DirectoryListingEntry>();
+		directoryEntries.add(new DirectoryListingEntry(".", Files.readAttributes(directory.toPath(), BasicFileAttributes.class)));
+		directoryListingResult = new DirectoryListingResult(directoryPath, directoryEntries);
+		assertTrue(listingCache.put(directoryPath, directoryListingResult));
+	}
+
+	@Test
+	public void changeOutsideSubtreeKeepsUsage() {
+		long startVersion = usageCache.startComputation(directoryPath);
+		usageCache.directoryInvalidated(siblingPath);
+		usageCache.put(directoryListingResult, new DirectoryUsage(directoryPath, 10, 1, 0, 0), startVersion);
+		usageCache.finishComputation(directoryPath);
+
+		assertNotNull(usageCache.get(directoryPath));
+	}
+
+	@Test
+	public void changeInsideSubtreeDiscardsUsage() {
+		long startVersion = usageCache.startComputation(directoryPath);
+		usageCache.directoryInvalidated(new File(directoryPath, "child").getPath());
+		usageCache.put(directoryListingResult, new DirectoryUsage(directoryPath, 10, 1, 0, 0), startVersion);
+		usageCache.finishComputation(directoryPath);
+
+		assertNull(usageCache.get(directoryPath));
+	}
+
+	@Test
+	public void usageWithUnreadableDirectoriesIsMemoized() {
+		long startVersion = usageCache.startComputation(directoryPath);
+		usageCache.put(directoryListingResult, new DirectoryUsage(directoryPath, 10, 1, 2, 1), startVersion);
+		usageCache.finishComputation(directoryPath);
+
+		assertNotNull(usageCache.get(directoryPath));
+	}
+
+}
@@ -0,0 +1,336 @@
+package spring.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.util.StreamUtils;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+
+import spring.directorylisting.DirectoryListingMetrics;
+
+/**
+ * Tests of the responses of the directory listing controller, on a small directory tree created for the tests
+ * @author N. H. Weideman
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties={"directorylisting.io.threads=1", "directorylisting.io.queue-size=4", "directorylisting.batch.max-concurrent-reads=2"})
+@AutoConfigureMockMvc
+public class DirectoryListingControllerTest {
+
+	@ClassRule
+	public static final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	/* The number of directories in the batch directory, more than the I/O threads and their queue can take at once. */
+	private static final int NUM_BATCH_DIRECTORIES = 40;
+
+	/* The root of the tree, holding the files f1.log to f6.log and the directory "sub", which holds the files "aa" and "zz". */
+	private static String rootPath;
+	private static String subPath;
+	/* A directory holding the directories d0 to d39, each holding a file "f", which are only listed by batches. */
+	private static String batchPath;
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Autowired
+	private DirectoryListingMetrics metrics;
+
+	@BeforeClass
+	public static void createTree() throws IOException {
+		File root = temporaryFolder.newFolder("fs");
+		for (int i = 1; i <= 6; i++) {
+			new File(root, "f" + i + ".log").createNewFile();
+		}
+		File sub = new File(root, "sub");
+		sub.mkdir();
+		new File(sub, "aa").createNewFile();
+		new File(sub, "zz").createNewFile();
+		rootPath = root.getCanonicalPath();
+		subPath = sub.getCanonicalPath();
+
+		File batch = temporaryFolder.newFolder("batch");
+		for (int i = 0; i < NUM_BATCH_DIRECTORIES; i++) {
+			File directory = new File(batch, "d" + i);
+			directory.mkdir();
+			new File(directory, "f").createNewFile();
+		}
+		batchPath = batch.getCanonicalPath();
+	}
+
+	@Test
+	public void entryLinksOfCursorPageListWholeDirectory() throws Exception {
+		JsonNode firstPage = getJson(get("/list?dpath={dpath}&psize=5&cursor=", rootPath));
+		String nextLink = firstPage.get("nextLink").asText();
+		assertFalse(nextLink.isEmpty());
+
+		/* The second page in name order holds "f4.log" to "f6.log" and "sub". */
+		JsonNode cursorPage = getJson(get(new URI(nextLink)));
+		String subLink = findEntry(cursorPage, "sub").get("link").asText();
+		assertFalse(subLink.contains("cursor="));
+
+		JsonNode subListing = getJson(get(new URI(subLink)));
+		assertEquals(subPath, subListing.get("fullPath").asText());
+		assertEquals(listFileNames(get("/list?dpath={dpath}", subPath)), getFileNames(subListing));
+	}
+
+	@Test
+	public void filterIsKeptInPageLinksAndLeftOutOfEntryLinks() throws Exception {
+		/* The "|" of the regular expression is percent-encoded in the request, and must not be encoded again in the links. */
+		JsonNode firstPage = getJson(get("/list?dpath={dpath}&psize=1&regex={regex}", rootPath, "(sub|f1.*)"));
+		assertEquals(2, firstPage.get("numPages").asInt());
+		String nextLink = firstPage.get("nextLink").asText();
+		assertFalse(nextLink.contains("%25"));
+
+		JsonNode secondPage = getJson(get(new URI(nextLink)));
+		assertEquals(2, secondPage.get("pageNumber").asInt());
+		assertEquals(1, secondPage.get("directoryEntries").size());
+
+		/* The filter selects entries of the requested directory, so the subdirectory is listed whole. */
+		String subLink = findEntry(getJson(get("/list?dpath={dpath}&psize=5&regex={regex}", rootPath, "(sub|f1.*)")), "sub").get("link").asText();
+		assertFalse(subLink.contains("regex="));
+		assertFalse(subLink.contains("%25"));
+		assertTrue(subLink.contains("psize=5"));
+		assertEquals(listFileNames(get("/list?dpath={dpath}", subPath)), getFileNames(getJson(get(new URI(subLink)))));
+	}
+
+	@Test
+	public void filterMatchingNothingGivesOneEmptyPage() throws Exception {
+		JsonNode page = getJson(get("/list?dpath={dpath}&psize=5&prefix=none", rootPath));
+		assertEquals(1, page.get("numPages").asInt());
+		assertEquals(1, page.get("pageNumber").asInt());
+		assertEquals(0, page.get("directoryEntries").size());
+		assertEquals(page.get("firstLink").asText(), page.get("lastLink").asText());
+		assertTrue(page.get("nextLink").asText().isEmpty());
+
+		MvcResult mvcResult = performAsync(get("/list?dpath={dpath}&psize=5&prefix=none&page=2", rootPath).header("Accept", "application/json"));
+		assertEquals(400, mvcResult.getResponse().getStatus());
+	}
+
+	@Test
+	public void renderedPageHitsRecordListingAccess() throws Exception {
+		getJson(get("/list?dpath={dpath}&psize=4", subPath));
+		long cacheHits = metrics.getCacheHits();
+
+		/* The second request is answered from the rendered page cache. */
+		getJson(get("/list?dpath={dpath}&psize=4", subPath));
+		assertTrue(metrics.getCacheHits() > cacheHits);
+	}
+
+	@Test
+	public void renderedPageOfRetargetedLinkIsNotReused() throws Exception {
+		File linkParent = temporaryFolder.newFolder("links");
+		Path link = new File(linkParent, "current").toPath();
+		Files.createSymbolicLink(link, new File(rootPath).toPath());
+		assertEquals(listFileNames(get("/list?dpath={dpath}&sort=name", rootPath)), listFileNames(get("/list?dpath={dpath}&sort=name", link.toString())));
+
+		/* Neither directory changes, so only the canonical path in the key tells the pages apart. */
+		Files.delete(link);
+		Files.createSymbolicLink(link, new File(subPath).toPath());
+		assertEquals(Arrays.asList(".", "..", "aa", "zz"), listFileNames(get("/list?dpath={dpath}&sort=name", link.toString())));
+	}
+
+	@Test
+	public void renderedPageIsSharedByReorderedParameters() throws Exception {
+		getJson(get("/list?dpath={dpath}&psize=3&sort=size,desc", subPath));
+		long renderCount = metrics.getJsonRenderTime().getCount();
+
+		JsonNode listing = getJson(get("/list?sort=SIZE,DESC&psize=3&dpath={dpath}", subPath));
+		assertEquals(renderCount, metrics.getJsonRenderTime().getCount());
+		assertEquals(3, listing.get("pageSize").asInt());
+	}
+
+	@Test
+	public void streamedResponsesRecordRenderTimeAndSize() throws Exception {
+		for (String url : new String[] {"/list?dpath={dpath}&stream=true", "/tree?dpath={dpath}"}) {
+			long streamCount = metrics.getStreamRenderTime().getCount();
+			long streamBytes = metrics.getStreamRenderBytes().getSum();
+
+			MvcResult mvcResult = performAsync(get(url, rootPath).header("Accept", "application/json"));
+			assertEquals(200, mvcResult.getResponse().getStatus());
+			assertEquals(streamCount + 1, metrics.getStreamRenderTime().getCount());
+			assertEquals(streamBytes + mvcResult.getResponse().getContentAsByteArray().length, metrics.getStreamRenderBytes().getSum());
+		}
+	}
+
+	@Test
+	public void batchListsMoreDirectoriesThanTheQueueHolds() throws Exception {
+		/* The directories, followed by a directory that does not exist and an entry whose path is null. */
+		ArrayNode batchListingRequests = objectMapper.createArrayNode();
+		for (int i = 0; i < NUM_BATCH_DIRECTORIES; i++) {
+			batchListingRequests.addObject().put("dpath", new File(batchPath, "d" + i).getPath());
+		}
+		batchListingRequests.addObject().put("dpath", new File(batchPath, "missing").getPath());
+		batchListingRequests.addObject().putNull("dpath");
+
+		MvcResult mvcResult = performAsync(post("/batch")
+						.header("Accept", "application/json")
+						.contentType(MediaType.APPLICATION_JSON)
+						.content(objectMapper.writeValueAsBytes(batchListingRequests)));
+		assertEquals(200, mvcResult.getResponse().getStatus());
+		JsonNode batch = objectMapper.readTree(mvcResult.getResponse().getContentAsByteArray());
+		assertEquals(NUM_BATCH_DIRECTORIES + 2, batch.get("numDirectories").asInt());
+		assertEquals(2, batch.get("numErrors").asInt());
+
+		Set<Integer> listedIndices = new HashSet<Integer>();
+		for (JsonNode directory : batch.get("directories")) {
+			int index = directory.get("index").asInt();
+			if (index < NUM_BATCH_DIRECTORIES) {
+				assertFalse(directory.toString(), directory.has("error"));
+				assertEquals(Arrays.asList(".", "..", "f"), getFileNames(directory));
+				listedIndices.add(index);
+			} else if (index == NUM_BATCH_DIRECTORIES) {
+				assertEquals("Directory at " + new File(batchPath, "missing").getPath() + " not found", directory.get("error").asText());
+			} else {
+				assertEquals("No directory path given.", directory.get("error").asText());
+			}
+		}
+		assertEquals(NUM_BATCH_DIRECTORIES, listedIndices.size());
+	}
+
+	@Test
+	public void compressedResponsesVaryByAcceptEncoding() throws Exception {
+		for (String url : new String[] {"/list?dpath={dpath}", "/list?dpath={dpath}&stream=true"}) {
+			MockHttpServletResponse response = performAsync(get(url, rootPath).header("Accept", "application/json")).getResponse();
+			assertEquals(200, response.getStatus());
+			assertNull(response.getHeader("Content-Encoding"));
+			assertTrue(response.getHeader("Vary").contains("Accept-Encoding"));
+
+			/* The listing of the root is larger than the size from which pages are compressed. */
+			MockHttpServletResponse gzipResponse = performAsync(get(url, rootPath)
+							.header("Accept", "application/json")
+							.header("Accept-Encoding", "deflate, gzip;q=0.5")).getResponse();
+			assertEquals(200, gzipResponse.getStatus());
+			assertEquals("gzip", gzipResponse.getHeader("Content-Encoding"));
+			assertTrue(gzipResponse.getHeader("Vary").contains("Accept-Encoding"));
+			assertEquals(response.getContentAsString(), new String(gunzip(gzipResponse.getContentAsByteArray()), StandardCharsets.UTF_8));
+
+			MockHttpServletResponse refusedResponse = performAsync(get(url, rootPath)
+							.header("Accept", "application/json")
+							.header("Accept-Encoding", "gzip;q=0")).getResponse();
+			assertNull(refusedResponse.getHeader("Content-Encoding"));
+		}
+	}
+
+	@Test
+	public void cborListingMatchesJsonListing() throws Exception {
+		MockHttpServletResponse response = performAsync(get("/list?dpath={dpath}&psize=4", rootPath).header("Accept", "application/cbor")).getResponse();
+		assertEquals(200, response.getStatus());
+		assertEquals("application/cbor", response.getContentType());
+		assertTrue(response.getHeader("Vary").contains("Accept"));
+		JsonNode cborListing = new ObjectMapper(new CBORFactory()).readTree(response.getContentAsByteArray());
+		JsonNode jsonListing = getJson(get("/list?dpath={dpath}&psize=4", rootPath));
+
+		for (String field : new String[] {"fullPath", "numEntries", "numPages", "pageNumber", "pageSize", "firstLink", "lastLink", "prevLink", "nextLink"}) {
+			assertEquals(field, jsonListing.get(field), cborListing.get(field));
+		}
+
+		/* The entries are arrays of values, in the order of the entry fields. */
+		List<String> entryFields = new ArrayList<String>();
+		for (JsonNode entryField : cborListing.get("entryFields")) {
+			entryFields.add(entryField.asText());
+		}
+		JsonNode cborEntries = cborListing.get("directoryEntries");
+		JsonNode jsonEntries = jsonListing.get("directoryEntries");
+		assertEquals(jsonEntries.size(), cborEntries.size());
+		for (int i = 0; i < jsonEntries.size(); i++) {
+			for (String field : new String[] {"fileName", "link", "isDirectory"}) {
+				assertEquals(field, jsonEntries.get(i).get(field).asText(), cborEntries.get(i).get(entryFields.indexOf(field)).asText());
+			}
+		}
+	}
+
+	/*
+	 * Performs a request that is answered asynchronously, and returns the result once the response has been written.
+	 * The query parameters must be given in the URL of the request, since the controller links to other pages from its query string.
+	 */
+	private MvcResult performAsync(MockHttpServletRequestBuilder requestBuilder) throws Exception {
+		MvcResult mvcResult = mockMvc.perform(requestBuilder).andReturn();
+		/* Streamed bodies of deferred results are written by a second asynchronous dispatch. */
+		while (mvcResult.getRequest().isAsyncStarted()) {
+			mvcResult.getAsyncResult();
+			MvcResult dispatchResult = mockMvc.perform(asyncDispatch(mvcResult)).andReturn();
+			/* Every dispatch gets a new response, a streamed body is written to the response of the dispatch that returned it. */
+			if (dispatchResult.getResponse().getContentAsByteArray().length == 0 && mvcResult.getResponse().getContentAsByteArray().length > 0) {
+				return mvcResult;
+			}
+			mvcResult = dispatchResult;
+		}
+		return mvcResult;
+	}
+
+	/* Performs a request for a JSON response and returns the parsed body. */
+	private JsonNode getJson(MockHttpServletRequestBuilder requestBuilder) throws Exception {
+		MvcResult mvcResult = performAsync(requestBuilder.header("Accept", "application/json"));
+		assertEquals(200, mvcResult.getResponse().getStatus());
+		return objectMapper.readTree(mvcResult.getResponse().getContentAsByteArray());
+	}
+
+	/* Decompresses a body compressed with gzip. */
+	private static byte[] gunzip(byte[] body) throws IOException {
+		GZIPInputStream gzipInputStream = new GZIPInputStream(new ByteArrayInputStream(body));
+		return StreamUtils.copyToByteArray(gzipInputStream);
+	}
+
+	/* Returns the file names of the entries of a JSON listing, in the order of the listing. */
+	private static List<String> getFileNames(JsonNode listing) {
+		List<String> fileNames = new ArrayList<String>();
+		for (JsonNode directoryEntry : listing.get("directoryEntries")) {
+			fileNames.add(directoryEntry.get("fileName").asText());
+		}
+		return fileNames;
+	}
+
+	/* Returns the file names of the entries of a JSON listing request. */
+	private List<String> listFileNames(MockHttpServletRequestBuilder requestBuilder) throws Exception {
+		return getFileNames(getJson(requestBuilder));
+	}
+
+	/* Returns the entry of a JSON listing with a file name. */
+	private static JsonNode findEntry(JsonNode listing, String fileName) {
+		for (JsonNode directoryEntry : listing.get("directoryEntries")) {
+			if (directoryEntry.get("fileName").asText().equals(fileName)) {
+				return directoryEntry;
+			}
+		}
+		throw new AssertionError("No entry " + fileName + " in " + listing.get("fullPath").asText());
+	}
+
+}
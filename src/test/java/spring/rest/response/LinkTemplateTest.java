@@ -0,0 +1,67 @@
+package spring.rest.response;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import org.junit.Test;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.util.UriComponentsBuilder;
+
+/**
+ * Tests of the links created from link templates
+ * @author N. H. Weideman
+ */
+public class LinkTemplateTest {
+
+	/* A request URL as it is received, with its query already percent-encoded. */
+	private static final String URL = "http://localhost:8080/list?dpath=/tmp/a%20b&psize=10&sort=size,desc&glob=%2A.log&cursor=abc&page=3";
+
+	@Test
+	public void pageLinksKeepTheEncodedQuery() {
+		String link = LinkTemplate.forPages(URL).createLink(7);
+		assertEquals("http://localhost:8080/list?dpath=/tmp/a%20b&psize=10&sort=size,desc&glob=%2A.log&cursor=abc&page=7", link);
+	}
+
+	@Test
+	public void cursorLinksReplaceThePage() {
+		String link = LinkTemplate.forCursors(URL).createLink("xyz");
+		assertEquals("http://localhost:8080/list?dpath=/tmp/a%20b&psize=10&sort=size,desc&glob=%2A.log&cursor=xyz", link);
+	}
+
+	@Test
+	public void directoryLinksStartAtTheFirstPageWithoutFilters() throws UnsupportedEncodingException {
+		String link = LinkTemplate.forDirectories(URL).createLink("/tmp/a b/sub");
+		MultiValueMap<String, String> queryParams = getQueryParams(link);
+		assertEquals("/tmp/a b/sub", queryParams.getFirst("dpath"));
+		assertEquals("1", queryParams.getFirst("page"));
+		assertEquals("10", queryParams.getFirst("psize"));
+		assertEquals("size,desc", queryParams.getFirst("sort"));
+		assertNull(queryParams.getFirst("glob"));
+		assertFalse(queryParams.containsKey("cursor"));
+	}
+
+	@Test
+	public void directoryPathsAreDecodedAsTheyWereGiven() throws UnsupportedEncodingException {
+		LinkTemplate linkTemplate = LinkTemplate.forDirectories(URL);
+		for (String directoryPath : new String[] {"/tmp/plain", "/tmp/a+b", "/tmp/a&page=2", "/tmp/x=y#z", "/tmp/%41", "/tmp/café/日本"}) {
+			assertEquals(directoryPath, getQueryParams(linkTemplate.createLink(directoryPath)).getFirst("dpath"));
+		}
+	}
+
+	/* Returns the query parameters of a link, decoded as the servlet container decodes them. */
+	private static MultiValueMap<String, String> getQueryParams(String link) throws UnsupportedEncodingException {
+		MultiValueMap<String, String> encodedQueryParams = UriComponentsBuilder.fromHttpUrl(link).build().getQueryParams();
+		MultiValueMap<String, String> queryParams = new LinkedMultiValueMap<String, String>();
+		for (String name : encodedQueryParams.keySet()) {
+			for (String value : encodedQueryParams.get(name)) {
+				queryParams.add(name, (value == null) ? null : URLDecoder.decode(value, "UTF-8"));
+			}
+		}
+		return queryParams;
+	}
+
+}